@@ -0,0 +1,344 @@
+package opencvj;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import camus.service.vision.Image;
+import camus.service.vision.ImageEncoding;
+import camus.service.vision.ImageFormat;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
+import org.opencv.highgui.Highgui;
+import org.opencv.imgproc.Imgproc;
+
+import opencvj.camera.Frame;
+
+
+/**
+ * 영상을 JPEG으로 encoding하는 서비스.
+ * <p>
+ * Encoding은 고정 크기의 worker 쓰레드들에 의해 수행되며, 각 쓰레드는 encoding 결과를 저장하는
+ * {@link MatOfByte}를 재사용한다. {@link #encodeAsync(Frame, int)}는 (카메라 식별자, frame 순번,
+ * 품질)별로 encoding 결과를 기억하므로, 동일 frame을 여러 consumer가 요청하더라도 encoding은
+ * 한번만 수행된다. 또한 {@link #toImage(Mat, int, int)}를 통해 주어진 byte 한도를 넘지 않도록
+ * 품질 및 크기를 조절하여 encoding할 수 있다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class JpegEncoder implements AutoCloseable {
+	private static final int DEF_CACHE_SIZE = 16;
+	private static final int QUEUE_FACTOR = 4;
+	private static final int MIN_BUDGET_QUALITY = 30;
+	private static final double QUALITY_STEP = 0.8;
+	private static final double SCALE_STEP = 0.75;
+	private static final int MIN_BUDGET_WIDTH = 32;
+
+	private static volatile JpegEncoder s_default;
+
+	private final ThreadPoolExecutor m_workers;
+	private final ConcurrentMap<Integer,MatOfInt> m_params = new ConcurrentHashMap<>();
+	private final ThreadLocal<MatOfByte> m_buffers = new ThreadLocal<MatOfByte>() {
+		@Override
+		protected MatOfByte initialValue() {
+			return new MatOfByte();
+		}
+	};
+	private final int m_cacheSize;
+	@GuardedBy("m_cache") private final Map<Key,CompletableFuture<byte[]>> m_cache;
+
+	/**
+	 * 전역적으로 공유되는 encoder를 반환한다.
+	 * <p>
+	 * Worker 쓰레드의 수는 CPU core 수의 절반이다.
+	 */
+	public static JpegEncoder getDefault() {
+		JpegEncoder encoder = s_default;
+		if ( encoder == null ) {
+			synchronized ( JpegEncoder.class ) {
+				if ( (encoder = s_default) == null ) {
+					int nworkers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+					s_default = encoder = new JpegEncoder(nworkers, DEF_CACHE_SIZE);
+				}
+			}
+		}
+
+		return encoder;
+	}
+
+	/**
+	 * Encoder를 생성한다.
+	 *
+	 * @param nworkers	encoding을 수행할 worker 쓰레드의 수.
+	 * @param cacheSize	기억할 frame별 encoding 결과의 최대 수.
+	 */
+	public JpegEncoder(int nworkers, int cacheSize) {
+		if ( nworkers < 1 ) {
+			throw new IllegalArgumentException("invalid worker count: " + nworkers);
+		}
+
+		// queue가 가득 찬 경우는 요청한 쓰레드가 직접 encoding하여 작업이 무한히 쌓이지 않도록 한다.
+		m_workers = new ThreadPoolExecutor(nworkers, nworkers, 0, TimeUnit.MILLISECONDS,
+											new LinkedBlockingQueue<Runnable>(nworkers * QUEUE_FACTOR),
+											new WorkerFactory(), new CallerRunsUnlessClosed());
+		m_cacheSize = cacheSize;
+		m_cache = new LinkedHashMap<Key,CompletableFuture<byte[]>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,CompletableFuture<byte[]>> eldest) {
+				return size() > m_cacheSize;
+			}
+		};
+	}
+
+	@Override
+	public void close() {
+		m_workers.shutdown();
+		synchronized ( m_cache ) {
+			m_cache.clear();
+		}
+	}
+
+	/**
+	 * 주어진 영상을 현재 쓰레드에서 JPEG으로 encoding한다.
+	 */
+	public byte[] encode(Mat image, int quality) {
+		MatOfByte buf = m_buffers.get();
+		Highgui.imencode(".jpg", image, buf, getParams(quality));
+
+		return buf.toArray();
+	}
+
+	/**
+	 * 주어진 영상을 worker 쓰레드에서 JPEG으로 encoding한다.
+	 * <p>
+	 * 영상은 호출 쓰레드에서 복사되므로, 호출 후 바로 재사용하여도 무방하다.
+	 * Encoder가 이미 close된 경우는 {@link RejectedExecutionException}으로 실패한 future를 반환한다.
+	 */
+	public CompletableFuture<byte[]> encodeAsync(Mat image, int quality) {
+		if ( m_workers.isShutdown() ) {
+			return rejected();
+		}
+
+		final Mat copied = image.clone();
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return encode(copied, quality);
+				}
+				finally {
+					copied.release();
+				}
+			}, m_workers);
+		}
+		catch ( RejectedExecutionException e ) {
+			// 요청 도중 close된 경우
+			copied.release();
+			return rejected();
+		}
+	}
+
+	/**
+	 * 주어진 frame을 worker 쓰레드에서 JPEG으로 encoding한다.
+	 * <p>
+	 * 동일 frame(카메라 식별자와 순번이 같은 frame)과 품질에 대한 encoding이 이미 요청된 경우는
+	 * 새로 encoding하지 않고 기존 결과를 공유한다. 순번이 정해지지 않은 frame은 공유되지 않으며,
+	 * 실패한 encoding 결과는 공유되지 않는다.
+	 */
+	public CompletableFuture<byte[]> encodeAsync(Frame frame, int quality) {
+		if ( frame.getSequenceNo() == Frame.UNKNOWN_SEQUENCE_NO ) {
+			return encodeAsync(frame.getMat(), quality);
+		}
+
+		// 동일 frame에 대한 요청들이 같은 future를 공유하도록 먼저 자리만 확보한다.
+		Key key = new Key(frame.getSourceId(), frame.getSequenceNo(), quality);
+		final CompletableFuture<byte[]> reserved = new CompletableFuture<>();
+		synchronized ( m_cache ) {
+			CompletableFuture<byte[]> future = m_cache.get(key);
+			if ( future != null ) {
+				return future;
+			}
+			m_cache.put(key, reserved);
+		}
+
+		// 영상 복사와 encoding 요청은 lock 밖에서 수행하여, queue가 가득 차 호출 쓰레드가 직접
+		// encoding하는 동안 다른 frame에 대한 요청들이 막히지 않도록 한다.
+		try {
+			encodeAsync(frame.getMat(), quality).whenComplete((bytes, error) -> {
+				if ( error != null ) {
+					failReserved(key, reserved, error);
+				}
+				else {
+					reserved.complete(bytes);
+				}
+			});
+		}
+		catch ( RuntimeException e ) {
+			failReserved(key, reserved, e);
+			throw e;
+		}
+
+		return reserved;
+	}
+
+	private void failReserved(Key key, CompletableFuture<byte[]> reserved, Throwable cause) {
+		// 실패한 결과는 기억하지 않고, 이후의 요청에서 다시 encoding되도록 한다.
+		synchronized ( m_cache ) {
+			m_cache.remove(key, reserved);
+		}
+		reserved.completeExceptionally(cause);
+	}
+
+	/**
+	 * 주어진 영상을 JPEG으로 encoding한 {@link Image}를 반환한다.
+	 */
+	public Image toImage(Mat image, int quality) {
+		return new Image(encode(image, quality), toFormat(image.size()));
+	}
+
+	/**
+	 * 주어진 영상을 encoding 결과가 주어진 byte 수를 넘지 않도록 JPEG으로 encoding한다.
+	 * <p>
+	 * 결과가 한도를 넘는 경우 품질을 낮추어 다시 encoding하며, 최저 품질로도 한도를 넘는 경우는
+	 * 영상의 크기를 줄인다. 따라서 반환된 영상의 해상도는 원래 영상보다 작을 수 있다.
+	 *
+	 * @param image	encoding할 영상.
+	 * @param quality	최대 JPEG 품질.
+	 * @param maxBytes	encoding 결과의 최대 byte 수.
+	 */
+	public Image toImage(Mat image, int quality, int maxBytes) {
+		byte[] bytes = encode(image, quality);
+		if ( bytes.length <= maxBytes ) {
+			return new Image(bytes, toFormat(image.size()));
+		}
+
+		// 품질을 낮춘다.
+		int q = quality;
+		while ( bytes.length > maxBytes && q > MIN_BUDGET_QUALITY ) {
+			q = Math.max(MIN_BUDGET_QUALITY, (int)(q * QUALITY_STEP));
+			bytes = encode(image, q);
+		}
+		if ( bytes.length <= maxBytes ) {
+			return new Image(bytes, toFormat(image.size()));
+		}
+
+		// 최저 품질로도 한도를 넘는 경우는 크기를 줄인다.
+		Mat scaled = new Mat();
+		try {
+			Size size = image.size();
+			while ( bytes.length > maxBytes && size.width * SCALE_STEP >= MIN_BUDGET_WIDTH ) {
+				size = new Size(Math.round(size.width * SCALE_STEP), Math.round(size.height * SCALE_STEP));
+				Imgproc.resize(image, scaled, size, 0, 0, Imgproc.INTER_AREA);
+				bytes = encode(scaled, q);
+			}
+
+			return new Image(bytes, toFormat(size));
+		}
+		finally {
+			scaled.release();
+		}
+	}
+
+	private static CompletableFuture<byte[]> rejected() {
+		CompletableFuture<byte[]> future = new CompletableFuture<>();
+		future.completeExceptionally(new RejectedExecutionException("JpegEncoder has been closed"));
+
+		return future;
+	}
+
+	private MatOfInt getParams(int quality) {
+		MatOfInt params = m_params.get(quality);
+		if ( params == null ) {
+			MatOfInt created = new MatOfInt(Highgui.IMWRITE_JPEG_QUALITY, quality);
+			params = m_params.putIfAbsent(quality, created);
+			if ( params == null ) {
+				params = created;
+			}
+			else {
+				created.release();
+			}
+		}
+
+		return params;
+	}
+
+	private static ImageFormat toFormat(Size size) {
+		return new ImageFormat(ImageEncoding.JPEG, OpenCvJUtils.toResolution(size));
+	}
+
+	private static final class Key {
+		private final String m_sourceId;
+		private final long m_seqNo;
+		private final int m_quality;
+
+		Key(String sourceId, long seqNo, int quality) {
+			m_sourceId = sourceId;
+			m_seqNo = seqNo;
+			m_quality = quality;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if ( this == obj ) {
+				return true;
+			}
+			else if ( obj == null || obj.getClass() != Key.class ) {
+				return false;
+			}
+
+			Key other = (Key)obj;
+			return m_seqNo == other.m_seqNo && m_quality == other.m_quality
+				&& Objects.equals(m_sourceId, other.m_sourceId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(m_sourceId, m_seqNo, m_quality);
+		}
+	}
+
+	/**
+	 * 거절된 작업을 요청한 쓰레드에서 직접 수행한다.
+	 * <p>
+	 * {@link ThreadPoolExecutor.CallerRunsPolicy}와 달리 executor가 shutdown된 경우는 작업을
+	 * 조용히 버리지 않고 {@link RejectedExecutionException}을 발생시켜, 해당 작업의 future가
+	 * 완료되지 않은 채 남지 않도록 한다.
+	 */
+	private static final class CallerRunsUnlessClosed implements RejectedExecutionHandler {
+		@Override
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+			if ( executor.isShutdown() ) {
+				throw new RejectedExecutionException("JpegEncoder has been closed");
+			}
+			task.run();
+		}
+	}
+
+	private static final class WorkerFactory implements ThreadFactory {
+		private final AtomicInteger m_seqNo = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(Runnable task) {
+			Thread thread = new Thread(task, "jpeg-encoder-" + m_seqNo.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
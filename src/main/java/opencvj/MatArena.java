@@ -0,0 +1,137 @@
+package opencvj;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+
+
+/**
+ * 연산 중간 결과를 저장하는 임시 {@link Mat}들을 쓰레드별로 재사용하기 위한 scope 객체.
+ * <p>
+ * 매 frame마다 임시 Mat을 생성하고 해제하는 경우 native 메모리 할당/해제와 finalizer 부담이
+ * 발생하므로, scope 내에서 빌린 Mat들은 scope가 close될 때 해제되지 않고 쓰레드별 cache에
+ * 반납되어 동일 크기와 타입의 Mat 요청시 재사용된다.
+ * <pre>
+ * try ( MatArena arena = MatArena.open() ) {
+ *     Mat image32f = arena.get(image.size(), CvType.CV_32F);
+ *     ...
+ * }
+ * </pre>
+ * 빌린 Mat은 scope 밖으로 유출되어서는 안되며, 재사용된 Mat의 내용은 초기화되지 않는다.
+ * Scope는 생성한 쓰레드에서 close되어야 한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class MatArena implements AutoCloseable {
+	private static final int MAX_CACHED_PER_THREAD = 16;
+	private static final ThreadLocal<ArrayDeque<Mat>> s_caches = new ThreadLocal<ArrayDeque<Mat>>() {
+		@Override
+		protected ArrayDeque<Mat> initialValue() {
+			return new ArrayDeque<Mat>();
+		}
+	};
+
+	private final Thread m_owner;
+	private final ArrayDeque<Mat> m_cache;
+	private final List<Mat> m_borrowed = new ArrayList<Mat>();
+
+	/**
+	 * 현재 쓰레드에 대한 새 scope를 연다.
+	 */
+	public static MatArena open() {
+		return new MatArena();
+	}
+
+	private MatArena() {
+		m_owner = Thread.currentThread();
+		m_cache = s_caches.get();
+	}
+
+	/**
+	 * 주어진 크기와 타입의 임시 Mat을 빌린다.
+	 * <p>
+	 * 반환된 Mat의 내용은 이전 사용시의 값을 가질 수 있다.
+	 */
+	public Mat get(Size size, int type) {
+		Mat mat = take((int)size.height, (int)size.width, type);
+		if ( mat == null ) {
+			mat = new Mat(size, type);
+		}
+		m_borrowed.add(mat);
+
+		return mat;
+	}
+
+	/**
+	 * 주어진 크기와 타입의 임시 Mat을 빌려 주어진 값으로 초기화한다.
+	 */
+	public Mat get(Size size, int type, Scalar init) {
+		Mat mat = get(size, type);
+		mat.setTo(init);
+
+		return mat;
+	}
+
+	/**
+	 * 크기와 타입이 정해지지 않은 임시 Mat을 빌린다.
+	 * <p>
+	 * 연산 결과에 따라 크기가 결정되는 경우에 사용하며, scope가 close된 후에는
+	 * 결정된 크기와 타입으로 재사용된다.
+	 */
+	public Mat get() {
+		Mat mat = new Mat();
+		m_borrowed.add(mat);
+
+		return mat;
+	}
+
+	/**
+	 * 빌린 Mat들을 쓰레드별 cache에 반납한다.
+	 */
+	@Override
+	public void close() {
+		boolean sameThread = Thread.currentThread() == m_owner;
+		for ( Mat mat: m_borrowed ) {
+			if ( !sameThread || mat.empty() ) {
+				// 다른 쓰레드의 cache는 접근할 수 없으므로 해제한다.
+				mat.release();
+				continue;
+			}
+
+			m_cache.addFirst(mat);
+			if ( m_cache.size() > MAX_CACHED_PER_THREAD ) {
+				m_cache.pollLast().release();
+			}
+		}
+		m_borrowed.clear();
+	}
+
+	/**
+	 * 현재 쓰레드의 cache에 보관된 모든 Mat들을 해제한다.
+	 */
+	public static void clearThreadCache() {
+		ArrayDeque<Mat> cache = s_caches.get();
+		for ( Mat mat: cache ) {
+			mat.release();
+		}
+		cache.clear();
+	}
+
+	private Mat take(int rows, int cols, int type) {
+		Iterator<Mat> iter = m_cache.iterator();
+		while ( iter.hasNext() ) {
+			Mat mat = iter.next();
+			if ( mat.rows() == rows && mat.cols() == cols && mat.type() == type ) {
+				iter.remove();
+				return mat;
+			}
+		}
+
+		return null;
+	}
+}
@@ -2,6 +2,8 @@ package opencvj;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 import camus.service.camera.ImageProxy;
 import camus.service.camera.ImageType;
@@ -56,20 +58,89 @@ public class MatProxy implements ImageProxy, AutoCloseable {
 
 	@Override
 	public byte[] getDataBytes() {
-		Size sz = m_mat.size();
-		byte[] pixels = new byte[(int)(sz.width * sz.height * m_mat.elemSize())];
-		m_mat.get(0, 0, pixels);
-		
-		return pixels;
+		return getDataBytes(null);
 	}
 
 	@Override
 	public short[] getDataShorts() {
+		return getDataShorts(null);
+	}
+	
+	/**
+	 * 픽셀 값들을 주어진 배열에 복사한다.
+	 * <p>
+	 * 주어진 배열이 {@code null}이거나 영상 크기보다 작은 경우는 새 배열을 할당한다.
+	 * 매 frame마다 동일 배열을 재사용하거나 {@link PixelBufferPool}에서 빌린 배열을
+	 * 사용하면 배열 할당을 피할 수 있다.
+	 * 
+	 * @param buf	픽셀 값들이 복사될 배열.
+	 * @return	픽셀 값들이 복사된 배열.
+	 */
+	public byte[] getDataBytes(byte[] buf) {
+		int length = getDataByteCount();
+		if ( buf == null || buf.length < length ) {
+			buf = new byte[length];
+		}
+		m_mat.get(0, 0, buf);
+		
+		return buf;
+	}
+	
+	/**
+	 * 픽셀 값들을 주어진 배열에 복사한다.
+	 * <p>
+	 * 주어진 배열이 {@code null}이거나 영상 크기보다 작은 경우는 새 배열을 할당한다.
+	 * 
+	 * @param buf	픽셀 값들이 복사될 배열.
+	 * @return	픽셀 값들이 복사된 배열.
+	 */
+	public short[] getDataShorts(short[] buf) {
 		Size sz = m_mat.size();
-		short[] pixels = new short[(int)(sz.width * sz.height)];
-		m_mat.get(0, 0, pixels);
+		int length = (int)(sz.width * sz.height * m_mat.channels());
+		if ( buf == null || buf.length < length ) {
+			buf = new short[length];
+		}
+		m_mat.get(0, 0, buf);
 		
-		return pixels;
+		return buf;
+	}
+	
+	/**
+	 * 픽셀 값들을 주어진 {@link ByteBuffer}의 현재 position부터 복사한다.
+	 * <p>
+	 * OpenCV Java binding은 {@link ByteBuffer}로의 직접 복사를 지원하지 않으므로,
+	 * {@link PixelBufferPool}에서 빌린 배열을 거쳐 복사한다. 복사 후 버퍼의 position은
+	 * 복사된 byte 수만큼 증가한다.
+	 * 
+	 * @param buf	픽셀 값들이 복사될 버퍼. direct 버퍼일 수 있다.
+	 * @return	복사된 byte 수.
+	 */
+	public int getDataBytes(ByteBuffer buf) {
+		int length = getDataByteCount();
+		if ( buf.remaining() < length ) {
+			throw new IllegalArgumentException("insufficient buffer: remaining=" + buf.remaining()
+												+ ", required=" + length);
+		}
+		
+		PixelBufferPool pool = PixelBufferPool.getDefault();
+		byte[] staging = pool.borrowBytes(length);
+		try {
+			m_mat.get(0, 0, staging);
+			buf.put(staging, 0, length);
+		}
+		finally {
+			pool.releaseBytes(staging);
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * 픽셀 값들을 저장하는 데 필요한 byte 수를 반환한다.
+	 */
+	public int getDataByteCount() {
+		Size sz = m_mat.size();
+		return (int)(sz.width * sz.height * m_mat.elemSize());
 	}
 
 	@Override
@@ -81,6 +152,35 @@ public class MatProxy implements ImageProxy, AutoCloseable {
 		return new Image(Mats.toJpegBytes(m_mat, jpegQuality), m_format);
 	}
 	
+	/**
+	 * 영상을 encoding 결과가 주어진 byte 수를 넘지 않도록 JPEG으로 encoding한다.
+	 * <p>
+	 * 한도를 맞추기 위해 품질이 낮아지거나 해상도가 줄어들 수 있다.
+	 * 
+	 * @see JpegEncoder#toImage(Mat, int, int)
+	 */
+	public final Image toJpegImage(int jpegQuality, int maxBytes) {
+		if ( m_mat == null ) {
+			throw new IllegalStateException("MatProxy has been released already");
+		}
+		
+		return JpegEncoder.getDefault().toImage(m_mat, jpegQuality, maxBytes);
+	}
+	
+	/**
+	 * 영상을 worker 쓰레드에서 JPEG으로 encoding한다.
+	 * <p>
+	 * 영상은 호출 쓰레드에서 복사되므로 호출 후 바로 재사용하여도 무방하다.
+	 */
+	public final CompletableFuture<Image> toJpegImageAsync(int jpegQuality) {
+		if ( m_mat == null ) {
+			throw new IllegalStateException("MatProxy has been released already");
+		}
+		
+		return JpegEncoder.getDefault().encodeAsync(m_mat, jpegQuality)
+							.thenApply(bytes -> new Image(bytes, m_format));
+	}
+	
 	public MatConvas getImageConvas() {
 		return new MatConvas(m_mat);
 	}
@@ -88,4 +188,16 @@ public class MatProxy implements ImageProxy, AutoCloseable {
 	public BufferedImage getBufferedImage() {
 		return Mats.toBufferedImage(m_mat);
 	}
+	
+	/**
+	 * 영상을 주어진 {@link BufferedImage}에 그린다.
+	 * <p>
+	 * 주어진 객체의 크기 및 타입이 맞지 않는 경우는 새 객체를 생성한다.
+	 * 
+	 * @param reused	재사용할 객체. {@code null}인 경우는 새로 생성한다.
+	 * @return	영상이 그려진 객체.
+	 */
+	public BufferedImage getBufferedImage(BufferedImage reused) {
+		return Mats.toBufferedImage(m_mat, reused);
+	}
 }
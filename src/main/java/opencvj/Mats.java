@@ -19,7 +19,6 @@ import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfByte;
-import org.opencv.core.MatOfInt;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.highgui.Highgui;
@@ -118,6 +117,20 @@ public final class Mats {
 	}
 	
 	public static BufferedImage toBufferedImage(Mat mat) {
+		return toBufferedImage(mat, null);
+	}
+	
+	/**
+	 * 주어진 영상을 {@link BufferedImage}로 변환한다.
+	 * <p>
+	 * 인자 <code>reused</code>의 크기와 타입이 변환 결과와 일치하는 경우는 해당 객체의
+	 * raster에 픽셀 값들을 직접 복사하고, 그렇지 않은 경우는 새 객체를 생성한다.
+	 * 
+	 * @param mat	변환할 영상.
+	 * @param reused	재사용할 객체. {@code null}인 경우는 새로 생성한다.
+	 * @return	변환된 객체.
+	 */
+	public static BufferedImage toBufferedImage(Mat mat, BufferedImage reused) {
 		Mat colored = new Mat();
 		Mat target = mat;
 		
@@ -151,12 +164,15 @@ public final class Mats {
 					throw new IllegalArgumentException("invalid mat: invalid channel: " + mat.channels());
 			}
 			
-			byte[] pixels = new byte[size.getArea() * (int)target.elemSize()];
-			target.get(0, 0, pixels);
+			BufferedImage bi = reused;
+			if ( bi == null || bi.getType() != type || bi.getWidth() != size.width
+				|| bi.getHeight() != size.height ) {
+				bi = new BufferedImage(size.width, size.height, type);
+			}
 			
-			BufferedImage bi = new BufferedImage(size.width, size.height, type);
+			// 중간 배열 없이 raster에 직접 복사한다.
 			byte[] tarPixels = ((DataBufferByte)bi.getRaster().getDataBuffer()).getData();
-			System.arraycopy(pixels, 0, tarPixels, 0, pixels.length);
+			target.get(0, 0, tarPixels);
 			
 			return bi;
 		}
@@ -276,16 +292,13 @@ public final class Mats {
 		}
 	}
 
+	/**
+	 * 주어진 영상을 JPEG으로 encoding한다.
+	 * <p>
+	 * Encoding 버퍼를 재사용하는 {@link JpegEncoder#getDefault()}를 사용한다.
+	 */
 	public static byte[] toJpegBytes(Mat image, int jpegQuality) {
-		MatOfByte jpegBuf = new MatOfByte();
-		MatOfInt jpegParams = new MatOfInt(Highgui.IMWRITE_JPEG_QUALITY, jpegQuality);
-		try {
-			Highgui.imencode(".jpg", image, jpegBuf, jpegParams);
-			return jpegBuf.toArray();
-		}
-		finally {
-			releaseAll(jpegBuf, jpegParams);
-		}
+		return JpegEncoder.getDefault().encode(image, jpegQuality);
 	}
 	
 	public static final Image toImage(Mat mat, int jpegQuality) {
@@ -3,8 +3,11 @@ package opencvj;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import opencvj.blob.AdaptiveImageThreshold;
 import opencvj.blob.BackgroundModel;
@@ -18,15 +21,21 @@ import opencvj.blob.MADepthBackgroundModel;
 import opencvj.blob.MADepthForegroundDetector;
 import opencvj.blob.SimpleImageThreshold;
 import opencvj.camera.CDCFactory;
+import opencvj.camera.CDCRecorder;
 import opencvj.camera.ColorDepthComposite;
 import opencvj.camera.ColorDepthCompositeFactory;
 import opencvj.camera.ColorDepthCompositeLoader;
 import opencvj.camera.HighGuiCamera;
+import opencvj.camera.ImageDirCamera;
+import opencvj.camera.MultiCameraGroup;
 import opencvj.camera.OpenCvJCamera;
 import opencvj.camera.OpenCvJCameraFactory;
 import opencvj.camera.OpenCvJCameraFactoryImpl;
 import opencvj.camera.OpenCvJCameraLoader;
 import opencvj.camera.OpenCvJDepthCamera;
+import opencvj.camera.RecordedCDC;
+import opencvj.camera.SoftwareSyncCDC;
+import opencvj.camera.VideoFileCamera;
 import opencvj.features2d.ImageStore;
 import opencvj.features2d.ObjectTemplateStore;
 import opencvj.track.Backprojector;
@@ -34,6 +43,7 @@ import opencvj.track.DeltaDepthBackprojector;
 import opencvj.track.HueBackprojector;
 import utils.config.ConfigNode;
 import utils.config.json.JsonConfiguration;
+import utils.io.IOUtils;
 
 
 
@@ -55,7 +65,8 @@ public final class OpenCvJSystem {
 												= new HashMap<String,OpenCvJCameraLoader>();
 	private static final Map<String,ColorDepthCompositeLoader> CDC_LOADERS
 													= new HashMap<String,ColorDepthCompositeLoader>();
-	private static final Map<String,BackgroundModel> BG_MODELS = new HashMap<String,BackgroundModel>();
+	private static final Map<String,BackgroundModel> BG_MODELS
+												= new ConcurrentHashMap<String,BackgroundModel>();
 	
 	private OpenCvJSystem() {
 		throw new AssertionError("Should not be called this one: " + OpenCvJSystem.class);
@@ -99,6 +110,9 @@ public final class OpenCvJSystem {
 		}
 		
 		registerOpenCvJCameraLoader("highgui", HIGHGUI_LOADER);
+		registerOpenCvJCameraLoader("video_file", VIDEO_FILE_LOADER);
+		registerOpenCvJCameraLoader("image_dir", IMAGE_DIR_LOADER);
+		registerCDCLoader("recorded", RECORDED_CDC_LOADER);
 	}
 	
 	public static void shutdown() {
@@ -160,6 +174,27 @@ public final class OpenCvJSystem {
 		}
 	};
 	
+	private static final OpenCvJCameraLoader VIDEO_FILE_LOADER = new OpenCvJCameraLoader() {
+		@Override
+		public OpenCvJCamera load(ConfigNode config) throws Exception {
+			return VideoFileCamera.create(config);
+		}
+	};
+	
+	private static final OpenCvJCameraLoader IMAGE_DIR_LOADER = new OpenCvJCameraLoader() {
+		@Override
+		public OpenCvJCamera load(ConfigNode config) throws Exception {
+			return ImageDirCamera.create(config);
+		}
+	};
+	
+	private static final ColorDepthCompositeLoader RECORDED_CDC_LOADER = new ColorDepthCompositeLoader() {
+		@Override
+		public ColorDepthComposite load(ConfigNode config) throws Exception {
+			return RecordedCDC.create(config);
+		}
+	};
+	
 	public static OpenCvJCamera createOpenCvJCamera(ConfigNode config) throws Exception {
 		ConfigNode typeNode = config.get("type");
 		if ( typeNode.isMissing() ) {
@@ -185,6 +220,37 @@ public final class OpenCvJSystem {
 		return cameraFact;
 	}
 	
+	/**
+	 * 주어진 설정의 'cameras' 배열에 정의된 카메라들로 구성된 {@link MultiCameraGroup}을 생성한다.
+	 * <p>
+	 * 배열의 각 원소는 카메라 설정이거나, 카메라 설정의 경로 문자열이다.
+	 */
+	public static MultiCameraGroup createMultiCameraGroup(ConfigNode config) throws Exception {
+		ConfigNode camerasConfig = config.get("cameras");
+		if ( !camerasConfig.isArray() ) {
+			throw new IllegalArgumentException("invalid MultiCameraGroup ConfigNode: no 'cameras' array, config=" + config);
+		}
+		
+		List<OpenCvJCameraFactory> facts = new ArrayList<OpenCvJCameraFactory>();
+		try {
+			for ( int i =0; i < camerasConfig.size(); ++i ) {
+				ConfigNode cameraConfig = camerasConfig.get(i);
+				if ( !cameraConfig.isMap() ) {
+					cameraConfig = getConfigNode(cameraConfig.asString());
+				}
+				facts.add(createOpenCvJCameraFactory(cameraConfig));
+			}
+			
+			return MultiCameraGroup.create(facts, config);
+		}
+		catch ( Exception e ) {
+			for ( OpenCvJCameraFactory fact: facts ) {
+				((OpenCvJCameraFactoryImpl)fact).destroy();
+			}
+			throw e;
+		}
+	}
+	
 	public static OpenCvJDepthCamera createOpenCvJDepthCamera(ConfigNode config) throws Exception {
 		OpenCvJCamera camera = createOpenCvJCamera(config);
 		if ( camera instanceof OpenCvJDepthCamera ) {
@@ -198,6 +264,21 @@ public final class OpenCvJSystem {
 	public static final ColorDepthCompositeFactory createCDCFactory(ConfigNode config)
 		throws Exception {
 		ColorDepthComposite cdc = createCDC(config);
+		
+		// 'software_sync'가 지정된 경우는 칼라/깊이 카메라를 별도로 capture하여 시각 기준으로 짝짓는다.
+		ConfigNode syncConfig = config.get("software_sync");
+		if ( !syncConfig.isMissing() ) {
+			cdc = SoftwareSyncCDC.create(cdc, syncConfig);
+		}
+		
+		// 'record_filepath'가 지정된 경우는 capture되는 영상들을 파일에 기록한다.
+		ConfigNode recordConfig = config.get("record_filepath");
+		if ( !recordConfig.isMissing() ) {
+			CDCRecorder recorder = CDCRecorder.create(cdc, recordConfig.asFile());
+			recorder.setDepthCompression(config.get("record_compress_depth").asBoolean(false));
+			cdc = recorder;
+		}
+		
 		return CDCFactory.create(cdc, config);
 	}
 	
@@ -223,7 +304,12 @@ public final class OpenCvJSystem {
 			}
 			
 			BackgroundModel model = BackgroundModel.create(config);
-			BG_MODELS.putIfAbsent(bgModelType, model);
+			BackgroundModel prev = BG_MODELS.putIfAbsent(bgModelType, model);
+			if ( prev != null ) {
+				// 다른 쓰레드가 먼저 등록한 경우는 등록된 모델을 공유한다.
+				IOUtils.closeQuietly(model);
+				return prev;
+			}
 			
 			return model;
 		}
@@ -418,16 +418,10 @@ public final class OpenCvJUtils {
 	public static final int eatFramesMillis(OpenCvJCamera cam, long millis) {
 		int count = 0;
 
-		Mat image = new Mat();
-		try {
-			long due = System.currentTimeMillis() + millis;
-			while ( System.currentTimeMillis() <= due ) {
-				cam.capture(image);
-				++count;
-			}
-		}
-		finally {
-			image.release();
+		long due = System.currentTimeMillis() + millis;
+		while ( System.currentTimeMillis() <= due ) {
+			cam.grab();
+			++count;
 		}
 
 		return count;
@@ -0,0 +1,144 @@
+package opencvj;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * 영상 픽셀 export에 사용되는 배열 및 direct {@link ByteBuffer}들을 재사용하기 위한 pool.
+ * <p>
+ * 매 frame마다 영상 크기의 배열을 새로 할당하는 경우 큰 객체들이 곧바로 old generation에
+ * 할당되어 GC 지연을 유발하므로, 동일 크기의 버퍼들을 반납받아 재사용한다.
+ * 버퍼는 크기별로 최대 {@link #getMaxPooledPerSize()}개까지 보관되며, 그 이상 반납된 버퍼는
+ * 버려진다. 빌려간 버퍼는 사용 후 해당 <code>release</code> 메소드로 반납하여야 한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class PixelBufferPool {
+	private static final int DEF_MAX_POOLED_PER_SIZE = 4;
+	private static final PixelBufferPool s_default = new PixelBufferPool(DEF_MAX_POOLED_PER_SIZE);
+
+	private final int m_maxPooledPerSize;
+	private final Pool<byte[]> m_bytes = new Pool<>();
+	private final Pool<short[]> m_shorts = new Pool<>();
+	private final Pool<ByteBuffer> m_directs = new Pool<>();
+
+	/**
+	 * 전역적으로 공유되는 pool을 반환한다.
+	 */
+	public static PixelBufferPool getDefault() {
+		return s_default;
+	}
+
+	public PixelBufferPool(int maxPooledPerSize) {
+		if ( maxPooledPerSize < 0 ) {
+			throw new IllegalArgumentException("invalid maxPooledPerSize: " + maxPooledPerSize);
+		}
+
+		m_maxPooledPerSize = maxPooledPerSize;
+	}
+
+	public int getMaxPooledPerSize() {
+		return m_maxPooledPerSize;
+	}
+
+	/**
+	 * 주어진 길이의 byte 배열을 빌린다. 배열의 내용은 초기화되지 않는다.
+	 */
+	public byte[] borrowBytes(int length) {
+		byte[] buf = m_bytes.poll(length);
+		return (buf != null) ? buf : new byte[length];
+	}
+
+	public void releaseBytes(byte[] buf) {
+		if ( buf != null ) {
+			m_bytes.offer(buf.length, buf, m_maxPooledPerSize);
+		}
+	}
+
+	/**
+	 * 주어진 길이의 short 배열을 빌린다. 배열의 내용은 초기화되지 않는다.
+	 */
+	public short[] borrowShorts(int length) {
+		short[] buf = m_shorts.poll(length);
+		return (buf != null) ? buf : new short[length];
+	}
+
+	public void releaseShorts(short[] buf) {
+		if ( buf != null ) {
+			m_shorts.offer(buf.length, buf, m_maxPooledPerSize);
+		}
+	}
+
+	/**
+	 * 주어진 용량의 direct {@link ByteBuffer}를 빌린다.
+	 * <p>
+	 * 반환되는 버퍼는 position이 0, limit이 용량으로 설정되며, byte order는 native order이다.
+	 */
+	public ByteBuffer borrowDirect(int capacity) {
+		ByteBuffer buf = m_directs.poll(capacity);
+		if ( buf == null ) {
+			buf = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+		}
+		buf.clear();
+
+		return buf;
+	}
+
+	public void releaseDirect(ByteBuffer buf) {
+		if ( buf != null && buf.isDirect() ) {
+			m_directs.offer(buf.capacity(), buf, m_maxPooledPerSize);
+		}
+	}
+
+	/**
+	 * Pool에 보관 중인 모든 버퍼들을 버린다.
+	 */
+	public void clear() {
+		m_bytes.clear();
+		m_shorts.clear();
+		m_directs.clear();
+	}
+
+	private static final class Pool<T> {
+		private final ConcurrentMap<Integer,Slot<T>> m_slots = new ConcurrentHashMap<>();
+
+		T poll(int size) {
+			Slot<T> slot = m_slots.get(size);
+			if ( slot == null ) {
+				return null;
+			}
+
+			T buf = slot.m_bufs.pollFirst();
+			if ( buf != null ) {
+				slot.m_count.decrementAndGet();
+			}
+
+			return buf;
+		}
+
+		void offer(int size, T buf, int maxCount) {
+			Slot<T> slot = m_slots.computeIfAbsent(size, k -> new Slot<T>());
+			if ( slot.m_count.incrementAndGet() <= maxCount ) {
+				slot.m_bufs.addFirst(buf);
+			}
+			else {
+				slot.m_count.decrementAndGet();
+			}
+		}
+
+		void clear() {
+			m_slots.clear();
+		}
+	}
+
+	private static final class Slot<T> {
+		private final Deque<T> m_bufs = new ConcurrentLinkedDeque<>();
+		private final AtomicInteger m_count = new AtomicInteger(0);
+	}
+}
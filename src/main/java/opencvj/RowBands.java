@@ -0,0 +1,120 @@
+package opencvj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.opencv.core.Mat;
+
+
+/**
+ * 동일한 행 수를 갖는 Mat들을 행 방향 band들로 나누어 병렬로 처리하는 유틸리티 클래스.
+ * <p>
+ * 각 band에 대해 주어진 Mat들의 같은 행 구간에 해당하는 submat들이 만들어져 {@link Body}에
+ * 전달된다. 픽셀 단위로 독립적인 연산의 경우, band별로 처리한 결과는 전체 영상을 한번에 처리한
+ * 결과와 동일하다. Band 처리는 {@link ForkJoinPool#commonPool()}에서 수행되며, 마지막 band는
+ * 호출 쓰레드에서 직접 처리된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class RowBands {
+	/** 하나의 band가 가질 최소 행 수 */
+	private static final int MIN_ROWS_PER_BAND = 16;
+
+	private RowBands() {
+		throw new AssertionError("Should not be called this one: " + RowBands.class);
+	}
+
+	public static interface Body {
+		/**
+		 * 하나의 band를 처리한다.
+		 *
+		 * @param band	band 번호 (0부터 시작).
+		 * @param mats	band에 해당하는 submat들. 인자로 주어진 Mat들과 같은 순서를 갖는다.
+		 */
+		public void run(int band, Mat[] mats);
+	}
+
+	/**
+	 * 주어진 Mat들의 행 수와 병렬도에 따라 실제 사용될 band의 수를 반환한다.
+	 */
+	public static int getBandCount(int rows, int parallelism) {
+		return Math.max(1, Math.min(parallelism, rows / MIN_ROWS_PER_BAND));
+	}
+
+	/**
+	 * 주어진 Mat들을 band로 나누어 병렬로 처리한다.
+	 * <p>
+	 * 실제 band 수가 1인 경우는 submat을 만들지 않고 인자로 주어진 Mat들을 그대로
+	 * 호출 쓰레드에서 처리한다. 모든 band의 처리가 끝날 때까지 반환되지 않으며, band 처리 중
+	 * 발생된 예외는 호출자에게 다시 던져진다.
+	 *
+	 * @param parallelism	최대 band 수.
+	 * @param body	band 처리 객체.
+	 * @param mats	처리 대상 Mat들. 모두 같은 행 수를 가져야 한다.
+	 */
+	public static void forEach(int parallelism, Body body, Mat... mats) {
+		int rows = mats[0].rows();
+		for ( Mat mat: mats ) {
+			if ( mat.rows() != rows ) {
+				throw new IllegalArgumentException("row count mismatch: " + rows + " <-> " + mat.rows());
+			}
+		}
+
+		int nbands = getBandCount(rows, parallelism);
+		if ( nbands == 1 ) {
+			body.run(0, mats);
+			return;
+		}
+
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(nbands-1);
+		for ( int band =0; band < nbands-1; ++band ) {
+			final int bandNo = band;
+			tasks.add(ForkJoinPool.commonPool().submit(() -> runBand(bandNo, nbands, rows, body, mats)));
+		}
+
+		RuntimeException failure = null;
+		try {
+			runBand(nbands-1, nbands, rows, body, mats);
+		}
+		catch ( RuntimeException e ) {
+			failure = e;
+		}
+
+		// 실패 여부와 무관하게 모든 band가 끝날 때까지 기다린다.
+		for ( ForkJoinTask<?> task: tasks ) {
+			try {
+				task.join();
+			}
+			catch ( RuntimeException e ) {
+				if ( failure == null ) {
+					failure = e;
+				}
+			}
+		}
+		if ( failure != null ) {
+			throw failure;
+		}
+	}
+
+	private static void runBand(int band, int nbands, int rows, Body body, Mat[] mats) {
+		int start = (int)((long)rows * band / nbands);
+		int end = (int)((long)rows * (band+1) / nbands);
+
+		Mat[] subs = new Mat[mats.length];
+		try {
+			for ( int i =0; i < mats.length; ++i ) {
+				subs[i] = mats[i].rowRange(start, end);
+			}
+			body.run(band, subs);
+		}
+		finally {
+			for ( Mat sub: subs ) {
+				if ( sub != null ) {
+					sub.release();
+				}
+			}
+		}
+	}
+}
@@ -5,6 +5,7 @@ import org.opencv.core.Mat;
 import org.opencv.imgproc.Imgproc;
 
 import opencvj.OpenCvJException;
+import opencvj.camera.FrameContext;
 import utils.config.ConfigNode;
 
 
@@ -71,6 +72,20 @@ public class AdaptiveImageThreshold implements ImageThreshold {
 		}
 	}
 	
+	/**
+	 * Context가 관리하는 회색조 영상을 사용하여 blob을 검출한다.
+	 */
+	@Override
+	public void detect(FrameContext ctx, Mat blobMask) throws OpenCvJException {
+		int type = ctx.getImage().type();
+		if ( type != CvType.CV_8UC3 && type != CvType.CV_8UC1 ) {
+			throw new OpenCvJException("unsupported image type: " + type);
+		}
+		
+		Imgproc.adaptiveThreshold(ctx.getGray(), blobMask, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C,
+									m_thresholdType, m_blockSize, m_C);
+	}
+	
 	@Override
 	public String toString() {
 		return String.format("%s[block_size=%d,C=%d]", getClass().getSimpleName(), m_blockSize, m_C);
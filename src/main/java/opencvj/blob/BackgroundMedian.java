@@ -0,0 +1,156 @@
+package opencvj.blob;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import opencvj.OpenCvJUtils;
+import opencvj.RowBands;
+
+
+/**
+ * 여러 frame들로부터 픽셀별 중간값(median)을 구하여 초기 배경 모델을 계산하는 유틸리티 클래스.
+ * <p>
+ * 이동 평균 방식으로 frame을 하나씩 반영하는 경우에 비해 적은 수의 frame으로도 잡음이나
+ * 지나가는 물체에 영향을 덜 받는 배경을 얻을 수 있다. 계산은 행 방향 band들로 나누어
+ * 병렬로 수행된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class BackgroundMedian {
+	private static final int GAUGE_INIT = 128;
+	private static final int GAUGE_MAX = 255;
+
+	private BackgroundMedian() {
+		throw new AssertionError("Should not be called this one: " + BackgroundMedian.class);
+	}
+
+	/**
+	 * 거리 영상(CV_16SC1)들로부터 배경 모델과 blind 영역 gauge를 계산한다.
+	 * <p>
+	 * 배경 모델은 유효한(0이 아닌) 거리 값들의 중간값이며, 모든 frame에서 거리 값이 없는 픽셀은
+	 * 0으로 설정된다. Gauge는 주어진 frame들을 순서대로 하나씩 학습시킨 경우와 동일한 값을 갖는다.
+	 *
+	 * @param frames	거리 영상들.
+	 * @param model		배경 모델이 저장될 Mat (CV_32FC1).
+	 * @param gauge		blind 영역 gauge가 저장될 Mat (CV_8UC1).
+	 */
+	static void calcDepth(List<Mat> frames, Mat model, Mat gauge, int parallelism) {
+		Size size = checkFrames(frames, CvType.CV_16SC1);
+		model.create(size, CvType.CV_32FC1);
+		gauge.create(size, CvType.CV_8UC1);
+
+		final int nframes = frames.size();
+		Mat[] mats = frames.toArray(new Mat[nframes + 2]);
+		mats[nframes] = model;
+		mats[nframes+1] = gauge;
+		RowBands.forEach(parallelism, (band, subs) -> calcDepthBand(subs, nframes), mats);
+	}
+
+	/**
+	 * 칼라 영상(8bit)들로부터 채널별 중간값으로 구성된 배경 모델을 계산한다.
+	 *
+	 * @param frames	칼라 영상들.
+	 * @param model		배경 모델이 저장될 Mat (CV_32FC(n)).
+	 */
+	static void calcColor(List<Mat> frames, Mat model, int parallelism) {
+		int type = frames.get(0).type();
+		if ( CvType.depth(type) != CvType.CV_8U ) {
+			throw new IllegalArgumentException("unsupported image type: "
+												+ CvType.typeToString(type));
+		}
+		Size size = checkFrames(frames, type);
+		model.create(size, CvType.CV_32FC(CvType.channels(type)));
+
+		final int nframes = frames.size();
+		Mat[] mats = frames.toArray(new Mat[nframes + 1]);
+		mats[nframes] = model;
+		RowBands.forEach(parallelism, (band, subs) -> calcColorBand(subs, nframes), mats);
+	}
+
+	private static void calcDepthBand(Mat[] subs, int nframes) {
+		int npixels = (int)subs[0].total();
+		short[][] depths = new short[nframes][npixels];
+		for ( int i =0; i < nframes; ++i ) {
+			subs[i].get(0, 0, depths[i]);
+		}
+
+		float[] model = new float[npixels];
+		byte[] gauge = new byte[npixels];
+		short[] samples = new short[nframes];
+		for ( int p =0; p < npixels; ++p ) {
+			int nvalids = 0;
+			int g = GAUGE_INIT;
+			for ( int i =0; i < nframes; ++i ) {
+				short depth = depths[i][p];
+				if ( depth != 0 ) {
+					samples[nvalids++] = depth;
+					g = Math.min(g + 1, GAUGE_MAX);
+				}
+				else {
+					g = Math.max(g - 1, 0);
+				}
+			}
+
+			if ( nvalids > 0 ) {
+				Arrays.sort(samples, 0, nvalids);
+				int mid = nvalids / 2;
+				model[p] = (nvalids % 2 == 1) ? samples[mid] : (samples[mid-1] + samples[mid]) / 2f;
+			}
+			gauge[p] = (byte)g;
+		}
+
+		subs[nframes].put(0, 0, model);
+		subs[nframes+1].put(0, 0, gauge);
+	}
+
+	private static void calcColorBand(Mat[] subs, int nframes) {
+		int nvalues = (int)(subs[0].total() * subs[0].channels());
+		byte[][] pixels = new byte[nframes][nvalues];
+		for ( int i =0; i < nframes; ++i ) {
+			subs[i].get(0, 0, pixels[i]);
+		}
+
+		float[] model = new float[nvalues];
+		int[] samples = new int[nframes];
+		int mid = nframes / 2;
+		for ( int v =0; v < nvalues; ++v ) {
+			for ( int i =0; i < nframes; ++i ) {
+				samples[i] = pixels[i][v] & 0xFF;
+			}
+
+			Arrays.sort(samples);
+			model[v] = (nframes % 2 == 1) ? samples[mid] : (samples[mid-1] + samples[mid]) / 2f;
+		}
+
+		subs[nframes].put(0, 0, model);
+	}
+
+	private static Size checkFrames(List<Mat> frames, int type) {
+		if ( frames.isEmpty() ) {
+			throw new IllegalArgumentException("no frames to learn");
+		}
+
+		Size size = frames.get(0).size();
+		for ( Mat frame: frames ) {
+			if ( frame.empty() ) {
+				throw new IllegalArgumentException("source image is empty");
+			}
+			if ( frame.type() != type ) {
+				throw new IllegalArgumentException("invalid frame type: "
+													+ CvType.typeToString(frame.type()) + " <-> "
+													+ CvType.typeToString(type));
+			}
+			if ( !frame.size().equals(size) ) {
+				throw new IllegalArgumentException("frame size mismatch: "
+													+ OpenCvJUtils.toString(frame.size()) + " <-> "
+													+ OpenCvJUtils.toString(size));
+			}
+		}
+
+		return size;
+	}
+}
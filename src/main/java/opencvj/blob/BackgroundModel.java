@@ -1,7 +1,11 @@
 package opencvj.blob;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 
 import org.opencv.core.Mat;
+import org.opencv.core.Size;
 
 import opencvj.OpenCvJException;
 import utils.config.ConfigNode;
@@ -14,6 +18,35 @@ import utils.config.ConfigNode;
  */
 public interface BackgroundModel extends BackgroundLearnable, AutoCloseable {
 	public Mat getBackgroundModel();
+	
+	/**
+	 * 주어진 frame들로부터 픽셀별 중간값을 구하여 배경 모델을 새로 설정한다.
+	 * <p>
+	 * 기존에 학습된 배경 모델은 버려진다. 계산은 여러 core에서 병렬로 수행된다.
+	 * 
+	 * @param frames	배경 학습에 사용할 영상들. 모두 같은 크기와 타입을 가져야 한다.
+	 */
+	public void learnBackground(List<Mat> frames);
+	
+	/**
+	 * 학습된 배경 모델을 주어진 파일에 저장한다.
+	 */
+	public void save(Path path) throws IOException;
+	
+	/**
+	 * {@link #save(Path)}를 통해 저장된 배경 모델을 읽어 현재 모델을 대체한다.
+	 * <p>
+	 * 저장된 모델의 영상 크기나 설정이 현재와 다른 경우는 {@link OpenCvJException}을 발생시키며,
+	 * 이때 현재 모델은 변경되지 않는다.
+	 * 
+	 * @param path	배경 모델 파일 경로.
+	 * @param size	기대되는 영상 크기. null인 경우는 검사하지 않는다.
+	 */
+	public void load(Path path, Size size) throws IOException;
+	
+	public default void load(Path path) throws IOException {
+		load(path, null);
+	}
 
 	public static BackgroundModel create(ConfigNode config) {
 		BackgroundModel bgModel;
@@ -0,0 +1,307 @@
+package opencvj.blob;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import opencvj.OpenCvJException;
+import opencvj.OpenCvJUtils;
+
+
+/**
+ * 학습된 배경 모델을 저장하는 snapshot 파일의 형식을 정의한다.
+ * <p>
+ * 파일은 고정 크기의 header와 두 개의 영상(배경 모델과 모델별 보조 영상)의 픽셀들로 구성된다.
+ * 파일은 heap buffer를 통해 기록되고 읽혀지며 memory-mapping을 사용하지 않는다. Mapping은
+ * GC될 때까지 해제되지 않아, Windows에서는 기록 후 대상 파일로의 이동이 거부되기 때문이다.
+ * <pre>
+ * header (64 bytes):
+ *    int magic, int version, int kind,
+ *    int width, int height, int modelType, int auxType,
+ *    float updateRate, long timestamp (저장 시각, epoch millis),
+ *    long modelOffset, long auxOffset, (reserved)
+ * model pixels, aux pixels
+ * </pre>
+ * 모든 값은 little-endian으로 기록된다. 파일은 임시 파일에 기록된 후 대상 파일로 이동되므로,
+ * 저장 도중 실패하더라도 기존 snapshot은 손상되지 않는다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class BackgroundSnapshot {
+	static final int MAGIC = 0x42474D53;	// "BGMS"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	static final int KIND_MA_DEPTH = 1;
+	static final int KIND_MA_COLOR = 2;
+
+	final Size m_size;
+	final float m_updateRate;
+	final long m_timestamp;
+	final Mat m_model;
+	final Mat m_aux;
+
+	private BackgroundSnapshot(Size size, float updateRate, long timestamp, Mat model, Mat aux) {
+		m_size = size;
+		m_updateRate = updateRate;
+		m_timestamp = timestamp;
+		m_model = model;
+		m_aux = aux;
+	}
+
+	void release() {
+		m_model.release();
+		m_aux.release();
+	}
+
+	static void write(Path path, int kind, float updateRate, Mat model, Mat aux)
+		throws IOException {
+		if ( !model.size().equals(aux.size()) ) {
+			throw new IllegalArgumentException("model and aux sizes differ: model="
+												+ OpenCvJUtils.toString(model.size()) + ", aux="
+												+ OpenCvJUtils.toString(aux.size()));
+		}
+
+		long modelBytes = getByteCount(model);
+		long auxBytes = getByteCount(aux);
+		long total = HEADER_SIZE + modelBytes + auxBytes;
+		if ( total > Integer.MAX_VALUE ) {
+			throw new OpenCvJException("background model too large: bytes=" + total);
+		}
+
+		Path parent = path.toAbsolutePath().getParent();
+		if ( parent != null ) {
+			Files.createDirectories(parent);
+		}
+
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try ( FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+													StandardOpenOption.TRUNCATE_EXISTING,
+													StandardOpenOption.WRITE) ) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+			header.putInt(MAGIC).putInt(VERSION).putInt(kind);
+			header.putInt(model.cols()).putInt(model.rows()).putInt(model.type()).putInt(aux.type());
+			header.putFloat(updateRate).putLong(System.currentTimeMillis());
+			header.putLong(HEADER_SIZE).putLong(HEADER_SIZE + modelBytes);
+			header.position(HEADER_SIZE);
+			writeFully(channel, header);
+
+			writeFully(channel, toBuffer(model, modelBytes));
+			writeFully(channel, toBuffer(aux, auxBytes));
+			channel.force(true);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * 주어진 snapshot 파일을 읽는다.
+	 * <p>
+	 * 저장된 모델의 종류, 영상 크기 또는 update rate가 주어진 값과 다른 경우는
+	 * 오래된 snapshot으로 간주하여 {@link OpenCvJException}을 발생시킨다.
+	 *
+	 * @param size	기대되는 영상 크기. null인 경우는 검사하지 않는다.
+	 */
+	static BackgroundSnapshot read(Path path, int kind, Size size, float updateRate)
+		throws IOException {
+		try ( FileChannel channel = FileChannel.open(path, StandardOpenOption.READ) ) {
+			long fileSize = channel.size();
+			if ( fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE ) {
+				throw new OpenCvJException("invalid background snapshot: size=" + fileSize
+											+ ", path=" + path);
+			}
+
+			ByteBuffer buf = ByteBuffer.allocate((int)fileSize).order(BYTE_ORDER);
+			while ( buf.hasRemaining() ) {
+				if ( channel.read(buf) < 0 ) {
+					throw new OpenCvJException("truncated background snapshot: path=" + path);
+				}
+			}
+			buf.flip();
+			if ( buf.getInt() != MAGIC ) {
+				throw new OpenCvJException("invalid background snapshot: bad magic, path=" + path);
+			}
+			int version = buf.getInt();
+			if ( version != VERSION ) {
+				throw new OpenCvJException("unsupported background snapshot version: " + version);
+			}
+
+			int fileKind = buf.getInt();
+			if ( fileKind != kind ) {
+				throw new OpenCvJException(String.format("stale background snapshot: kind=%d <-> %d, "
+														+ "path=%s", fileKind, kind, path));
+			}
+			int width = buf.getInt();
+			int height = buf.getInt();
+			Size savedSize = new Size(width, height);
+			if ( size != null && !size.equals(savedSize) ) {
+				throw new OpenCvJException(String.format("stale background snapshot: size=%s <-> %s, "
+														+ "path=%s", OpenCvJUtils.toString(savedSize),
+														OpenCvJUtils.toString(size), path));
+			}
+			int modelType = buf.getInt();
+			int auxType = buf.getInt();
+			float savedRate = buf.getFloat();
+			if ( Float.compare(savedRate, updateRate) != 0 ) {
+				throw new OpenCvJException(String.format("stale background snapshot: update_rate=%s <-> %s, "
+														+ "path=%s", savedRate, updateRate, path));
+			}
+			long timestamp = buf.getLong();
+			long modelOffset = buf.getLong();
+			long auxOffset = buf.getLong();
+
+			// header 값들은 손상되었을 수 있으므로 Mat을 할당하기 전에 파일 크기와 비교하여 검사한다.
+			if ( width <= 0 || height <= 0 ) {
+				throw new OpenCvJException(String.format("invalid background snapshot: size=%dx%d, "
+														+ "path=%s", width, height, path));
+			}
+			checkPixelType(modelType, path);
+			checkPixelType(auxType, path);
+			long npixels = (long)width * height;
+			if ( npixels > fileSize
+				|| !isInFile(modelOffset, npixels * CvType.ELEM_SIZE(modelType), fileSize)
+				|| !isInFile(auxOffset, npixels * CvType.ELEM_SIZE(auxType), fileSize) ) {
+				throw new OpenCvJException("truncated background snapshot: path=" + path);
+			}
+
+			Mat model = new Mat(height, width, modelType);
+			Mat aux = new Mat(height, width, auxType);
+			try {
+				buf.position((int)modelOffset);
+				getPixels(buf, model);
+				buf.position((int)auxOffset);
+				getPixels(buf, aux);
+			}
+			catch ( RuntimeException e ) {
+				model.release();
+				aux.release();
+				throw e;
+			}
+
+			return new BackgroundSnapshot(savedSize, savedRate, timestamp, model, aux);
+		}
+	}
+
+	/**
+	 * 저장된 pixel 타입이 {@link #getPixels(ByteBuffer, Mat)}가 지원하는 타입인지 검사한다.
+	 */
+	private static void checkPixelType(int type, Path path) {
+		int depth = CvType.depth(type);
+		int channels = CvType.channels(type);
+		if ( type < 0 || depth > CvType.CV_64F || channels < 1 || channels > 4 ) {
+			throw new OpenCvJException("invalid background snapshot: type=" + type + ", path=" + path);
+		}
+	}
+
+	private static boolean isInFile(long offset, long nbytes, long fileSize) {
+		return offset >= HEADER_SIZE && offset <= fileSize - nbytes;
+	}
+
+	private static long getByteCount(Mat mat) {
+		return mat.total() * mat.elemSize();
+	}
+
+	private static ByteBuffer toBuffer(Mat mat, long nbytes) {
+		ByteBuffer buf = ByteBuffer.allocate((int)nbytes).order(BYTE_ORDER);
+		putPixels(buf, mat);
+
+		return buf;
+	}
+
+	/**
+	 * 주어진 buffer에 기록된 내용(처음부터 현재 위치까지)을 모두 channel에 기록한다.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while ( buf.hasRemaining() ) {
+			channel.write(buf);
+		}
+	}
+
+	private static void putPixels(ByteBuffer buf, Mat mat) {
+		int count = (int)(mat.total() * mat.channels());
+		switch ( CvType.depth(mat.type()) ) {
+			case CvType.CV_8U:
+			case CvType.CV_8S:
+				byte[] bytes = new byte[count];
+				mat.get(0, 0, bytes);
+				buf.put(bytes);
+				break;
+			case CvType.CV_16U:
+			case CvType.CV_16S:
+				short[] shorts = new short[count];
+				mat.get(0, 0, shorts);
+				buf.asShortBuffer().put(shorts);
+				buf.position(buf.position() + count*2);
+				break;
+			case CvType.CV_32S:
+				int[] ints = new int[count];
+				mat.get(0, 0, ints);
+				buf.asIntBuffer().put(ints);
+				buf.position(buf.position() + count*4);
+				break;
+			case CvType.CV_32F:
+				float[] floats = new float[count];
+				mat.get(0, 0, floats);
+				buf.asFloatBuffer().put(floats);
+				buf.position(buf.position() + count*4);
+				break;
+			case CvType.CV_64F:
+				double[] doubles = new double[count];
+				mat.get(0, 0, doubles);
+				buf.asDoubleBuffer().put(doubles);
+				buf.position(buf.position() + count*8);
+				break;
+			default:
+				throw new OpenCvJException("unsupported Mat type: " + CvType.typeToString(mat.type()));
+		}
+	}
+
+	private static void getPixels(ByteBuffer buf, Mat mat) {
+		int count = (int)(mat.total() * mat.channels());
+		switch ( CvType.depth(mat.type()) ) {
+			case CvType.CV_8U:
+			case CvType.CV_8S:
+				byte[] bytes = new byte[count];
+				buf.get(bytes);
+				mat.put(0, 0, bytes);
+				break;
+			case CvType.CV_16U:
+			case CvType.CV_16S:
+				short[] shorts = new short[count];
+				buf.asShortBuffer().get(shorts);
+				buf.position(buf.position() + count*2);
+				mat.put(0, 0, shorts);
+				break;
+			case CvType.CV_32S:
+				int[] ints = new int[count];
+				buf.asIntBuffer().get(ints);
+				buf.position(buf.position() + count*4);
+				mat.put(0, 0, ints);
+				break;
+			case CvType.CV_32F:
+				float[] floats = new float[count];
+				buf.asFloatBuffer().get(floats);
+				buf.position(buf.position() + count*4);
+				mat.put(0, 0, floats);
+				break;
+			case CvType.CV_64F:
+				double[] doubles = new double[count];
+				buf.asDoubleBuffer().get(doubles);
+				buf.position(buf.position() + count*8);
+				mat.put(0, 0, doubles);
+				break;
+			default:
+				throw new OpenCvJException("unsupported Mat type: " + CvType.typeToString(mat.type()));
+		}
+	}
+}
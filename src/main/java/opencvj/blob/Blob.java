@@ -76,7 +76,13 @@ public class Blob {
 	
 	public synchronized double area() {
 		if ( m_area < 0 ) {
-			m_area = Imgproc.contourArea(new MatOfPoint(m_pts));
+			MatOfPoint mop = new MatOfPoint(m_pts);
+			try {
+				m_area = Imgproc.contourArea(mop);
+			}
+			finally {
+				mop.release();
+			}
 		}
 		
 		return m_area;
@@ -4,6 +4,7 @@ package opencvj.blob;
 import org.opencv.core.Mat;
 
 import opencvj.OpenCvJException;
+import opencvj.camera.FrameContext;
 
 
 
@@ -13,4 +14,14 @@ import opencvj.OpenCvJException;
  */
 public interface BlobDetector {
 	public void detect(Mat image, Mat blobMask) throws OpenCvJException;
+	
+	/**
+	 * 주어진 context의 영상에서 blob을 검출한다.
+	 * <p>
+	 * 기본 구현은 원시 영상을 사용하므로, context의 유도 영상을 재사용할 수 있는 검출기는
+	 * 이 메소드를 재정의한다.
+	 */
+	public default void detect(FrameContext ctx, Mat blobMask) throws OpenCvJException {
+		detect(ctx.getImage(), blobMask);
+	}
 }
\ No newline at end of file
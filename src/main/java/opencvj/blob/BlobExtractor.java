@@ -14,6 +14,7 @@ import org.opencv.core.Point;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
+import opencvj.MatArena;
 import opencvj.Mats;
 import opencvj.OpenCvJException;
 import utils.config.ConfigNode;
@@ -75,8 +76,9 @@ public class BlobExtractor {
 	}
 	
 	public List<Blob> extractBlobs(Mat image) throws OpenCvJException {
-		Mat copied = new Mat();
-		Mat hier = new Mat();
+		MatArena arena = MatArena.open();
+		Mat copied = arena.get(image.size(), image.type());
+		Mat hier = arena.get();
 		List<MatOfPoint> contours = new ArrayList<MatOfPoint>();
 		try {
 			switch ( m_morph_action ) {
@@ -111,16 +113,17 @@ public class BlobExtractor {
 				}
 				
 				if ( m_approx_poly_epsilon > 0 ) {
+					MatOfPoint2f curve = new MatOfPoint2f(pts);
 					MatOfPoint2f approx = new MatOfPoint2f();
 					try {
-						Imgproc.approxPolyDP(new MatOfPoint2f(pts), approx, m_approx_poly_epsilon, true);
+						Imgproc.approxPolyDP(curve, approx, m_approx_poly_epsilon, true);
 						pts = approx.toArray();
 						if ( pts.length < 3 ) {
 							continue;
 						}
 					}
 					finally {
-						approx.release();
+						Mats.releaseAll(curve, approx);
 					}
 				}
 				
@@ -153,7 +156,7 @@ public class BlobExtractor {
 			return Collections.<Blob>emptyList();
 		}
 		finally {
-			Mats.releaseAll(copied, hier);
+			arena.close();
 			
 			for ( MatOfPoint mop: contours ) {
 				mop.release();
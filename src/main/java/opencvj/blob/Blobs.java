@@ -1,6 +1,12 @@
 package opencvj.blob;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import camus.service.SizeRange;
 import camus.service.image.ImageView;
@@ -16,8 +22,10 @@ import org.opencv.core.Size;
 
 import opencvj.Mats;
 import opencvj.OpenCvJ;
+import opencvj.OpenCvJException;
 import opencvj.OpenCvJUtils;
 import opencvj.OpenCvViewManager;
+import opencvj.camera.Frame;
 import opencvj.camera.OpenCvJCamera;
 import utils.config.ConfigNode;
 import utils.io.IOUtils;
@@ -29,6 +37,8 @@ import utils.io.IOUtils;
  * @author Kang-Woo Lee (ETRI)
  */
 public final class Blobs {
+	private static final int MAX_DUPLICATE_RETRIES = 100;
+	
 	private Blobs() {
 		throw new AssertionError("Should not be called this one: " + Blobs.class);
 	}
@@ -76,19 +86,110 @@ public final class Blobs {
 		return learnBackground(camera, model.getBackgroundModel(), millis, debugWindow);
 	}
 	
+	/**
+	 * 주어진 수의 frame들을 capture한 후, 이들로부터 한번에 배경 모델을 계산한다.
+	 * <p>
+	 * Frame을 하나씩 반영하는 {@link #learnBackground(OpenCvJCamera, BackgroundLearnable, long, ImageView)}와
+	 * 달리 픽셀별 중간값을 병렬로 계산하므로, 적은 수의 frame으로 안정된 배경을 얻을 수 있다.
+	 * <p>
+	 * 공유 카메라는 연속된 capture 요청에 같은 영상을 반환할 수 있으므로, frame의 순차 번호가
+	 * 직전 frame보다 증가하지 않은 경우는 다음 영상을 기다려 다시 capture한다.
+	 * 
+	 * @return	학습에 사용된 frame의 수.
+	 */
+	public static final int learnBackgroundInBulk(OpenCvJCamera camera, BackgroundModel model,
+												int nframes, ImageView debugWindow) {
+		if ( nframes <= 0 ) {
+			throw new IllegalArgumentException("invalid frame count: " + nframes);
+		}
+		
+		final List<Mat> frames = new ArrayList<Mat>(nframes);
+		try {
+			Frame last = null;
+			for ( int i =0; i < nframes; ++i ) {
+				Mat image = new Mat();
+				frames.add(image);
+				
+				Frame frame = new Frame(image);
+				camera.capture(frame);
+				for ( int retries =0; !isNewer(frame, last); ++retries ) {
+					if ( retries >= MAX_DUPLICATE_RETRIES ) {
+						throw new OpenCvJException("camera keeps returning the same frame: camera="
+													+ camera + ", seqNo=" + frame.getSequenceNo());
+					}
+					
+					camera.grab();
+					camera.capture(frame);
+				}
+				last = frame;
+			}
+			model.learnBackground(frames);
+			
+			if ( debugWindow != null ) {
+				debugWindow.draw(Mats.toBufferedImage(model.getBackground()));
+				debugWindow.updateView();
+			}
+			
+			return nframes;
+		}
+		finally {
+			Mats.releaseAll(frames);
+		}
+	}
+	
+	private static boolean isNewer(Frame frame, Frame last) {
+		if ( last == null || frame.getSequenceNo() == Frame.UNKNOWN_SEQUENCE_NO
+			|| !Objects.equals(frame.getSourceId(), last.getSourceId()) ) {
+			return true;
+		}
+		
+		return frame.getSequenceNo() > last.getSequenceNo();
+	}
+	
+	/**
+	 * 설정에 따라 주어진 카메라로부터 배경을 학습한다.
+	 * <p>
+	 * 설정에 'frames'가 지정되고 배경 모델이 {@link BackgroundModel}인 경우는 'period' 대신
+	 * 지정된 수의 frame들로부터 한번에 배경을 계산한다
+	 * ({@link #learnBackgroundInBulk(OpenCvJCamera, BackgroundModel, int, ImageView)}).
+	 * 설정에 'snapshot' 경로가 지정되고 배경 모델이 {@link BackgroundModel}인 경우는,
+	 * 해당 파일에 저장된 배경 모델을 먼저 읽어 학습을 생략한다. 파일이 없거나 영상 크기 또는
+	 * 설정이 다른 경우는 학습을 수행하고, 학습된 모델을 해당 파일에 저장한다.
+	 * 
+	 * @return	학습에 사용된 frame의 수. Snapshot을 읽은 경우는 0.
+	 */
 	public static final int learnBackground(OpenCvJCamera camera, BackgroundLearnable bgModel,
 											ConfigNode config, Logger logger) {
 		int nframes = 0;
 		
 		long learningMillis = config.traverse("period").asDuration(0);
-		if ( learningMillis > 0 ) {
-			if ( logger != null && logger.isInfoEnabled() ) {
-				logger.info("learning depth background: period=" + config.traverse("period").asString());
+		int bulkFrames = (bgModel instanceof BackgroundModel)
+						? config.traverse("frames").asInt(0) : 0;
+		if ( learningMillis > 0 || bulkFrames > 0 ) {
+			Path snapshot = null;
+			String snapshotPath = config.traverse("snapshot").asString(null);
+			if ( snapshotPath != null && bgModel instanceof BackgroundModel ) {
+				snapshot = Paths.get(snapshotPath);
 			}
 			
 			String winname = null;
 			camera.open();
 			try {
+				if ( snapshot != null && loadSnapshot((BackgroundModel)bgModel, snapshot,
+														camera.getSize(), logger) ) {
+					return 0;
+				}
+				
+				if ( logger != null && logger.isInfoEnabled() ) {
+					if ( bulkFrames > 0 ) {
+						logger.info("learning depth background: frames=" + bulkFrames);
+					}
+					else {
+						logger.info("learning depth background: period="
+									+ config.traverse("period").asString());
+					}
+				}
+				
 				camera.dropFrames(10);
 	    		
 				ImageView debugConvas = null;
@@ -97,10 +198,20 @@ public final class Blobs {
 	    			debugConvas = OpenCvViewManager.getView(winname, camera.getSize(), true, false);
 	    		}
 	    		
-	    		nframes = Blobs.learnBackground(camera, bgModel, learningMillis, debugConvas);
+	    		if ( bulkFrames > 0 ) {
+	    			nframes = Blobs.learnBackgroundInBulk(camera, (BackgroundModel)bgModel, bulkFrames,
+	    													debugConvas);
+	    		}
+	    		else {
+	    			nframes = Blobs.learnBackground(camera, bgModel, learningMillis, debugConvas);
+	    		}
 				if ( logger != null && logger.isInfoEnabled() ) {
 					logger.info("depth background learned: nframes=" + nframes);
 				}
+				
+				if ( snapshot != null ) {
+					saveSnapshot((BackgroundModel)bgModel, snapshot, logger);
+				}
 			}
 			finally {
 				IOUtils.closeQuietly(camera);
@@ -114,6 +225,43 @@ public final class Blobs {
 		return nframes;
 	}
 	
+	private static boolean loadSnapshot(BackgroundModel bgModel, Path path, Size size,
+										Logger logger) {
+		if ( !Files.exists(path) ) {
+			return false;
+		}
+		
+		try {
+			bgModel.load(path, size);
+			if ( logger != null && logger.isInfoEnabled() ) {
+				logger.info("background snapshot loaded: path=" + path);
+			}
+			
+			return true;
+		}
+		catch ( IOException | OpenCvJException e ) {
+			if ( logger != null ) {
+				logger.warn("fails to load background snapshot: path=" + path + ", cause=" + e);
+			}
+			
+			return false;
+		}
+	}
+	
+	private static void saveSnapshot(BackgroundModel bgModel, Path path, Logger logger) {
+		try {
+			bgModel.save(path);
+			if ( logger != null && logger.isInfoEnabled() ) {
+				logger.info("background snapshot saved: path=" + path);
+			}
+		}
+		catch ( IOException | RuntimeException e ) {
+			if ( logger != null ) {
+				logger.warn("fails to save background snapshot: path=" + path + ", cause=" + e);
+			}
+		}
+	}
+	
 	private static final Scalar MAX = new Scalar(255);
 	public static void newBlobMask(Size size, Mat mask, List<Blob> blobs) {
 		Mats.createIfNotValid(mask, size, CvType.CV_8UC1, OpenCvJ.ALL_0);
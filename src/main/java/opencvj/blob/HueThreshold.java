@@ -7,6 +7,7 @@ import org.opencv.imgproc.Imgproc;
 
 import opencvj.OpenCvJException;
 import opencvj.OpenCvJUtils;
+import opencvj.camera.FrameContext;
 import utils.config.ConfigNode;
 
 
@@ -54,6 +55,11 @@ public class HueThreshold implements ImageThreshold {
 		}
 	}
 	
+	@Override
+	public void detect(FrameContext ctx, Mat blobMask) throws OpenCvJException {
+		Core.inRange(ctx.getHsv(), m_lowerHSV, m_upperHSV, blobMask);
+	}
+	
 	@Override
 	public String toString() {
 		return String.format("%s[(%s):(%s)]", getClass().getSimpleName(), OpenCvJUtils.toString(m_lowerHSV),
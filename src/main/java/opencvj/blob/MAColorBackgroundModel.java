@@ -1,9 +1,14 @@
 package opencvj.blob;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
+import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
 import opencvj.Mats;
@@ -13,72 +18,130 @@ import utils.config.ConfigNode;
 
 
 /**
- * 
+ * 이동 평균 방식으로 학습되는 칼라 영상 배경 모델.
+ * <p>
+ * 배경 모델은 갱신될 때마다 새 {@link Snapshot}으로 만들어져 원자적으로 교체되므로,
+ * 여러 쓰레드에서 {@link #subtract(Mat, Rect, Mat)}를 lock 없이 동시에 호출할 수 있다.
+ * 배경 모델의 갱신은 동기화되어 한번에 하나씩 수행된다.
+ *
  * @author Kang-Woo Lee (ETRI)
  */
 public class MAColorBackgroundModel implements BackgroundModel {
-	private Mat m_bgModel = new Mat();		// CV_32F
-	private Mat m_bgImage = new Mat();
+	private final SnapshotHolder<Snapshot> m_snapshots = new SnapshotHolder<Snapshot>();
 	private final float m_updateRate;
-	
+
+	/**
+	 * 특정 시점의 배경 모델.
+	 * <p>
+	 * Snapshot의 내용은 공개된 후에는 변경되지 않는다. 반환되는 Mat들은 snapshot이
+	 * close되기 전까지만 유효하며, 수정하여서는 안된다.
+	 */
+	public static final class Snapshot extends SharedSnapshot {
+		private final Mat m_model;		// CV_32F
+		private final Mat m_image;
+
+		private Snapshot(Mat model, Mat image) {
+			m_model = model;
+			m_image = image;
+		}
+
+		public Mat getBackgroundModel() {
+			return m_model;
+		}
+
+		public Mat getBackground() {
+			return m_image;
+		}
+
+		private boolean isCompatible(Mat image) {
+			return m_image.size().equals(image.size()) && m_image.type() == image.type();
+		}
+
+		@Override
+		void dispose() {
+			Mats.releaseAll(m_model, m_image);
+		}
+	}
+
 	public static MAColorBackgroundModel create(ConfigNode config) {
 		return new MAColorBackgroundModel(config.get("update_rate").asFloat());
 	}
-	
+
 	public MAColorBackgroundModel(float updateRate) {
 		m_updateRate = updateRate;
 	}
 
 	@Override
-	public void close() {
-		m_bgModel.release();
-		m_bgImage.release();
+	public synchronized void close() {
+		m_snapshots.close();
+	}
+
+	/**
+	 * 현재 배경 모델의 snapshot을 획득한다.
+	 * <p>
+	 * 획득한 snapshot은 이후 배경 모델이 갱신되더라도 변경되지 않으며,
+	 * 사용 후 반드시 close하여야 한다.
+	 *
+	 * @return	현재 배경 모델 snapshot. 배경이 학습되지 않은 경우는 null.
+	 */
+	public Snapshot acquireSnapshot() {
+		return m_snapshots.acquire();
 	}
 
+	/**
+	 * 현재 배경 모델을 반환한다.
+	 * <p>
+	 * 반환된 Mat은 이후 배경 모델 갱신시 재사용될 수 있으므로, 다른 쓰레드에서 배경 모델이
+	 * 갱신되는 경우는 {@link #acquireSnapshot()}를 사용하여야 한다.
+	 */
 	@Override
 	public Mat getBackgroundModel() {
-		return m_bgModel;
+		Snapshot snapshot = m_snapshots.peek();
+		return (snapshot != null) ? snapshot.m_model : new Mat();
 	}
 
 	@Override
 	public Mat getBackground() {
-		return m_bgImage;
+		Snapshot snapshot = m_snapshots.peek();
+		return (snapshot != null) ? snapshot.m_image : new Mat();
 	}
-	
+
 	public void subtract(Mat image, Rect roi, Mat delta) {
 		if ( image.empty() ) {
 			throw new IllegalArgumentException("source image is empty");
 		}
 		Mats.createIfNotValid(delta, image.size(), CvType.CV_8UC1);
 
-		// background image가 설정되지 않은 경우는 인자로 온 영상을 배경 영상으로 설정한다.
-		if ( !Mats.isValid(m_bgImage) ) {
+		try ( Snapshot snapshot = m_snapshots.acquire() ) {
+			// background image가 설정되지 않은 경우는 전체를 전경으로 간주한다.
+			if ( snapshot == null ) {
+				if ( roi != null ) {
+					Mat deltaRoi = new Mat(delta, roi);
+					deltaRoi.setTo(OpenCvJ.ALL_255);
+					deltaRoi.release();
+				}
+				else {
+					delta.setTo(OpenCvJ.ALL_255);
+				}
+
+				return;
+			}
+
 			if ( roi != null ) {
+				Mat imageRoi = new Mat(image, roi);
+				Mat bgImageRoi = new Mat(snapshot.m_image, roi);
 				Mat deltaRoi = new Mat(delta, roi);
-				deltaRoi.setTo(OpenCvJ.ALL_255);
-				deltaRoi.release();
+				try {
+					_subtract(imageRoi, bgImageRoi, deltaRoi);
+				}
+				finally {
+					Mats.releaseAll(imageRoi, bgImageRoi, deltaRoi);
+				}
 			}
 			else {
-				delta.setTo(OpenCvJ.ALL_255);
-			}
-			
-			return;
-		}
-		
-		if ( roi != null ) {
-			Mat imageRoi = new Mat(image, roi);
-			Mat bgImageRoi = new Mat(m_bgImage, roi);
-			Mat deltaRoi = new Mat(delta, roi);
-			try {
-				_subtract(imageRoi, bgImageRoi, deltaRoi);
-			}
-			finally {
-				Mats.releaseAll(imageRoi, bgImageRoi, deltaRoi);
+				_subtract(image, snapshot.m_image, delta);
 			}
 		}
-		else {
-			_subtract(image, m_bgImage, delta);
-		}
 	}
 
 	@Override
@@ -86,7 +149,8 @@ public class MAColorBackgroundModel implements BackgroundModel {
 		updateBackgroundModel(image, m_updateRate);
 	}
 
-	public void updateBackgroundModel(Mat image, float updateRate) throws OpenCvJException {
+	public synchronized void updateBackgroundModel(Mat image, float updateRate)
+		throws OpenCvJException {
 		if ( image.empty() ) {
 			throw new IllegalArgumentException("source image is empty");
 		}
@@ -95,34 +159,100 @@ public class MAColorBackgroundModel implements BackgroundModel {
 												updateRate));
 		}
 
-		// background image가 설정되지 않은 경우는 인자로 온 영상을 배경 영상으로 설정한다.
-		if ( !Mats.isValid(m_bgImage) ) {
-			image.convertTo(m_bgModel, CvType.CV_32FC(image.channels()), 1.0, 0.0);
-			image.copyTo(m_bgImage);
+		// 더 이상 참조되지 않는 이전 snapshot이 있으면 재사용하고, 없으면 새로 만든다.
+		Snapshot next = m_snapshots.takeSpare();
+		if ( next != null && !next.isCompatible(image) ) {
+			next.dispose();
+			next = null;
+		}
+		if ( next == null ) {
+			next = new Snapshot(new Mat(), new Mat());
 		}
-		else {
-			Mat tmp = new Mat();
-			try {
+
+		Snapshot current = m_snapshots.peek();
+		Mat tmp = new Mat();
+		try {
+			// background image가 설정되지 않은 경우는 인자로 온 영상을 배경 영상으로 설정한다.
+			if ( current == null ) {
+				image.convertTo(next.m_model, CvType.CV_32FC(image.channels()), 1.0, 0.0);
+				image.copyTo(next.m_image);
+			}
+			else {
 				image.convertTo(tmp, CvType.CV_32FC(image.channels()));
-				Imgproc.accumulateWeighted(tmp, m_bgModel, updateRate);
+				current.m_model.copyTo(next.m_model);
+				Imgproc.accumulateWeighted(tmp, next.m_model, updateRate);
 
-				m_bgModel.convertTo(m_bgImage, image.type());
+				next.m_model.convertTo(next.m_image, image.type());
 			}
-			finally {
-				tmp.release();
+		}
+		catch ( RuntimeException e ) {
+			next.dispose();
+			throw e;
+		}
+		finally {
+			tmp.release();
+		}
+
+		m_snapshots.publish(next);
+	}
+
+	/**
+	 * 주어진 칼라 영상들의 채널별 중간값으로 배경 모델과 배경 영상을 설정한다.
+	 */
+	@Override
+	public void learnBackground(List<Mat> frames) {
+		Mat model = new Mat();
+		Mat image = new Mat();
+		try {
+			BackgroundMedian.calcColor(frames, model, Runtime.getRuntime().availableProcessors());
+			model.convertTo(image, frames.get(0).type());
+		}
+		catch ( RuntimeException e ) {
+			Mats.releaseAll(model, image);
+			throw e;
+		}
+
+		publish(new Snapshot(model, image));
+	}
+
+	/**
+	 * 배경 모델(CV_32F)과 배경 영상을 주어진 파일에 저장한다.
+	 */
+	@Override
+	public void save(Path path) throws IOException {
+		try ( Snapshot snapshot = m_snapshots.acquire() ) {
+			if ( snapshot == null ) {
+				throw new IllegalStateException("Background has not been learned");
 			}
+
+			BackgroundSnapshot.write(path, BackgroundSnapshot.KIND_MA_COLOR, m_updateRate,
+									snapshot.m_model, snapshot.m_image);
+		}
+	}
+
+	@Override
+	public void load(Path path, Size size) throws IOException {
+		BackgroundSnapshot snapshot = BackgroundSnapshot.read(path, BackgroundSnapshot.KIND_MA_COLOR,
+															size, m_updateRate);
+		Mat model = snapshot.m_model;
+		Mat image = snapshot.m_aux;
+		if ( CvType.depth(model.type()) != CvType.CV_32F || model.channels() != image.channels() ) {
+			snapshot.release();
+			throw new OpenCvJException("invalid color background snapshot: path=" + path);
 		}
+
+		publish(new Snapshot(model, image));
 	}
 
 	@Override
-	public void clearBackground() {
-		m_bgModel.release();
-		m_bgModel = new Mat();
-		
-		m_bgImage.release();
-		m_bgImage = new Mat();
-	}
-	
+	public synchronized void clearBackground() {
+		m_snapshots.publish(null);
+	}
+
+	private synchronized void publish(Snapshot snapshot) {
+		m_snapshots.publish(snapshot);
+	}
+
 	private void _subtract(Mat image, Mat bgImage, Mat diff) {
 		Mat tmp = new Mat();
 		try {
@@ -1,72 +1,180 @@
 package opencvj.blob;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.annotation.concurrent.GuardedBy;
+
 import camus.service.IntRange;
 
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
+import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
+import opencvj.MatArena;
 import opencvj.Mats;
+import opencvj.OpenCvJException;
 import opencvj.OpenCvJUtils;
+import opencvj.RowBands;
 import utils.config.ConfigNode;
 
 
 /**
+ * 이동 평균 방식으로 학습되는 거리 영상 배경 모델.
+ * <p>
+ * 배경 모델은 갱신될 때마다 새 {@link Snapshot}으로 만들어져 원자적으로 교체되므로,
+ * 여러 쓰레드의 전경 검출기들이 {@link #acquireSnapshot()}를 통해 lock 없이 동시에
+ * 배경 모델을 읽을 수 있다. 배경 모델의 갱신은 동기화되어 한번에 하나씩 수행된다.
  * 
  * @author Kang-Woo Lee (ETRI)
  */
 public class MADepthBackgroundModel implements BackgroundModel {
-	private Mat m_bgModel =null;			// CV_32F
-	private Mat m_bgBlindAreaGauge =null;
-	private Mat m_background = null;		// null: un-assigned
-	private Mat m_blindBgMask =null;
+	private final SnapshotHolder<Snapshot> m_snapshots = new SnapshotHolder<Snapshot>();
 	private final float m_updateRate;
+	private volatile int m_parallelism = 1;
+	
+	/**
+	 * 특정 시점의 배경 모델.
+	 * <p>
+	 * Snapshot의 내용은 공개된 후에는 변경되지 않는다. 반환되는 Mat들은 snapshot이
+	 * close되기 전까지만 유효하며, 수정하여서는 안된다.
+	 */
+	public static final class Snapshot extends SharedSnapshot {
+		private final Mat m_model;				// CV_32FC1
+		private final Mat m_gauge;				// CV_8UC1
+		private final Mat m_blindMask = new Mat();
+		@GuardedBy("this") private Mat m_background = null;		// null: un-assigned
+		
+		private Snapshot(Mat model, Mat gauge) {
+			m_model = model;
+			m_gauge = gauge;
+		}
+		
+		public Mat getBackgroundModel() {
+			return m_model;
+		}
+		
+		public Mat getBlindBackgroundMask() {
+			return m_blindMask;
+		}
+		
+		public synchronized Mat getBackground() {
+			if ( m_background == null ) {
+				m_background = new Mat();
+				m_model.convertTo(m_background, CvType.CV_16SC1);
+				m_background.setTo(ZERO, m_blindMask);
+			}
+			
+			return m_background;
+		}
+		
+		private boolean isCompatible(Size size) {
+			return m_model.size().equals(size) && m_gauge.size().equals(size);
+		}
+		
+		// 배경 모델 또는 gauge가 수정된 후 공개되기 전에 호출되어, 이들로부터 계산되는
+		// 값들을 다시 설정한다.
+		private synchronized void seal() {
+			Core.inRange(m_gauge, ZERO, new Scalar(127), m_blindMask);
+			if ( m_background != null ) {
+				m_background.release();
+				m_background = null;
+			}
+		}
+
+		@Override
+		synchronized void dispose() {
+			Mats.releaseAll(m_model, m_gauge, m_blindMask);
+			if ( m_background != null ) {
+				m_background.release();
+				m_background = null;
+			}
+		}
+	}
 	
 	public static MADepthBackgroundModel create(ConfigNode config) {
-		return new MADepthBackgroundModel(config.get("update_rate").asFloat());
+		MADepthBackgroundModel model = new MADepthBackgroundModel(config.get("update_rate").asFloat());
+		model.setParallelism(config.get("parallelism").asInt(1));
+		
+		return model;
 	}
 	
 	public MADepthBackgroundModel(float updateRate) {
 		m_updateRate = updateRate;
 	}
+	
+	public int getParallelism() {
+		return m_parallelism;
+	}
+	
+	/**
+	 * 배경 모델 갱신시 사용할 최대 band 수를 설정한다.
+	 * <p>
+	 * 1보다 큰 경우는 입력 영상을 행 방향 band들로 나누어 병렬로 갱신하며,
+	 * 갱신 결과는 병렬도와 무관하게 동일하다.
+	 */
+	public void setParallelism(int parallelism) {
+		m_parallelism = Math.max(1, parallelism);
+	}
 
 	@Override
-	public void close() {
-		if ( m_bgModel != null ) {
-			m_bgModel.release();
-		}
-		if ( m_bgBlindAreaGauge != null ) {
-			m_bgBlindAreaGauge.release();
-		}
-		if ( m_background != null ) {
-			m_background.release();
-		}
-		if ( m_blindBgMask != null ) {
-			m_blindBgMask.release();
+	public synchronized void close() {
+		m_snapshots.close();
+	}
+	
+	/**
+	 * 현재 배경 모델의 snapshot을 획득한다.
+	 * <p>
+	 * 획득한 snapshot은 이후 배경 모델이 갱신되더라도 변경되지 않으며,
+	 * 사용 후 반드시 close하여야 한다.
+	 * 
+	 * @return	현재 배경 모델 snapshot.
+	 * @throws IllegalStateException	배경 모델이 학습되지 않은 경우.
+	 */
+	public Snapshot acquireSnapshot() {
+		Snapshot snapshot = m_snapshots.acquire();
+		if ( snapshot == null ) {
+			throw new IllegalStateException("Background has not been learned");
 		}
+		
+		return snapshot;
 	}
 
+	/**
+	 * 현재 배경 모델을 반환한다.
+	 * <p>
+	 * 반환된 Mat은 이후 배경 모델 갱신시 재사용될 수 있으므로, 다른 쓰레드에서 배경 모델이
+	 * 갱신되는 경우는 {@link #acquireSnapshot()}를 사용하여야 한다.
+	 * 
+	 * @return	배경 모델 (CV_32FC1). 학습되지 않은 경우는 null.
+	 */
 	@Override
 	public Mat getBackgroundModel() {
-		return m_bgModel;
+		Snapshot snapshot = m_snapshots.peek();
+		return (snapshot != null) ? snapshot.m_model : null;
 	}
 
 	@Override
 	public Mat getBackground() {
-		if ( m_bgModel == null ) {
+		Snapshot snapshot = m_snapshots.peek();
+		if ( snapshot == null ) {
 			throw new IllegalStateException("Background has not been learned");
 		}
-		if ( m_background == null ) {
-			m_background = new Mat();
-			m_bgModel.convertTo(m_background, CvType.CV_16SC1);
-			
-			final Mat mask = getBlindBackgroundMask();
-			m_background.setTo(ZERO, mask);
+		
+		return snapshot.getBackground();
+	}
+	
+	public Mat getBlindBackgroundMask() {
+		Snapshot snapshot = m_snapshots.peek();
+		if ( snapshot == null ) {
+			throw new IllegalStateException("background has not been learned");
 		}
 		
-		return m_background;
+		return snapshot.m_blindMask;
 	}
 
 	@Override
@@ -78,108 +186,152 @@ public class MADepthBackgroundModel implements BackgroundModel {
 		update(image, rate);
 	}
 
+	/**
+	 * 주어진 거리 영상(CV_16SC1)들의 유효 거리 값의 중간값으로 배경 모델을 설정한다.
+	 * <p>
+	 * Blind 영역 gauge는 주어진 영상들을 순서대로 학습시킨 경우와 동일하게 설정된다.
+	 */
 	@Override
-	public void clearBackground() {
-		if ( m_bgModel != null ) {
-			m_bgModel.release();
-			m_bgModel = null;
-			
-			m_bgBlindAreaGauge.release();
-			m_bgBlindAreaGauge = null;
+	public void learnBackground(List<Mat> frames) {
+		Mat model = new Mat();
+		Mat gauge = new Mat();
+		try {
+			BackgroundMedian.calcDepth(frames, model, gauge,
+										Runtime.getRuntime().availableProcessors());
 		}
-		if ( m_blindBgMask != null ) {
-			m_blindBgMask.release();
-			m_blindBgMask = null;
+		catch ( RuntimeException e ) {
+			Mats.releaseAll(model, gauge);
+			throw e;
 		}
+		
+		publish(new Snapshot(model, gauge));
+	}
+
+	/**
+	 * 배경 모델(CV_32FC1)과 blind 영역 gauge(CV_8UC1)를 주어진 파일에 저장한다.
+	 */
+	@Override
+	public void save(Path path) throws IOException {
+		try ( Snapshot snapshot = acquireSnapshot() ) {
+			BackgroundSnapshot.write(path, BackgroundSnapshot.KIND_MA_DEPTH, m_updateRate,
+									snapshot.m_model, snapshot.m_gauge);
+		}
+	}
+
+	@Override
+	public void load(Path path, Size size) throws IOException {
+		BackgroundSnapshot snapshot = BackgroundSnapshot.read(path, BackgroundSnapshot.KIND_MA_DEPTH,
+															size, m_updateRate);
+		if ( snapshot.m_model.type() != CvType.CV_32FC1 || snapshot.m_aux.type() != CvType.CV_8UC1 ) {
+			snapshot.release();
+			throw new OpenCvJException("invalid depth background snapshot: path=" + path);
+		}
+		
+		publish(new Snapshot(snapshot.m_model, snapshot.m_aux));
+	}
+
+	@Override
+	public synchronized void clearBackground() {
+		m_snapshots.publish(null);
 	}
 	
 	private static final Scalar ZERO = Scalar.all(0);
 	private static final Scalar ONE = new Scalar(1);
 	private static final Scalar MIDDLE = new Scalar(128);
+	
+	private synchronized void publish(Snapshot snapshot) {
+		snapshot.seal();
+		m_snapshots.publish(snapshot);
+	}
 
-	private void update(Mat image, float updateRate) {
+	private synchronized void update(Mat image, float updateRate) {
 		if ( image.empty() ) {
 			throw new IllegalArgumentException("source image is empty");
 		}
-		if ( m_bgModel != null && !m_bgModel.size().equals(image.size()) ) {
+		
+		Snapshot current = m_snapshots.peek();
+		if ( current != null && !current.m_model.size().equals(image.size()) ) {
 			throw new IllegalArgumentException(
 						String.format("invalid depth frame size: depth.size=%s <-> background.size=%s",
 										OpenCvJUtils.toString(image.size()),
-										OpenCvJUtils.toString(m_bgModel.size())));
+										OpenCvJUtils.toString(current.m_model.size())));
 		}
 		
-		Mat nonBlindMask = new Mat();
-		Mat depthImage32f = new Mat();
-		Mat tmp = new Mat();
+		// 더 이상 참조되지 않는 이전 snapshot이 있으면 재사용하고, 없으면 새로 만든다.
+		Snapshot next = m_snapshots.takeSpare();
+		if ( next != null && !next.isCompatible(image.size()) ) {
+			next.dispose();
+			next = null;
+		}
+		if ( next == null ) {
+			next = new Snapshot(new Mat(image.size(), CvType.CV_32FC1),
+								new Mat(image.size(), CvType.CV_8UC1));
+		}
 		
+		boolean initial = current == null;
 		try {
+			if ( initial ) {
+				// background image가 설정되지 않은 경우는 인자로 온 영상을 배경 영상으로 설정한다.
+				// (blind 영역은 0으로 설정된다.)
+				next.m_model.setTo(ZERO);
+				next.m_gauge.setTo(MIDDLE);
+			}
+			else {
+				current.m_model.copyTo(next.m_model);
+				current.m_gauge.copyTo(next.m_gauge);
+			}
+			
+			// 모든 연산이 픽셀 단위이므로 band별로 나누어 갱신하여도 결과는 동일하다.
+			RowBands.forEach(m_parallelism,
+							(band, mats) -> updateBand(mats[0], mats[1], mats[2], initial, updateRate),
+							image, next.m_model, next.m_gauge);
+		}
+		catch ( RuntimeException e ) {
+			next.dispose();
+			throw e;
+		}
+		
+		publish(next);
+	}
+	
+	private static void updateBand(Mat image, Mat bgModel, Mat gauge, boolean initial,
+									float updateRate) {
+		try ( MatArena arena = MatArena.open() ) {
+			Mat nonBlindMask = arena.get(image.size(), CvType.CV_8UC1);
+			Mat depthImage32f = arena.get(image.size(), CvType.CV_32FC1);
+			Mat tmp = arena.get(image.size(), CvType.CV_8UC1);
+			
 			// 입력 값의 validity에 따라 guage 값에 반영한다.
 			//
-			updateBlindBackgroundGauge(image, nonBlindMask);
+			updateBlindBackgroundGauge(image, gauge, nonBlindMask);
 	
 			image.convertTo(depthImage32f, CvType.CV_32FC1);
-			if ( m_bgModel == null ) {
-				// background image가 설정되지 않은 경우는 인자로 온 영상을 배경 영상으로 설정한다.
-				m_bgModel = new Mat();
-				depthImage32f.copyTo(m_bgModel, nonBlindMask);
+			if ( initial ) {
+				depthImage32f.copyTo(bgModel, nonBlindMask);
 			}
 			else {
 				// 입력 영상 중 valid 입력 값을 가진 부분을 model에 learningRate 만큼 반영시킨다.
-				Imgproc.accumulateWeighted(depthImage32f, m_bgModel, updateRate, nonBlindMask);
+				Imgproc.accumulateWeighted(depthImage32f, bgModel, updateRate, nonBlindMask);
 				
 				// 지금까지 bgModel에서는 blind 영역이었지만, 입력 영상에는 non-blind한 영역이 있다면
 				// 입력 영상 값으로 초기화 시킨다.
-				Mats.calcRangeMask(m_bgModel, new IntRange(0,0), tmp);
+				Mats.calcRangeMask(bgModel, new IntRange(0,0), tmp);
 				Core.bitwise_and(tmp, nonBlindMask, tmp);
-				depthImage32f.copyTo(m_bgModel, tmp);
+				depthImage32f.copyTo(bgModel, tmp);
 			}
 		}
-		finally {
-			Mats.releaseAll(nonBlindMask, depthImage32f, tmp);
-		}
-		
-		// background model이 수정되었기 때문에, cache 역할을 하는 'm_background'는 invalid시킨다.
-		if ( m_background != null ) {
-			m_background.release();
-			m_background = null;
-		}
 	}
 
-	private void updateBlindBackgroundGauge(Mat image, Mat nonBlindMask) {
-		Mat blindMask = new Mat();
-		try {
+	private static void updateBlindBackgroundGauge(Mat image, Mat gauge, Mat nonBlindMask) {
+		try ( MatArena arena = MatArena.open() ) {
+			Mat blindMask = arena.get(image.size(), CvType.CV_8UC1);
+			
 			// 거리 값이 획득되지 못한 구역과 그렇지 않은 영역의 매스크 획득
 			Core.inRange(image, ZERO, ZERO, blindMask);	// blind 영역
 			Core.bitwise_not(blindMask, nonBlindMask);	// non-blind 영역
 			
-			if ( m_bgBlindAreaGauge == null ) {
-				m_bgBlindAreaGauge = new Mat(image.size(), CvType.CV_8UC1, MIDDLE);
-			}
-			Core.subtract(m_bgBlindAreaGauge, ONE, m_bgBlindAreaGauge, blindMask);
-			Core.add(m_bgBlindAreaGauge, ONE, m_bgBlindAreaGauge, nonBlindMask);
-			
-			// m_bgBlindAreaGauge가 수정되었기 때문에 cache에 해당하는 m_blindBgMask를
-			// invalidate 시킨다.
-			if ( m_blindBgMask != null ) {
-				m_blindBgMask.release();
-				m_blindBgMask = null;
-			}
-		}
-		finally {
-			blindMask.release();
-		}
-	}
-	
-	public Mat getBlindBackgroundMask() {
-		if ( m_blindBgMask == null ) {
-			if ( m_bgBlindAreaGauge == null ) {
-				throw new IllegalStateException("background has not been learned");
-			}
-			
-			m_blindBgMask = new Mat();
-			Core.inRange(m_bgBlindAreaGauge, ZERO, new Scalar(127), m_blindBgMask);
+			Core.subtract(gauge, ONE, gauge, blindMask);
+			Core.add(gauge, ONE, gauge, nonBlindMask);
 		}
-		
-		return m_blindBgMask;
 	}
 }
@@ -1,5 +1,6 @@
 package opencvj.blob;
 
+import java.util.Arrays;
 import java.util.List;
 
 import camus.service.IntRange;
@@ -10,10 +11,12 @@ import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 
+import opencvj.MatArena;
 import opencvj.Mats;
 import opencvj.OpenCvJ;
 import opencvj.OpenCvJSystem;
 import opencvj.OpenCvJUtils;
+import opencvj.RowBands;
 import utils.UninitializedException;
 import utils.config.ConfigNode;
 
@@ -33,6 +36,10 @@ public class MADepthForegroundDetector extends AbstractDeltaAwareForegroundDetec
 		IntRange validDepthRange = new IntRange(1, Short.MAX_VALUE);
 		IntRange backgroundDepthDelta;
 		int fgModelFlags = BG_MODEL_VALID_VALID + BG_MODEL_INVALID_VALID;
+		/** 배경 제거를 한번의 픽셀 순회로 수행하는 kernel을 사용할지 여부 (성능 이득은 측정되지 않음) */
+		boolean fusedKernel = false;
+		/** 배경 제거를 병렬로 수행할 때 사용할 최대 band 수. 1인 경우는 호출 쓰레드에서만 수행된다. */
+		int parallelism = 1;
 		
 		public static Params create(ConfigNode config) {
 			Params params = new Params();
@@ -43,6 +50,8 @@ public class MADepthForegroundDetector extends AbstractDeltaAwareForegroundDetec
 														config.get("bg_depth_delta"), null);
 			params.fgModelFlags = config.get("fg_model_flags")
 										.asInt(BG_MODEL_VALID_VALID + BG_MODEL_INVALID_VALID);
+			params.fusedKernel = config.get("fused_kernel").asBoolean(false);
+			params.parallelism = Math.max(1, config.get("parallelism").asInt(1));
 			
 			return params;
 		}
@@ -52,6 +61,9 @@ public class MADepthForegroundDetector extends AbstractDeltaAwareForegroundDetec
 	private MADepthBackgroundModel m_bgModel;
 	private final Mat m_tmpDelta32f = new Mat();
 	
+	// fused kernel에서 재사용되는 band별 픽셀 버퍼들
+	private PixelBuffers[] m_pixelBufs = new PixelBuffers[1];
+	
 	public static MADepthForegroundDetector create(ConfigNode config) {
 		MADepthBackgroundModel bgModel = (MADepthBackgroundModel)OpenCvJSystem
 																	.getBackgroundModel(config);
@@ -92,29 +104,32 @@ public class MADepthForegroundDetector extends AbstractDeltaAwareForegroundDetec
 	}
 	
 	private void subtract(Mat image, Rect roi, Mat delta32f, Mat fgMask) {
-		Mat bgMat = m_bgModel.getBackgroundModel();
-		Mat blindBgMask = m_bgModel.getBlindBackgroundMask();
-		
-		if ( roi != null ) {
-			Mats.createIfNotValid(delta32f, image.size(), CvType.CV_32FC1, OpenCvJ.ALL_0);
-			Mats.createIfNotValid(fgMask, image.size(), CvType.CV_8UC1, OpenCvJ.ALL_0);
-			
-			Mat imageRoi = new Mat(image, roi);
-			Mat bgModelRoi = new Mat(bgMat, roi);
-			Mat fgMaskRoi = new Mat(fgMask, roi);
-			Mat delta32fRoi = new Mat(delta32f, roi);
-			Mat blindBgMaskRoi = new Mat(blindBgMask, roi);
+		// 다른 쓰레드에서 배경 모델이 갱신되더라도 영향을 받지 않도록 snapshot을 사용한다.
+		try ( MADepthBackgroundModel.Snapshot snapshot = m_bgModel.acquireSnapshot() ) {
+			Mat bgMat = snapshot.getBackgroundModel();
+			Mat blindBgMask = snapshot.getBlindBackgroundMask();
 			
-			try {
-				subtractRoi(imageRoi, bgModelRoi, blindBgMaskRoi, delta32fRoi, fgMaskRoi);
+			if ( roi != null ) {
+				Mats.createIfNotValid(delta32f, image.size(), CvType.CV_32FC1, OpenCvJ.ALL_0);
+				Mats.createIfNotValid(fgMask, image.size(), CvType.CV_8UC1, OpenCvJ.ALL_0);
+				
+				Mat imageRoi = new Mat(image, roi);
+				Mat bgModelRoi = new Mat(bgMat, roi);
+				Mat fgMaskRoi = new Mat(fgMask, roi);
+				Mat delta32fRoi = new Mat(delta32f, roi);
+				Mat blindBgMaskRoi = new Mat(blindBgMask, roi);
+				
+				try {
+					subtractBands(imageRoi, bgModelRoi, blindBgMaskRoi, delta32fRoi, fgMaskRoi);
+				}
+				finally {
+					Mats.releaseAll(imageRoi, bgModelRoi, blindBgMaskRoi, delta32fRoi, fgMaskRoi);
+				}
 			}
-			finally {
-				Mats.releaseAll(imageRoi, bgModelRoi, blindBgMaskRoi, delta32fRoi, fgMaskRoi);
+			else {
+				subtractBands(image, bgMat, blindBgMask, delta32f, fgMask);
 			}
 		}
-		else {
-			subtractRoi(image, bgMat, blindBgMask, delta32f, fgMask);
-		}
 
 		if ( m_filter != null ) {
 			List<Blob> blobs = m_filter.extractBlobs(fgMask);
@@ -123,26 +138,62 @@ public class MADepthForegroundDetector extends AbstractDeltaAwareForegroundDetec
 		}
 	}
 
+	/**
+	 * 설정된 병렬도에 따라 영상을 행 방향 band들로 나누어 배경을 제거한다.
+	 * <p>
+	 * 배경 제거는 픽셀 단위 연산으로만 구성되므로, band별 결과는 전체 영상을 한번에 처리한
+	 * 결과와 동일하다.
+	 */
+	private void subtractBands(Mat image, Mat bgModel, Mat blindBgMask, Mat delta32f,
+										Mat fgMask) {
+		int nbands = RowBands.getBandCount(image.rows(), m_params.parallelism);
+		if ( nbands == 1 ) {
+			subtractRoi(image, bgModel, blindBgMask, delta32f, fgMask, 0);
+			return;
+		}
+		
+		// band별 submat에 결과가 기록되도록 결과 Mat들을 미리 할당한다.
+		Mats.createIfNotValid(delta32f, image.size(), CvType.CV_32FC1);
+		Mats.createIfNotValid(fgMask, image.size(), CvType.CV_8UC1);
+		if ( m_pixelBufs.length < nbands ) {
+			m_pixelBufs = Arrays.copyOf(m_pixelBufs, nbands);
+		}
+		
+		RowBands.forEach(nbands, (band, mats) -> subtractRoi(mats[0], mats[1], mats[2],
+																mats[3], mats[4], band),
+						image, bgModel, blindBgMask, delta32f, fgMask);
+	}
+
 	/**
 	 * @param image		배경을 제거할 대상 이미지 (CV_16SC1 타입)
 	 * @param bgModel	제거 대상 배경을 설명하는 모델 (CV_32FC1 타입)
 	 * @param blindBgMask	배경 학습과정에서 배경 거리 값이 획득되지 못한 영역 mask
 	 * @param delta32f	배경과의 차이(bgModel - image) 값이 저장될 mat.
 	 * @param fgMask	배경 제어 후 전경으로 간주된 영역이 저장될 mask.
+	 * @param band		처리 중인 band 번호.
 	 */
 	private void subtractRoi(Mat image, Mat bgModel, Mat blindBgMask, Mat delta32f,
-										Mat fgMask) {
+										Mat fgMask, int band) {
 		if ( m_params.validDepthRange == null ) {
 			throw new UninitializedException("Property 'validDepthRange' was not specified: class="
 											+ getClass().getName());
 		}
 		
-		Mat image32f = new Mat();
-		Mat bgMask = new Mat(image.size(), CvType.CV_8UC1);
-		Mat validDepthMask = new Mat(image.size(), CvType.CV_8UC1);
-		Mat invalid2ValidMask = new Mat(image.size(), CvType.CV_8UC1);
+		if ( m_params.fusedKernel ) {
+			PixelBuffers bufs = m_pixelBufs[band];
+			if ( bufs == null ) {
+				m_pixelBufs[band] = bufs = new PixelBuffers();
+			}
+			subtractRoiFused(image, bgModel, blindBgMask, delta32f, fgMask, bufs);
+			return;
+		}
 		
-		try {
+		try ( MatArena arena = MatArena.open() ) {
+			Mat image32f = arena.get(image.size(), CvType.CV_32F);
+			Mat bgMask = arena.get(image.size(), CvType.CV_8UC1);
+			Mat validDepthMask = arena.get(image.size(), CvType.CV_8UC1);
+			Mat invalid2ValidMask = arena.get(image.size(), CvType.CV_8UC1);
+			
 			// 주어진 거리 맵을 내부적으로 유지하는 background_model의 거리 값과
 			// 입력된 거리 값의 차이를 구한다. 즉, bgmodel - image를 구한다.
 			image.convertTo(image32f, CvType.CV_32F);
@@ -174,8 +225,86 @@ public class MADepthForegroundDetector extends AbstractDeltaAwareForegroundDetec
 				delta32f.setTo(Scalar.all(255), blindBgMask);
 			}
 		}
-		finally {
-			Mats.releaseAll(image32f, bgMask, validDepthMask, invalid2ValidMask);
+	}
+	
+	/**
+	 * {@link #subtractRoi(Mat, Mat, Mat, Mat, Mat, int)}와 동일한 결과를 한번의 픽셀 순회로 계산한다.
+	 * <p>
+	 * 임시 Mat 할당과 여러 번의 native 연산 호출은 없어지지만, 거리 영상, 배경 모델, blind mask를
+	 * Java 배열로 읽는 3번의 {@code get()}과 delta와 전경 mask를 기록하는 2번의 {@code put()}이
+	 * 각각 전체 영상을 JNI로 복사하므로 memory bandwidth 측면의 이득은 없다. 다중 연산 방식과의
+	 * 성능 비교는 측정되지 않았으므로 기본적으로 사용되지 않는다. ('fused_kernel' 설정 참조)
+	 */
+	private void subtractRoiFused(Mat image, Mat bgModel, Mat blindBgMask, Mat delta32f,
+									Mat fgMask, PixelBuffers bufs) {
+		if ( image.type() != CvType.CV_16SC1 || bgModel.type() != CvType.CV_32FC1 ) {
+			throw new IllegalArgumentException(String.format("unsupported types: image=%s, model=%s",
+											CvType.typeToString(image.type()),
+											CvType.typeToString(bgModel.type())));
+		}
+		Mats.createIfNotValid(delta32f, image.size(), CvType.CV_32FC1);
+		Mats.createIfNotValid(fgMask, image.size(), CvType.CV_8UC1);
+		
+		int npixels = (int)image.total();
+		bufs.ensureCapacity(npixels);
+		final short[] depthBuf = bufs.m_depth;
+		final float[] modelBuf = bufs.m_model;
+		final byte[] blindBuf = bufs.m_blind;
+		final float[] deltaBuf = bufs.m_delta;
+		final byte[] fgBuf = bufs.m_fg;
+		image.get(0, 0, depthBuf);
+		bgModel.get(0, 0, modelBuf);
+		blindBgMask.get(0, 0, blindBuf);
+		
+		final float deltaLow = m_params.backgroundDepthDelta.low;
+		final float deltaHigh = m_params.backgroundDepthDelta.high;
+		final int validLow = m_params.validDepthRange.low;
+		final int validHigh = m_params.validDepthRange.high;
+		final boolean anyInvalid = (m_params.fgModelFlags & BG_MODEL_ANY_INVALID) != 0;
+		final boolean invalidValid = (m_params.fgModelFlags & BG_MODEL_INVALID_VALID) != 0;
+		
+		for ( int i =0; i < npixels; ++i ) {
+			int depth = depthBuf[i];
+			float delta = modelBuf[i] - depth;
+			boolean valid = depth >= validLow && depth <= validHigh;
+			
+			// 배경과의 거리 차이가 지정된 범위 밖이면 전경으로 간주한다.
+			boolean fg = delta < deltaLow || delta > deltaHigh;
+			if ( !anyInvalid ) {
+				fg &= valid;
+			}
+			
+			// 배경 학습시 blind 영역이었던 곳은 입력 값이 valid한 경우에만 전경으로 간주한다.
+			if ( blindBuf[i] != 0 ) {
+				fg = invalidValid && valid;
+				if ( invalidValid ) {
+					delta = 255;
+				}
+			}
+			
+			deltaBuf[i] = delta;
+			fgBuf[i] = fg ? (byte)255 : 0;
+		}
+		
+		delta32f.put(0, 0, deltaBuf);
+		fgMask.put(0, 0, fgBuf);
+	}
+	
+	private static final class PixelBuffers {
+		private short[] m_depth;
+		private float[] m_model;
+		private byte[] m_blind;
+		private float[] m_delta;
+		private byte[] m_fg;
+		
+		void ensureCapacity(int npixels) {
+			if ( m_depth == null || m_depth.length != npixels ) {
+				m_depth = new short[npixels];
+				m_model = new float[npixels];
+				m_blind = new byte[npixels];
+				m_delta = new float[npixels];
+				m_fg = new byte[npixels];
+			}
 		}
 	}
 }
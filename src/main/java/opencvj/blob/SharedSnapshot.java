@@ -0,0 +1,59 @@
+package opencvj.blob;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * 여러 쓰레드가 lock 없이 공유하는 배경 모델 snapshot의 공통 부분.
+ * <p>
+ * Snapshot은 참조 횟수로 관리되며, 공개된 snapshot은 {@link SnapshotHolder}가 하나의 참조를
+ * 갖는다. 참조 횟수가 0이 되면 snapshot은 holder에 반납되어 다음 갱신시 재사용되거나 해제된다.
+ * 참조를 획득한 쪽은 사용 후 반드시 {@link #close()}를 한번 호출하여야 한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+abstract class SharedSnapshot implements AutoCloseable {
+	private final AtomicInteger m_refCount = new AtomicInteger(1);
+	private volatile SnapshotHolder<?> m_holder;
+
+	/**
+	 * 본 snapshot에 대한 참조를 반납한다.
+	 */
+	@Override
+	public void close() {
+		if ( m_refCount.decrementAndGet() == 0 ) {
+			SnapshotHolder<?> holder = m_holder;
+			if ( holder != null ) {
+				holder.recycle(this);
+			}
+			else {
+				dispose();
+			}
+		}
+	}
+
+	/**
+	 * Snapshot이 사용하는 native 자원을 해제한다.
+	 */
+	abstract void dispose();
+
+	boolean tryAcquire() {
+		while ( true ) {
+			int count = m_refCount.get();
+			if ( count == 0 ) {
+				return false;
+			}
+			if ( m_refCount.compareAndSet(count, count+1) ) {
+				return true;
+			}
+		}
+	}
+
+	void reset() {
+		m_refCount.set(1);
+	}
+
+	void attach(SnapshotHolder<?> holder) {
+		m_holder = holder;
+	}
+}
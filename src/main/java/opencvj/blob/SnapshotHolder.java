@@ -0,0 +1,103 @@
+package opencvj.blob;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * 배경 모델의 현재 snapshot을 공개하고, 더 이상 참조되지 않는 snapshot을 재사용하기 위해
+ * 보관하는 객체.
+ * <p>
+ * 읽는 쪽은 {@link #acquire()}를 통해 lock 없이 현재 snapshot을 얻으며, 갱신하는 쪽은
+ * {@link #takeSpare()}로 얻은 (또는 새로 만든) snapshot에 갱신 결과를 기록한 후
+ * {@link #publish(SharedSnapshot)}로 원자적으로 교체한다. 갱신은 한 쓰레드에서만
+ * 수행되도록 호출자가 동기화하여야 한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class SnapshotHolder<T extends SharedSnapshot> {
+	private final AtomicReference<T> m_current = new AtomicReference<T>();
+	private final AtomicReference<T> m_spare = new AtomicReference<T>();
+	private volatile boolean m_closed = false;
+
+	/**
+	 * 현재 공개된 snapshot에 대한 참조를 획득한다.
+	 *
+	 * @return	현재 snapshot. 공개된 snapshot이 없는 경우는 null.
+	 */
+	T acquire() {
+		while ( true ) {
+			T snapshot = m_current.get();
+			if ( snapshot == null ) {
+				return null;
+			}
+			if ( snapshot.tryAcquire() ) {
+				// 참조 획득 전에 snapshot이 교체되어 재사용 중일 수 있으므로 다시 확인한다.
+				if ( m_current.get() == snapshot ) {
+					return snapshot;
+				}
+				snapshot.close();
+			}
+		}
+	}
+
+	/**
+	 * 현재 공개된 snapshot을 참조 획득 없이 반환한다.
+	 * <p>
+	 * 공개된 snapshot은 교체될 때까지 해제되지 않으므로, 갱신하는 쓰레드에서만 사용하여야 한다.
+	 */
+	T peek() {
+		return m_current.get();
+	}
+
+	/**
+	 * 주어진 snapshot을 공개하고, 기존 snapshot에 대한 참조를 반납한다.
+	 */
+	void publish(T snapshot) {
+		if ( snapshot != null ) {
+			snapshot.attach(this);
+		}
+
+		T old = m_current.getAndSet(snapshot);
+		if ( old != null ) {
+			old.close();
+		}
+	}
+
+	/**
+	 * 재사용 가능한 snapshot을 반환한다.
+	 *
+	 * @return	재사용 가능한 snapshot. 없는 경우는 null.
+	 */
+	T takeSpare() {
+		T spare = m_spare.getAndSet(null);
+		if ( spare != null ) {
+			spare.reset();
+		}
+
+		return spare;
+	}
+
+	void close() {
+		m_closed = true;
+		publish(null);
+
+		T spare = m_spare.getAndSet(null);
+		if ( spare != null ) {
+			spare.dispose();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	void recycle(SharedSnapshot snapshot) {
+		if ( m_closed || !m_spare.compareAndSet(null, (T)snapshot) ) {
+			snapshot.dispose();
+		}
+		else if ( m_closed ) {
+			// 보관하는 도중에 close된 경우
+			T spare = m_spare.getAndSet(null);
+			if ( spare != null ) {
+				spare.dispose();
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package opencvj.camera;
+
+
+/**
+ * 공유 카메라가 capture 후 다른 consumer들의 합류를 기다리는 시간(coalescing window)을
+ * 관측된 consumer 도착 시각과 카메라 capture 소요 시간에 따라 조절하는 객체.
+ * <p>
+ * Window는 다음과 같이 조절된다.
+ * <ul>
+ * 	<li> 공유 consumer가 하나인 경우는 기다리지 않는다.
+ * 	<li> 직전 영상을 받지 못한 consumer가 직전 capture 직후에 새 capture를 시작하거나,
+ * 		window 중에 합류한 경우는 그 도착 지연을 반영하여 window를 늘린다.
+ * 	<li> Window 동안 아무도 합류하지 않은 경우는 window를 줄인다.
+ * 	<li> Window는 최대 지연 한도와 카메라의 capture 소요 시간을 넘지 않는다.
+ * 		한 frame 시간 이상 기다리는 경우는 새 영상을 capture하는 것이 낫기 때문이다.
+ * </ul>
+ * 본 객체는 동기화되지 않으므로 호출자가 동기화하여야 한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class AdaptiveCaptureInterval {
+	private static final double ALPHA = 0.2;
+	private static final double HEADROOM = 1.5;
+
+	private final long m_maxLatencyNanos;
+	private double m_deviceNanos = 0;		// capture 소요 시간의 이동 평균
+	private double m_lateNanos = 0;			// capture 완료 후 consumer 도착 지연의 이동 평균
+	private long m_lastDoneNanos = -1;
+	private boolean m_captured = false;		// 현재 cycle의 capture 완료 여부
+	private boolean m_joined = false;		// 현재 cycle의 window 중에 합류한 consumer 존재 여부
+	private long m_windowNanos = 0;
+
+	AdaptiveCaptureInterval(long maxLatencyNanos) {
+		m_maxLatencyNanos = Math.max(maxLatencyNanos, 0);
+	}
+
+	/**
+	 * 현재 설정된 window 크기를 반환한다.
+	 */
+	long getWindowNanos() {
+		return m_windowNanos;
+	}
+
+	/**
+	 * 새 capture cycle이 시작됨을 알린다.
+	 *
+	 * @param now	cycle 시작 시각 ({@link System#nanoTime()} 기준).
+	 * @param missedLast	capture를 시작한 consumer가 직전 cycle의 영상을 받지 못했는지 여부.
+	 * @param consumers	현재 공유 consumer의 수.
+	 */
+	void onCycleStarted(long now, boolean missedLast, int consumers) {
+		if ( m_lastDoneNanos >= 0 ) {
+			long gap = now - m_lastDoneNanos;
+			if ( missedLast && consumers > 1 && gap < m_maxLatencyNanos ) {
+				// window가 충분히 길었다면 직전 영상을 공유할 수 있었던 경우
+				sample(gap);
+			}
+			else if ( !m_joined ) {
+				sample(0);
+			}
+		}
+		m_captured = false;
+		m_joined = false;
+	}
+
+	/**
+	 * 진행 중인 cycle에 consumer가 합류했음을 알린다.
+	 * <p>
+	 * 원시 카메라의 capture가 끝나기 전에 합류한 consumer는 window 없이도 영상을 공유하므로
+	 * 도착 지연을 0으로 반영한다.
+	 */
+	void onJoined(long now) {
+		if ( !m_captured ) {
+			sample(0);
+		}
+		else if ( now > m_lastDoneNanos ) {
+			// capture 완료 후 window 동안 합류한 경우
+			sample(now - m_lastDoneNanos);
+			m_joined = true;
+		}
+	}
+
+	/**
+	 * 영상 capture가 완료되었음을 알리고, 다른 consumer들을 기다릴 시간을 반환한다.
+	 *
+	 * @param deviceNanos	원시 카메라의 capture 소요 시간.
+	 * @param now	capture 완료 시각 ({@link System#nanoTime()} 기준).
+	 * @param consumers	현재 공유 consumer의 수.
+	 * @return	대기 시간 (nanosecond).
+	 */
+	long onCaptured(long deviceNanos, long now, int consumers) {
+		m_deviceNanos = (m_deviceNanos > 0) ? m_deviceNanos + ALPHA * (deviceNanos - m_deviceNanos)
+											: deviceNanos;
+		m_lastDoneNanos = now;
+		m_captured = true;
+
+		if ( consumers <= 1 ) {
+			m_windowNanos = 0;
+		}
+		else {
+			double window = Math.min(m_lateNanos * HEADROOM, m_deviceNanos);
+			m_windowNanos = Math.min((long)window, m_maxLatencyNanos);
+		}
+
+		return m_windowNanos;
+	}
+
+	private void sample(long lateNanos) {
+		m_lateNanos += ALPHA * (lateNanos - m_lateNanos);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[window=%.1fms, device=%.1fms, late=%.1fms]",
+							getClass().getSimpleName(), m_windowNanos / 1e6, m_deviceNanos / 1e6,
+							m_lateNanos / 1e6);
+	}
+}
@@ -6,13 +6,18 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 import javax.annotation.concurrent.GuardedBy;
 
-import org.opencv.core.Mat;
 import org.opencv.core.Size;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import opencvj.OpenCvJException;
 
 import utils.Initializable;
 import utils.UninitializedException;
@@ -32,7 +37,9 @@ import utils.thread.InterThreadShareSupplier;
  * @author Kang-Woo Lee (ETRI)
  */
 public class CDCFactory implements ColorDepthCompositeFactory, ExecutorAware, Initializable {
+	private static final Logger s_logger = LoggerFactory.getLogger("OPENCV.CDC_FACTORY");
 	private static final long MAX_CAPTURE_WAIT_MILLIS = 3*1000;
+	private static final int DEF_RING_SIZE = 4;
 	
 	// properties (BEGIN)
 	private volatile ColorDepthComposite m_source;
@@ -44,25 +51,80 @@ public class CDCFactory implements ColorDepthCompositeFactory, ExecutorAware, In
 	private InterThreadShareSupplier<ImageComposite> m_sharedImageSupplier;
 	private OpenCvJCameraFactoryImpl m_colorFact;
 	private OpenCvJCameraFactoryImpl m_depthFact;
+	private volatile FrameRing m_colorRing;
+	private volatile FrameRing m_depthRing;
+	private volatile ImageComposite m_lastComposite;
+	private final AtomicLong m_ringOverflowCount = new AtomicLong();
+	@GuardedBy("this") private FramePublisher<CDCFrameRef,FramePair> m_publisher;
+	@GuardedBy("this") private FramePublisher<CDCFrameRef,CDCFrameRef> m_refPublisher;
 	
 	private final ReentrantLock m_factLock = new ReentrantLock();
 	private final Condition m_cond = m_factLock.newCondition();
-	@GuardedBy("m_factLock") private final ImageComposite m_images = new ImageComposite();
 	@GuardedBy("m_factLock") private final List<SharedCDC> m_shareds = new ArrayList<SharedCDC>();
 	
 	private final CheckedSupplier<ImageComposite> m_imageProducer = () -> {
-		m_source.captureSynched(m_images.m_colorImage, m_images.m_depthImage);
-		return m_images;
+		FrameRing.FrameSlot colorSlot = m_colorRing.acquireWritable();
+		FrameRing.FrameSlot depthSlot = (colorSlot != null) ? m_depthRing.acquireWritable() : null;
+		if ( depthSlot == null ) {
+			if ( colorSlot != null ) {
+				m_colorRing.abort(colorSlot);
+			}
+			
+			// 모든 slot이 CDCFrameRef들에 의해 사용 중인 경우는 가장 최근 영상을 사용하게 한다.
+			long count = m_ringOverflowCount.incrementAndGet();
+			s_logger.warn("no writable frame slot: ring_size={}, overflows={}", m_colorRing.size(), count);
+			
+			ImageComposite last = m_lastComposite;
+			if ( last == null ) {
+				throw new OpenCvJException("no writable frame slot: class=" + getClass().getName());
+			}
+			return last;
+		}
+		
+		try {
+			m_source.captureSynched(colorSlot.m_image, depthSlot.m_image);
+		}
+		catch ( RuntimeException e ) {
+			m_colorRing.abort(colorSlot);
+			m_depthRing.abort(depthSlot);
+			throw e;
+		}
+		
+		long captureNanos = System.nanoTime();
+		long colorSeqNo = m_colorRing.publish(colorSlot, captureNanos);
+		long depthSeqNo = m_depthRing.publish(depthSlot, captureNanos);
+		return m_lastComposite = new ImageComposite(colorSlot, colorSeqNo, depthSlot, depthSeqNo);
 	};
 	
-	static class ImageComposite implements AutoCloseable {
-		Mat m_colorImage = new Mat();
-		Mat m_depthImage = new Mat();
+	static class ImageComposite {
+		final FrameRing.FrameSlot m_colorSlot;
+		final long m_colorSeqNo;
+		final FrameRing.FrameSlot m_depthSlot;
+		final long m_depthSeqNo;
+		
+		ImageComposite(FrameRing.FrameSlot colorSlot, long colorSeqNo,
+						FrameRing.FrameSlot depthSlot, long depthSeqNo) {
+			m_colorSlot = colorSlot;
+			m_colorSeqNo = colorSeqNo;
+			m_depthSlot = depthSlot;
+			m_depthSeqNo = depthSeqNo;
+		}
 		
-		@Override
-		public void close() {
-			m_colorImage.release();
-			m_depthImage.release();
+		private boolean tryPin() {
+			if ( !m_colorSlot.tryPin(m_colorSeqNo) ) {
+				return false;
+			}
+			if ( !m_depthSlot.tryPin(m_depthSeqNo) ) {
+				m_colorSlot.unpin();
+				return false;
+			}
+			
+			return true;
+		}
+		
+		void unpin() {
+			m_colorSlot.unpin();
+			m_depthSlot.unpin();
 		}
 	}
 	
@@ -116,6 +178,12 @@ public class CDCFactory implements ColorDepthCompositeFactory, ExecutorAware, In
 			m_sharedImageSupplier.setMaxWaitMillis(maxWaitConfig.asDuration());
 		}
 		
+		// ring은 SharedCDC가 open될 때마다 필요한 slot 수에 맞추어 확장된다.
+		// (ensureRingCapacityInGuard 참조)
+		int ringSize = m_config.get("ring_size").asInt(DEF_RING_SIZE);
+		m_colorRing = new FrameRing(ringSize);
+		m_depthRing = new FrameRing(ringSize);
+		
 		m_colorFact = OpenCvJCameraFactoryImpl.create(m_source.getColorCamera(),
 														m_config.get("color"));
 		m_depthFact = OpenCvJCameraFactoryImpl.create(m_source.getDepthCamera(),
@@ -124,6 +192,15 @@ public class CDCFactory implements ColorDepthCompositeFactory, ExecutorAware, In
 	
 	@Override
 	public void destroy() {
+		synchronized ( this ) {
+			if ( m_publisher != null ) {
+				m_publisher.shutdown();
+			}
+			if ( m_refPublisher != null ) {
+				m_refPublisher.shutdown();
+			}
+		}
+		
 		final List<SharedCDC> shareds = new ArrayList<SharedCDC>();
 		m_factLock.lock();
 		try {
@@ -148,7 +225,9 @@ public class CDCFactory implements ColorDepthCompositeFactory, ExecutorAware, In
 			}
 			catch ( InterruptedException e ) { }
 	
-			m_images.close();
+			m_lastComposite = null;
+			m_colorRing.close();
+			m_depthRing.close();
 			if ( m_owner ) {
 				IOUtils.closeQuietly(m_source);
 				
@@ -162,8 +241,96 @@ public class CDCFactory implements ColorDepthCompositeFactory, ExecutorAware, In
 		}
 	}
 	
+	/**
+	 * 동기화된 칼라/깊이 영상을 capture한다.
+	 * <p>
+	 * 반환된 영상들은 pin된 상태이므로 사용 후 {@link ImageComposite#unpin()}을 호출하여야 한다.
+	 */
 	ImageComposite capture() throws InterruptedException, TimeoutException, ExecutionException {
-		return m_sharedImageSupplier.get();
+		while ( true ) {
+			ImageComposite comp = m_sharedImageSupplier.get();
+			
+			// 공유된 영상을 받은 후 pin하기 전에 slot이 재사용된 경우는 다시 시도한다.
+			if ( comp.tryPin() ) {
+				return comp;
+			}
+		}
+	}
+
+	/**
+	 * 공유되는 원시 {@link ColorDepthComposite}의 식별자를 반환한다.
+	 */
+	public String getSourceId() {
+		return m_source.getSourceId();
+	}
+
+	/**
+	 * 동기화된 칼라/깊이 영상을 요청한 subscriber들에게 전달하는 {@link FrameFlow.Publisher}를
+	 * 반환한다.
+	 * <p>
+	 * 전달되는 {@link FramePair}는 subscriber별로 복사된 영상이며, 사용 후 close하여야 한다.
+	 * 영상을 복사할 필요가 없는 경우는 {@link #getFrameRefPublisher()}를 사용한다.
+	 */
+	public synchronized FrameFlow.Publisher<FramePair> getFramePublisher() {
+		if ( m_publisher == null ) {
+			m_publisher = new FramePublisher<>(this::openPublisherSource, ref -> {
+				try {
+					FramePair pair = new FramePair();
+					copy(ref.getColorFrame(), pair.getColorFrame(), "/color");
+					copy(ref.getDepthFrame(), pair.getDepthFrame(), "/depth");
+					
+					return pair;
+				}
+				finally {
+					ref.close();
+				}
+			}, m_executor);
+		}
+		
+		return m_publisher;
+	}
+	
+	/**
+	 * 동기화된 칼라/깊이 영상을 복사하지 않고 참조하는 {@link CDCFrameRef}를 요청한
+	 * subscriber들에게 전달하는 {@link FrameFlow.Publisher}를 반환한다.
+	 * <p>
+	 * 전달된 {@link CDCFrameRef}는 사용 후 바로 close하여야 한다. close되지 않은 참조들이 frame ring의
+	 * slot들을 점유하면 새 영상이 발행되지 못한다.
+	 */
+	public synchronized FrameFlow.Publisher<CDCFrameRef> getFrameRefPublisher() {
+		if ( m_refPublisher == null ) {
+			m_refPublisher = new FramePublisher<>(this::openPublisherSource, Function.identity(),
+												m_executor);
+		}
+		
+		return m_refPublisher;
+	}
+	
+	private FramePublisher.Source<CDCFrameRef> openPublisherSource() {
+		final SharedCDC cdc = createColorDepthComposite();
+		cdc.open();
+		
+		return new FramePublisher.Source<CDCFrameRef>() {
+			@Override
+			public CDCFrameRef capture() {
+				return cdc.captureSynchedRef();
+			}
+
+			@Override
+			public CDCFrameRef duplicate(CDCFrameRef shared) {
+				return shared.duplicate();
+			}
+
+			@Override
+			public void close() {
+				cdc.close();
+			}
+		};
+	}
+	
+	private void copy(FrameRef ref, Frame frame, String suffix) {
+		ref.getMat().copyTo(frame.getMat());
+		frame.setMetadata(getSourceId() + suffix, ref.getSequenceNo(), ref.getCaptureNanos());
 	}
 
 	@Override
@@ -171,6 +338,13 @@ public class CDCFactory implements ColorDepthCompositeFactory, ExecutorAware, In
 		return m_executor;
 	}
 	
+	/**
+	 * 기록할 slot이 없어 capture를 생략하고 가장 최근 영상을 재사용한 횟수를 반환한다.
+	 */
+	public long getRingOverflowCount() {
+		return m_ringOverflowCount.get();
+	}
+	
 	public SharedCDC createColorDepthComposite() {
 		return new SharedCDC(this);
 	}
@@ -209,7 +383,11 @@ public class CDCFactory implements ColorDepthCompositeFactory, ExecutorAware, In
 		m_factLock.lock();
 		try {
 			m_shareds.add(shared);
+			ensureRingCapacityInGuard();
 			if ( m_shareds.size() == 1 ) {
+				m_lastComposite = null;
+				m_colorRing.reset();
+				m_depthRing.reset();
 				m_source.open();
 				
 				m_cond.signalAll();
@@ -220,6 +398,20 @@ public class CDCFactory implements ColorDepthCompositeFactory, ExecutorAware, In
 		}
 	}
 	
+	/**
+	 * 각 SharedCDC가 CDCFrameRef를 하나씩 보유하더라도 capture 중인 slot과 가장 최근에 발행된
+	 * slot이 남도록 칼라/깊이 ring을 확장한다.
+	 */
+	@GuardedBy("m_factLock")
+	private void ensureRingCapacityInGuard() {
+		int required = m_shareds.size() + 2;
+		boolean extended = m_colorRing.ensureCapacity(required);
+		extended |= m_depthRing.ensureCapacity(required);
+		if ( extended ) {
+			s_logger.info("extend frame rings: ring_size={}, consumers={}", required, m_shareds.size());
+		}
+	}
+	
 	synchronized void onSharedCDCClosed(SharedCDC shared) {
 		m_factLock.lock();
 		try {
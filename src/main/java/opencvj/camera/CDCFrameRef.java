@@ -0,0 +1,48 @@
+package opencvj.camera;
+
+
+/**
+ * <code>CDCFrameRef</code>는 공유 {@link ColorDepthComposite}가 동기화하여 capture한
+ * 칼라 영상과 깊이 영상을 복사하지 않고 참조하는 객체를 정의한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class CDCFrameRef implements AutoCloseable {
+	private final FrameRef m_colorFrame;
+	private final FrameRef m_depthFrame;
+
+	CDCFrameRef(FrameRef colorFrame, FrameRef depthFrame) {
+		m_colorFrame = colorFrame;
+		m_depthFrame = depthFrame;
+	}
+
+	public FrameRef getColorFrame() {
+		return m_colorFrame;
+	}
+
+	public FrameRef getDepthFrame() {
+		return m_depthFrame;
+	}
+
+	/**
+	 * 동일 영상들을 참조하는 새 <code>CDCFrameRef</code>를 생성한다.
+	 * <p>
+	 * 생성된 객체는 이 객체와 별도로 close되어야 한다.
+	 */
+	public CDCFrameRef duplicate() {
+		FrameRef color = m_colorFrame.duplicate();
+		try {
+			return new CDCFrameRef(color, m_depthFrame.duplicate());
+		}
+		catch ( RuntimeException e ) {
+			color.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() {
+		m_colorFrame.close();
+		m_depthFrame.close();
+	}
+}
@@ -0,0 +1,103 @@
+package opencvj.camera;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.opencv.core.Size;
+
+import opencvj.OpenCvJException;
+
+
+/**
+ * {@link CDCRecorder}가 기록하고 {@link RecordedCDC}가 재생하는 녹화 파일의 형식을 정의한다.
+ * <p>
+ * 파일은 고정 크기의 header, frame record들, 그리고 frame index로 구성된다.
+ * <pre>
+ * header (64 bytes):
+ *    int magic, int version,
+ *    int colorWidth, int colorHeight, int colorType,
+ *    int depthWidth, int depthHeight, int depthType,
+ *    int flags, int frameCount, long indexOffset, (reserved)
+ * frame record:
+ *    long captureNanos (첫 frame 기준), int colorLength, int depthLength,
+ *    byte[colorLength] color pixels, byte[depthLength] depth pixels
+ *    (flags에 {@link #FLAG_DEPTH_COMPRESSED}가 설정된 경우 depth pixels는 {@link DepthCodec}으로 부호화된다.)
+ * frame index:
+ *    long[frameCount] frame record offsets
+ * </pre>
+ * 모든 값은 little-endian으로 기록된다. 녹화가 정상적으로 종료되지 않은 파일은 frameCount가 0이며,
+ * 이 경우 frame index 없이 header 이후의 frame record들을 순서대로 읽어 재구성한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class CDCRecordFormat {
+	static final int MAGIC = 0x43444352;	// "CDCR"
+	static final int VERSION = 2;
+	// DepthCodec이 byte 단위 varint 부호를 사용하던 형식. 깊이 영상이 압축되지 않은 경우는 동일하다.
+	static final int VERSION_VARINT_DEPTH = 1;
+	static final int HEADER_SIZE = 64;
+	static final int FRAME_HEADER_SIZE = 16;
+	static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	static final int FLAG_DEPTH_COMPRESSED = 0x1;
+
+	static final int OFFSET_FRAME_COUNT = 36;
+	static final int OFFSET_INDEX_OFFSET = 40;
+
+	final Size m_colorSize;
+	final int m_colorType;
+	final Size m_depthSize;
+	final int m_depthType;
+	int m_flags;
+	int m_frameCount;
+	long m_indexOffset;
+
+	CDCRecordFormat(Size colorSize, int colorType, Size depthSize, int depthType) {
+		m_colorSize = colorSize;
+		m_colorType = colorType;
+		m_depthSize = depthSize;
+		m_depthType = depthType;
+	}
+
+	boolean isDepthCompressed() {
+		return (m_flags & FLAG_DEPTH_COMPRESSED) != 0;
+	}
+
+	void write(ByteBuffer buf) {
+		buf.order(BYTE_ORDER);
+		buf.putInt(MAGIC).putInt(VERSION);
+		buf.putInt((int)m_colorSize.width).putInt((int)m_colorSize.height).putInt(m_colorType);
+		buf.putInt((int)m_depthSize.width).putInt((int)m_depthSize.height).putInt(m_depthType);
+		buf.putInt(m_flags).putInt(m_frameCount).putLong(m_indexOffset);
+		while ( buf.position() < HEADER_SIZE ) {
+			buf.put((byte)0);
+		}
+	}
+
+	static CDCRecordFormat read(ByteBuffer buf) {
+		buf.order(BYTE_ORDER);
+		if ( buf.getInt() != MAGIC ) {
+			throw new OpenCvJException("invalid CDC record file: bad magic");
+		}
+		int version = buf.getInt();
+		if ( version != VERSION && version != VERSION_VARINT_DEPTH ) {
+			throw new OpenCvJException("unsupported CDC record version: " + version);
+		}
+
+		Size colorSize = new Size(buf.getInt(), buf.getInt());
+		int colorType = buf.getInt();
+		Size depthSize = new Size(buf.getInt(), buf.getInt());
+		int depthType = buf.getInt();
+
+		CDCRecordFormat format = new CDCRecordFormat(colorSize, colorType, depthSize, depthType);
+		format.m_flags = buf.getInt();
+		if ( version == VERSION_VARINT_DEPTH && format.isDepthCompressed() ) {
+			throw new OpenCvJException("unsupported CDC record: varint-coded depth (version "
+										+ version + ")");
+		}
+		format.m_frameCount = buf.getInt();
+		format.m_indexOffset = buf.getLong();
+
+		return format;
+	}
+}
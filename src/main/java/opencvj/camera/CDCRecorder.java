@@ -0,0 +1,286 @@
+package opencvj.camera;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import opencvj.OpenCvJException;
+import utils.io.IOUtils;
+
+
+/**
+ * 주어진 {@link ColorDepthComposite}가 capture하는 칼라/깊이 영상들을 파일에 기록하는
+ * {@link ColorDepthComposite}.
+ * <p>
+ * {@link #captureSynched(Mat, Mat)}를 통해 capture된 영상들만 기록되며,
+ * open될 때마다 파일을 새로 생성하여 기록한다.
+ * 기록된 파일은 {@link RecordedCDC}를 통해 재생할 수 있다.
+ * 파일 형식은 {@link CDCRecordFormat}을 참고한다.
+ * {@link #setDepthCompression(boolean)}가 설정된 경우 깊이 영상은 {@link DepthCodec}으로
+ * 무손실 압축되어 기록된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class CDCRecorder implements ColorDepthComposite {
+	private static final Logger s_logger = LoggerFactory.getLogger("OPENCV.CDC_RECORDER");
+	private static final int INIT_INDEX_CAPACITY = 1024;
+
+	private final ColorDepthComposite m_source;
+	private final File m_file;
+	private volatile boolean m_compressDepth = false;
+
+	@GuardedBy("this") private FileChannel m_channel;
+	@GuardedBy("this") private CDCRecordFormat m_format;
+	@GuardedBy("this") private ByteBuffer m_frameBuf;
+	@GuardedBy("this") private byte[] m_colorPixels;
+	@GuardedBy("this") private short[] m_depthPixels;
+	@GuardedBy("this") private byte[] m_depthEncoded;
+	@GuardedBy("this") private long[] m_index = new long[INIT_INDEX_CAPACITY];
+	@GuardedBy("this") private long m_firstNanos;
+
+	public static CDCRecorder create(ColorDepthComposite source, File file) {
+		return new CDCRecorder(source, file);
+	}
+
+	public CDCRecorder(ColorDepthComposite source, File file) {
+		m_source = source;
+		m_file = file;
+	}
+
+	public File getFile() {
+		return m_file;
+	}
+
+	public boolean isDepthCompression() {
+		return m_compressDepth;
+	}
+
+	/**
+	 * 깊이 영상의 압축 여부를 설정한다.
+	 * <p>
+	 * 설정 값은 다음 번 {@link #open()}부터 적용된다.
+	 */
+	public void setDepthCompression(boolean flag) {
+		m_compressDepth = flag;
+	}
+
+	@Override
+	public synchronized void open() {
+		try {
+			m_channel = FileChannel.open(m_file.toPath(), StandardOpenOption.CREATE,
+										StandardOpenOption.TRUNCATE_EXISTING,
+										StandardOpenOption.WRITE);
+		}
+		catch ( IOException e ) {
+			throw new OpenCvJException("fails to create record file: path=" + m_file + ", cause=" + e);
+		}
+		m_format = null;
+
+		m_source.open();
+	}
+
+	@Override
+	public synchronized void close() throws Exception {
+		try {
+			m_source.close();
+		}
+		finally {
+			if ( m_channel != null ) {
+				try {
+					finish();
+				}
+				finally {
+					IOUtils.closeQuietly(m_channel);
+					m_channel = null;
+				}
+			}
+		}
+	}
+
+	@Override
+	public Size getColorImageSize() {
+		return m_source.getColorImageSize();
+	}
+
+	@Override
+	public Size getDepthImageSize() {
+		return m_source.getDepthImageSize();
+	}
+
+	/**
+	 * 원시 {@link ColorDepthComposite}의 칼라 카메라를 반환한다.
+	 * <p>
+	 * 반환된 카메라를 통해 capture된 영상은 기록되지 않는다.
+	 */
+	@Override
+	public OpenCvJCamera getColorCamera() {
+		return m_source.getColorCamera();
+	}
+
+	/**
+	 * 원시 {@link ColorDepthComposite}의 깊이 카메라를 반환한다.
+	 * <p>
+	 * 반환된 카메라를 통해 capture된 영상은 기록되지 않는다.
+	 */
+	@Override
+	public OpenCvJCamera getDepthCamera() {
+		return m_source.getDepthCamera();
+	}
+
+	@Override
+	public void captureSynched(Mat colorImage, Mat depthImage) {
+		m_source.captureSynched(colorImage, depthImage);
+		record(colorImage, depthImage, System.nanoTime());
+	}
+
+	@Override
+	public void captureSynched(Frame colorFrame, Frame depthFrame) {
+		m_source.captureSynched(colorFrame, depthFrame);
+		record(colorFrame.getMat(), depthFrame.getMat(), colorFrame.getCaptureNanos());
+	}
+
+	@Override
+	public String getSourceId() {
+		return m_source.getSourceId();
+	}
+
+	@Override
+	public DepthToColorMapper getDepthToColorMapper() {
+		return m_source.getDepthToColorMapper();
+	}
+
+	@Override
+	public ColorToDepthMapper getColorToDepthMapper() {
+		return m_source.getColorToDepthMapper();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[path=%s]", getClass().getSimpleName(), m_file);
+	}
+
+	private synchronized void record(Mat colorImage, Mat depthImage, long captureNanos) {
+		if ( m_channel == null ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+		}
+
+		try {
+			if ( m_format == null ) {
+				startRecording(colorImage, depthImage, captureNanos);
+			}
+			else if ( !colorImage.size().equals(m_format.m_colorSize)
+					|| !depthImage.size().equals(m_format.m_depthSize) ) {
+				throw new OpenCvJException("image size changed during recording");
+			}
+
+			colorImage.get(0, 0, m_colorPixels);
+			depthImage.get(0, 0, m_depthPixels);
+
+			m_frameBuf.clear();
+			m_frameBuf.putLong(captureNanos - m_firstNanos);
+			m_frameBuf.putInt(m_colorPixels.length);
+			if ( m_format.isDepthCompressed() ) {
+				int length = DepthCodec.encode(m_depthPixels, depthImage.cols(), depthImage.rows(),
+												m_depthEncoded);
+				m_frameBuf.putInt(length);
+				m_frameBuf.put(m_colorPixels);
+				m_frameBuf.put(m_depthEncoded, 0, length);
+			}
+			else {
+				m_frameBuf.putInt(m_depthPixels.length * 2);
+				m_frameBuf.put(m_colorPixels);
+				m_frameBuf.asShortBuffer().put(m_depthPixels);
+				m_frameBuf.position(m_frameBuf.position() + m_depthPixels.length*2);
+			}
+			m_frameBuf.flip();
+
+			if ( m_format.m_frameCount == m_index.length ) {
+				long[] index = new long[m_index.length * 2];
+				System.arraycopy(m_index, 0, index, 0, m_index.length);
+				m_index = index;
+			}
+			m_index[m_format.m_frameCount++] = m_channel.position();
+
+			while ( m_frameBuf.hasRemaining() ) {
+				m_channel.write(m_frameBuf);
+			}
+		}
+		catch ( IOException e ) {
+			throw new OpenCvJException("fails to record frame: path=" + m_file + ", cause=" + e);
+		}
+	}
+
+	@GuardedBy("this")
+	private void startRecording(Mat colorImage, Mat depthImage, long captureNanos)
+		throws IOException {
+		if ( colorImage.type() != CvType.CV_8UC3 ) {
+			throw new OpenCvJException("unsupported color image type: type=" + colorImage.type());
+		}
+		if ( depthImage.type() != CvType.CV_16SC1 ) {
+			throw new OpenCvJException("unsupported depth image type: type=" + depthImage.type());
+		}
+
+		m_format = new CDCRecordFormat(colorImage.size(), colorImage.type(),
+										depthImage.size(), depthImage.type());
+		m_firstNanos = captureNanos;
+
+		m_colorPixels = new byte[(int)(colorImage.total() * colorImage.elemSize())];
+		m_depthPixels = new short[(int)depthImage.total()];
+		int depthCapacity = m_depthPixels.length * 2;
+		if ( m_compressDepth ) {
+			m_format.m_flags |= CDCRecordFormat.FLAG_DEPTH_COMPRESSED;
+			m_depthEncoded = new byte[DepthCodec.maxEncodedLength(m_depthPixels.length)];
+			depthCapacity = m_depthEncoded.length;
+		}
+		m_frameBuf = ByteBuffer.allocateDirect(CDCRecordFormat.FRAME_HEADER_SIZE
+												+ m_colorPixels.length + depthCapacity);
+		m_frameBuf.order(CDCRecordFormat.BYTE_ORDER);
+
+		// frame 개수와 index 위치는 녹화가 끝날 때 갱신된다. 그 전에 비정상 종료된 경우는
+		// frame 개수가 0으로 남으며, RecordedCDC가 frame record들을 읽어 index를 다시 구성한다.
+		writeHeader();
+	}
+
+	@GuardedBy("this")
+	private void finish() throws IOException {
+		if ( m_format == null ) {
+			return;
+		}
+
+		m_format.m_indexOffset = m_channel.position();
+		ByteBuffer indexBuf = ByteBuffer.allocate(m_format.m_frameCount * 8);
+		indexBuf.order(CDCRecordFormat.BYTE_ORDER);
+		indexBuf.asLongBuffer().put(m_index, 0, m_format.m_frameCount);
+		while ( indexBuf.hasRemaining() ) {
+			m_channel.write(indexBuf);
+		}
+
+		writeHeader();
+		s_logger.info("recorded: path={}, frames={}", m_file, m_format.m_frameCount);
+	}
+
+	@GuardedBy("this")
+	private void writeHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(CDCRecordFormat.HEADER_SIZE);
+		m_format.write(header);
+		header.flip();
+
+		long pos = 0;
+		while ( header.hasRemaining() ) {
+			pos += m_channel.write(header, pos);
+		}
+		if ( m_channel.position() < CDCRecordFormat.HEADER_SIZE ) {
+			m_channel.position(CDCRecordFormat.HEADER_SIZE);
+		}
+	}
+}
@@ -0,0 +1,341 @@
+package opencvj.camera;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * {@link OpenCvJCameraFactoryImpl}의 카메라 공유 상태에 대한 통계.
+ * <p>
+ * 원시 카메라의 capture 소요 시간, consumer들의 대기 시간, capture 및 전달된 영상의 수,
+ * 실패 및 timeout 횟수를 누적하며, consumer({@link SharedOpenCvJCamera})별 통계도 함께 관리한다.
+ * 통계는 {@link OpenCvJCameraFactoryImpl#getMetrics()}를 통해 직접 조회하거나
+ * JMX('opencvj:type=CameraSharing')를 통해 조회할 수 있다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class CameraSharingMetrics implements CameraSharingMetricsMBean {
+	private static final Logger s_logger = LoggerFactory.getLogger("OPENCV.CAMERA_METRICS");
+	private static final double FPS_SMOOTHING = 0.1;
+
+	private final String m_sourceId;
+	private final LatencyHistogram m_captureLatency = new LatencyHistogram();
+	private final LatencyHistogram m_waitLatency = new LatencyHistogram();
+	private final LongAdder m_produced = new LongAdder();
+	private final LongAdder m_captureFailures = new LongAdder();
+	private final LongAdder m_timeouts = new LongAdder();
+	private final LongAdder m_ringOverflows = new LongAdder();
+	private final List<ConsumerMetrics> m_consumers = new CopyOnWriteArrayList<>();
+	private final AtomicInteger m_consumerIdGen = new AtomicInteger(0);
+	private final LongAdder m_retiredConsumed = new LongAdder();
+
+	// 한 시점에 capture하는 쓰레드는 하나이므로 별도의 동기화 없이 갱신된다.
+	private volatile long m_lastProducedNanos = -1;
+	private volatile double m_intervalNanos = 0;
+
+	private ObjectName m_objName;
+
+	/**
+	 * 하나의 consumer에 대한 통계.
+	 */
+	public static final class ConsumerMetrics {
+		private final int m_id;
+		private final LatencyHistogram m_latency = new LatencyHistogram();
+		private final LongAdder m_consumed = new LongAdder();
+		private final LongAdder m_dropped = new LongAdder();
+		private final LongAdder m_failures = new LongAdder();
+
+		private ConsumerMetrics(int id) {
+			m_id = id;
+		}
+
+		public int getId() {
+			return m_id;
+		}
+
+		/**
+		 * 전달받은 영상의 수를 반환한다.
+		 */
+		public long getFramesConsumed() {
+			return m_consumed.sum();
+		}
+
+		/**
+		 * 배경 capture 쓰레드 사용시, consumer가 가져가지 않아 버려진 영상의 수를 반환한다.
+		 */
+		public long getFramesDropped() {
+			return m_dropped.sum();
+		}
+
+		public long getFailures() {
+			return m_failures.sum();
+		}
+
+		/**
+		 * Consumer가 영상 요청 후 전달받을 때까지 걸린 시간의 분포를 반환한다.
+		 */
+		public LatencyHistogram getCaptureLatency() {
+			return m_latency;
+		}
+
+		void onConsumed(long elapsedNanos) {
+			m_consumed.increment();
+			m_latency.record(elapsedNanos);
+		}
+
+		void onDropped() {
+			m_dropped.increment();
+		}
+
+		void onFailed() {
+			m_failures.increment();
+		}
+
+		void reset() {
+			m_latency.reset();
+			m_consumed.reset();
+			m_dropped.reset();
+			m_failures.reset();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("consumer[%d]: consumed=%d, dropped=%d, failures=%d, latency={%s}",
+								m_id, getFramesConsumed(), getFramesDropped(), getFailures(), m_latency);
+		}
+	}
+
+	CameraSharingMetrics(String sourceId) {
+		m_sourceId = sourceId;
+	}
+
+	@Override
+	public String getSourceId() {
+		return m_sourceId;
+	}
+
+	@Override
+	public long getFramesProduced() {
+		return m_produced.sum();
+	}
+
+	@Override
+	public long getFramesConsumed() {
+		long consumed = m_retiredConsumed.sum();
+		for ( ConsumerMetrics consumer: m_consumers ) {
+			consumed += consumer.getFramesConsumed();
+		}
+
+		return consumed;
+	}
+
+	@Override
+	public double getFanOutRatio() {
+		long produced = getFramesProduced();
+		return (produced > 0) ? getFramesConsumed() / (double)produced : 0;
+	}
+
+	@Override
+	public double getCaptureFps() {
+		double interval = m_intervalNanos;
+		return (interval > 0) ? 1_000_000_000 / interval : 0;
+	}
+
+	@Override
+	public long getCaptureFailures() {
+		return m_captureFailures.sum();
+	}
+
+	@Override
+	public long getTimeouts() {
+		return m_timeouts.sum();
+	}
+
+	@Override
+	public long getRingOverflows() {
+		return m_ringOverflows.sum();
+	}
+
+	/**
+	 * 원시 카메라의 capture 소요 시간 분포를 반환한다.
+	 */
+	public LatencyHistogram getCaptureLatency() {
+		return m_captureLatency;
+	}
+
+	/**
+	 * Consumer들이 다른 consumer의 capture 완료를 대기한 시간의 분포를 반환한다.
+	 */
+	public LatencyHistogram getWaitLatency() {
+		return m_waitLatency;
+	}
+
+	@Override
+	public double getCaptureMeanMillis() {
+		return m_captureLatency.getMeanMillis();
+	}
+
+	@Override
+	public double getCaptureP99Millis() {
+		return m_captureLatency.getPercentileMillis(99);
+	}
+
+	@Override
+	public double getCaptureMaxMillis() {
+		return m_captureLatency.getMaxMillis();
+	}
+
+	@Override
+	public double getWaitMeanMillis() {
+		return m_waitLatency.getMeanMillis();
+	}
+
+	@Override
+	public double getWaitP99Millis() {
+		return m_waitLatency.getPercentileMillis(99);
+	}
+
+	@Override
+	public double getWaitMaxMillis() {
+		return m_waitLatency.getMaxMillis();
+	}
+
+	@Override
+	public int getConsumerCount() {
+		return m_consumers.size();
+	}
+
+	/**
+	 * 현재 등록된 consumer들의 통계를 반환한다.
+	 */
+	public List<ConsumerMetrics> getConsumerMetrics() {
+		return new ArrayList<>(m_consumers);
+	}
+
+	@Override
+	public String[] getConsumerSummaries() {
+		List<String> summaries = new ArrayList<>();
+		for ( ConsumerMetrics consumer: m_consumers ) {
+			summaries.add(consumer.toString());
+		}
+
+		return summaries.toArray(new String[summaries.size()]);
+	}
+
+	@Override
+	public void reset() {
+		m_captureLatency.reset();
+		m_waitLatency.reset();
+		m_produced.reset();
+		m_captureFailures.reset();
+		m_timeouts.reset();
+		m_ringOverflows.reset();
+		m_retiredConsumed.reset();
+		for ( ConsumerMetrics consumer: m_consumers ) {
+			consumer.reset();
+		}
+		m_lastProducedNanos = -1;
+		m_intervalNanos = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[source=%s, produced=%d, consumed=%d, fps=%.1f, failures=%d, "
+							+ "timeouts=%d, capture={%s}, wait={%s}]",
+							getClass().getSimpleName(), m_sourceId, getFramesProduced(),
+							getFramesConsumed(), getCaptureFps(), getCaptureFailures(),
+							getTimeouts(), m_captureLatency, m_waitLatency);
+	}
+
+	ConsumerMetrics addConsumer() {
+		ConsumerMetrics consumer = new ConsumerMetrics(m_consumerIdGen.incrementAndGet());
+		m_consumers.add(consumer);
+
+		return consumer;
+	}
+
+	void removeConsumer(ConsumerMetrics consumer) {
+		if ( m_consumers.remove(consumer) ) {
+			m_retiredConsumed.add(consumer.getFramesConsumed());
+		}
+	}
+
+	void onProduced(long captureStartNanos, long capturedNanos) {
+		m_produced.increment();
+		m_captureLatency.record(capturedNanos - captureStartNanos);
+
+		long last = m_lastProducedNanos;
+		if ( last >= 0 ) {
+			double interval = capturedNanos - last;
+			double smoothed = m_intervalNanos;
+			m_intervalNanos = (smoothed > 0)
+							? smoothed + FPS_SMOOTHING * (interval - smoothed) : interval;
+		}
+		m_lastProducedNanos = capturedNanos;
+	}
+
+	void onCaptureFailed() {
+		m_captureFailures.increment();
+	}
+
+	void onTimeout() {
+		m_timeouts.increment();
+	}
+
+	void onRingOverflow() {
+		m_ringOverflows.increment();
+	}
+
+	void onWaited(long nanos) {
+		m_waitLatency.record(nanos);
+	}
+
+	/**
+	 * 본 통계 객체를 platform MBean server에 등록한다.
+	 * <p>
+	 * 등록에 실패한 경우는 경고 log만 남기고 무시한다.
+	 */
+	synchronized void registerMBean() {
+		if ( m_objName != null ) {
+			return;
+		}
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("opencvj:type=CameraSharing,name="
+											+ ObjectName.quote(m_sourceId + "@"
+													+ Integer.toHexString(System.identityHashCode(this))));
+			server.registerMBean(this, name);
+			m_objName = name;
+		}
+		catch ( Exception e ) {
+			s_logger.warn("fails to register camera metrics MBean: source={}, cause={}", m_sourceId, e);
+		}
+	}
+
+	synchronized void unregisterMBean() {
+		if ( m_objName == null ) {
+			return;
+		}
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_objName);
+		}
+		catch ( Exception e ) {
+			s_logger.warn("fails to unregister camera metrics MBean: name={}, cause={}", m_objName, e);
+		}
+		finally {
+			m_objName = null;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package opencvj.camera;
+
+
+/**
+ * {@link CameraSharingMetrics}를 JMX를 통해 제공하기 위한 MBean interface.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public interface CameraSharingMetricsMBean {
+	public String getSourceId();
+
+	/**
+	 * 원시 카메라로부터 capture된 영상의 수를 반환한다.
+	 */
+	public long getFramesProduced();
+
+	/**
+	 * 모든 consumer들이 전달받은 영상 수의 합을 반환한다.
+	 */
+	public long getFramesConsumed();
+
+	/**
+	 * Capture된 영상 하나가 평균적으로 몇 번 consumer에게 전달되었는지를 반환한다.
+	 */
+	public double getFanOutRatio();
+
+	/**
+	 * 최근 capture 주기로부터 추정한 초당 capture 수를 반환한다.
+	 */
+	public double getCaptureFps();
+
+	public long getCaptureFailures();
+	public long getTimeouts();
+
+	/**
+	 * 모든 slot이 사용 중이어서 capture를 생략한 횟수를 반환한다.
+	 */
+	public long getRingOverflows();
+
+	public double getCaptureMeanMillis();
+	public double getCaptureP99Millis();
+	public double getCaptureMaxMillis();
+
+	/**
+	 * Consumer가 다른 consumer의 capture 완료를 대기한 시간의 평균을 반환한다.
+	 */
+	public double getWaitMeanMillis();
+	public double getWaitP99Millis();
+	public double getWaitMaxMillis();
+
+	public int getConsumerCount();
+
+	/**
+	 * 현재 등록된 consumer별 통계를 문자열로 반환한다.
+	 */
+	public String[] getConsumerSummaries();
+
+	public void reset();
+}
@@ -0,0 +1,41 @@
+package opencvj.camera;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * 카메라 패키지에서 executor가 지정되지 않은 경우 사용하는 기본 executor를 제공한다.
+ * <p>
+ * Capture 쓰레드처럼 오래 수행되는 작업이 {@link java.util.concurrent.ForkJoinPool#commonPool()}의
+ * 쓰레드를 점유하면 같은 pool을 사용하는 영상 처리 연산들이 지연되므로, 별도의 daemon 쓰레드들을
+ * 사용한다. 쓰레드는 필요할 때 생성되고 일정 시간 사용되지 않으면 제거된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class CameraThreads {
+	private static final ExecutorService s_executor = Executors.newCachedThreadPool(new DaemonFactory());
+
+	private CameraThreads() {
+		throw new AssertionError("Should not be called this one: " + CameraThreads.class);
+	}
+
+	static Executor getDefaultExecutor() {
+		return s_executor;
+	}
+
+	private static final class DaemonFactory implements ThreadFactory {
+		private final AtomicInteger m_seqNo = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(Runnable task) {
+			Thread thread = new Thread(task, "opencvj-camera-" + m_seqNo.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
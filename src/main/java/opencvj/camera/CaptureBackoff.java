@@ -0,0 +1,73 @@
+package opencvj.camera;
+
+import org.slf4j.Logger;
+
+
+/**
+ * 반복적으로 capture하는 쓰레드에서 capture가 연속으로 실패하는 경우의 재시도 간격을 조절한다.
+ * <p>
+ * 실패가 반복될수록 재시도 전 대기 시간을 두 배씩 늘리되 최대 {@link #MAX_DELAY_MILLIS}로 제한하며,
+ * 실패 로그는 {@link #LOG_INTERVAL_MILLIS}마다 한번만 출력하고 그 사이의 실패 횟수를 함께 기록한다.
+ * 하나의 객체는 하나의 capture 쓰레드에서만 사용되어야 한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class CaptureBackoff {
+	static final long MIN_DELAY_MILLIS = 10;
+	static final long MAX_DELAY_MILLIS = 1000;
+	static final long LOG_INTERVAL_MILLIS = 5 * 1000;
+
+	private final Logger m_logger;
+	private final Object m_target;
+	private long m_delayMillis = 0;
+	private int m_failures = 0;
+	private int m_suppressed = 0;
+	private long m_lastLogged = 0;
+
+	/**
+	 * @param logger	실패 로그를 출력할 logger.
+	 * @param target	로그에 표시될 capture 대상.
+	 */
+	CaptureBackoff(Logger logger, Object target) {
+		m_logger = logger;
+		m_target = target;
+	}
+
+	/**
+	 * Capture가 성공하였음을 알린다. 대기 시간은 초기화된다.
+	 */
+	void onSuccess() {
+		if ( m_failures > 0 ) {
+			m_logger.info("capture recovered: target={}, failures={}", m_target, m_failures);
+
+			m_failures = 0;
+			m_suppressed = 0;
+			m_delayMillis = 0;
+		}
+	}
+
+	/**
+	 * Capture가 실패하였음을 알리고, 연속 실패 횟수에 따른 시간 동안 대기한다.
+	 *
+	 * @param cause	실패 원인.
+	 * @throws InterruptedException	대기 중 쓰레드가 interrupt된 경우.
+	 */
+	void onFailure(RuntimeException cause) throws InterruptedException {
+		++m_failures;
+
+		long now = System.currentTimeMillis();
+		if ( m_lastLogged == 0 || now - m_lastLogged >= LOG_INTERVAL_MILLIS ) {
+			m_logger.warn("fails to capture an image: target={}, failures={}, suppressed={}, cause={}",
+							m_target, m_failures, m_suppressed, cause.toString());
+			m_lastLogged = now;
+			m_suppressed = 0;
+		}
+		else {
+			++m_suppressed;
+		}
+
+		m_delayMillis = (m_delayMillis == 0) ? MIN_DELAY_MILLIS
+											: Math.min(m_delayMillis * 2, MAX_DELAY_MILLIS);
+		Thread.sleep(m_delayMillis);
+	}
+}
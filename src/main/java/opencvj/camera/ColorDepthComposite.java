@@ -20,6 +20,26 @@ public interface ColorDepthComposite extends AutoCloseable {
 	
 	public void captureSynched(Mat colorImage, Mat depthImage);
 	
+	/**
+	 * 칼라 영상과 깊이 영상을 동기화하여 capture하고, 두 frame에 동일한 capture 시각과
+	 * 순차 번호를 기록한다.
+	 */
+	public default void captureSynched(Frame colorFrame, Frame depthFrame) {
+		captureSynched(colorFrame.getMat(), depthFrame.getMat());
+		
+		long seqNo = Frame.nextSequenceNo();
+		long captureNanos = System.nanoTime();
+		colorFrame.setMetadata(getSourceId() + "/color", seqNo, captureNanos);
+		depthFrame.setMetadata(getSourceId() + "/depth", seqNo, captureNanos);
+	}
+	
+	/**
+	 * Capture되는 frame들에 기록될 식별자를 반환한다.
+	 */
+	public default String getSourceId() {
+		return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this));
+	}
+	
 	public DepthToColorMapper getDepthToColorMapper();
 	public ColorToDepthMapper getColorToDepthMapper();
 }
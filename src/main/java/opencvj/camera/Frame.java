@@ -0,0 +1,95 @@
+package opencvj.camera;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+
+
+/**
+ * <code>Frame</code>은 카메라로부터 capture된 영상과 그에 대한 부가 정보를 정의한다.
+ * <p>
+ * 부가 정보로는 영상을 capture한 카메라의 식별자, 카메라별로 부여되는 순차 번호,
+ * 그리고 {@link System#nanoTime()} 기준의 capture 시각이 포함된다.
+ * 동일 카메라에서 capture된 두 frame의 순차 번호가 같으면 동일 영상을 의미한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class Frame implements AutoCloseable {
+	public static final long UNKNOWN_SEQUENCE_NO = -1;
+	private static final AtomicLong SEQ_NO_GEN = new AtomicLong(0);
+
+	private final Mat m_image;
+	private volatile String m_sourceId;
+	private volatile long m_seqNo = UNKNOWN_SEQUENCE_NO;
+	private volatile long m_captureNanos;
+
+	public Frame() {
+		this(new Mat());
+	}
+
+	public Frame(Mat image) {
+		m_image = image;
+	}
+
+	public final Mat getMat() {
+		return m_image;
+	}
+
+	public final String getSourceId() {
+		return m_sourceId;
+	}
+
+	public final long getSequenceNo() {
+		return m_seqNo;
+	}
+
+	public final long getCaptureNanos() {
+		return m_captureNanos;
+	}
+
+	/**
+	 * 영상이 capture된 후 경과된 시간을 반환한다.
+	 */
+	public final long getAgeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - m_captureNanos);
+	}
+
+	/**
+	 * 주어진 frame과 동일 카메라에서 capture된 동일 영상인지 여부를 반환한다.
+	 */
+	public final boolean isSameFrame(Frame other) {
+		return m_seqNo != UNKNOWN_SEQUENCE_NO && m_seqNo == other.m_seqNo
+				&& m_sourceId != null && m_sourceId.equals(other.m_sourceId);
+	}
+
+	public void setMetadata(String sourceId, long seqNo, long captureNanos) {
+		m_sourceId = sourceId;
+		m_seqNo = seqNo;
+		m_captureNanos = captureNanos;
+	}
+
+	public void setMetadata(Frame frame) {
+		setMetadata(frame.m_sourceId, frame.m_seqNo, frame.m_captureNanos);
+	}
+
+	/**
+	 * 자체적으로 순차 번호를 관리하지 않는 카메라를 위한 순차 번호를 생성한다.
+	 * <p>
+	 * 생성되는 번호는 모든 카메라에 걸쳐 단조 증가하므로, 카메라별로도 단조 증가한다.
+	 */
+	public static long nextSequenceNo() {
+		return SEQ_NO_GEN.incrementAndGet();
+	}
+
+	@Override
+	public void close() {
+		m_image.release();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[source=%s, seq=%d, age=%dms]", getClass().getSimpleName(),
+							m_sourceId, m_seqNo, getAgeMillis());
+	}
+}
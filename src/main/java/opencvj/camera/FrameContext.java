@@ -0,0 +1,170 @@
+package opencvj.camera;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import opencvj.Mats;
+
+
+/**
+ * <code>FrameContext</code>는 capture된 하나의 영상과 그로부터 유도되는 영상들을 관리한다.
+ * <p>
+ * 회색조, HSV, hue 채널, blur된 회색조, 그리고 pyramid 영상들은 처음 요청될 때 계산되어
+ * 이후 요청에서는 재사용된다. 따라서 동일 영상에 대해 여러 검출기를 수행하는 경우
+ * 색상 변환이 한번만 수행된다.
+ * <p>
+ * 반환되는 영상들은 검출기들 사이에 공유되므로 읽기 전용으로만 사용하여야 하며,
+ * 원시 영상의 내용이 변경된 경우는 {@link #invalidate()}를 호출하여야 한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class FrameContext implements AutoCloseable {
+	private static final MatOfInt HUE_FROM_TO = new MatOfInt(0, 0);
+
+	private final Mat m_image;
+	private Mat m_gray;
+	private Mat m_hsv;
+	private Mat m_hue;
+	private final Map<Size,Mat> m_blurredGrays = new HashMap<Size,Mat>();
+	private final List<Mat> m_pyramid = new ArrayList<Mat>();
+
+	/**
+	 * 주어진 영상에 대한 context를 생성한다.
+	 * <p>
+	 * 원시 영상은 context가 close되더라도 해제되지 않는다.
+	 */
+	public FrameContext(Mat image) {
+		m_image = image;
+	}
+
+	public FrameContext(Frame frame) {
+		this(frame.getMat());
+	}
+
+	public Mat getImage() {
+		return m_image;
+	}
+
+	public Size size() {
+		return m_image.size();
+	}
+
+	/**
+	 * 회색조 영상을 반환한다.
+	 * <p>
+	 * 원시 영상이 단일 채널인 경우는 원시 영상을 그대로 반환한다.
+	 */
+	public synchronized Mat getGray() {
+		if ( m_image.channels() == 1 ) {
+			return m_image;
+		}
+		if ( m_gray == null ) {
+			m_gray = new Mat();
+			Mats.toGrayImage(m_image, m_gray);
+		}
+
+		return m_gray;
+	}
+
+	public synchronized Mat getHsv() {
+		if ( m_hsv == null ) {
+			m_hsv = new Mat();
+			Imgproc.cvtColor(m_image, m_hsv, Imgproc.COLOR_BGR2HSV);
+		}
+
+		return m_hsv;
+	}
+
+	/**
+	 * HSV 영상의 hue 채널을 반환한다.
+	 */
+	public synchronized Mat getHue() {
+		if ( m_hue == null ) {
+			Mat hsv = getHsv();
+
+			m_hue = new Mat(hsv.size(), hsv.depth());
+			Core.mixChannels(Arrays.asList(hsv), Arrays.asList(m_hue), HUE_FROM_TO);
+		}
+
+		return m_hue;
+	}
+
+	/**
+	 * 주어진 크기의 Gaussian kernel로 blur된 회색조 영상을 반환한다.
+	 */
+	public synchronized Mat getBlurredGray(Size kernelSize) {
+		Mat blurred = m_blurredGrays.get(kernelSize);
+		if ( blurred == null ) {
+			blurred = new Mat();
+			Imgproc.GaussianBlur(getGray(), blurred, kernelSize, 0);
+			m_blurredGrays.put(kernelSize, blurred);
+		}
+
+		return blurred;
+	}
+
+	/**
+	 * 원시 영상의 Gaussian pyramid 중 주어진 level의 영상을 반환한다.
+	 * <p>
+	 * Level 0은 원시 영상이며, level이 하나 증가할 때마다 폭과 높이가 절반으로 줄어든다.
+	 */
+	public synchronized Mat getPyramidLevel(int level) {
+		if ( level < 0 ) {
+			throw new IllegalArgumentException("invalid pyramid level: " + level);
+		}
+		if ( level == 0 ) {
+			return m_image;
+		}
+
+		while ( m_pyramid.size() < level ) {
+			Mat prev = m_pyramid.isEmpty() ? m_image : m_pyramid.get(m_pyramid.size()-1);
+			Mat down = new Mat();
+			Imgproc.pyrDown(prev, down);
+			m_pyramid.add(down);
+		}
+
+		return m_pyramid.get(level-1);
+	}
+
+	/**
+	 * 지금까지 계산된 유도 영상들을 모두 해제한다.
+	 * <p>
+	 * 원시 영상의 내용이 변경된 경우 호출되어야 한다.
+	 */
+	public synchronized void invalidate() {
+		if ( m_gray != null ) {
+			m_gray.release();
+			m_gray = null;
+		}
+		if ( m_hsv != null ) {
+			m_hsv.release();
+			m_hsv = null;
+		}
+		if ( m_hue != null ) {
+			m_hue.release();
+			m_hue = null;
+		}
+		for ( Mat blurred: m_blurredGrays.values() ) {
+			blurred.release();
+		}
+		m_blurredGrays.clear();
+		for ( Mat level: m_pyramid ) {
+			level.release();
+		}
+		m_pyramid.clear();
+	}
+
+	@Override
+	public void close() {
+		invalidate();
+	}
+}
@@ -0,0 +1,38 @@
+package opencvj.camera;
+
+
+/**
+ * 요청(demand) 기반의 back-pressure를 지원하는 frame 전달 interface들을 정의한다.
+ * <p>
+ * 각 interface의 메소드들은 Java 9의 <code>java.util.concurrent.Flow</code>와 동일한
+ * 규약을 따르므로, 해당 interface들로 쉽게 adapt할 수 있다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class FrameFlow {
+	private FrameFlow() {
+		throw new AssertionError("Should not be called this one: " + FrameFlow.class);
+	}
+
+	public static interface Publisher<T> {
+		/**
+		 * 주어진 subscriber를 등록한다.
+		 * <p>
+		 * 등록된 subscriber에게는 {@link Subscriber#onSubscribe(Subscription)}가 먼저 호출되며,
+		 * 이후에는 {@link Subscription#request(long)}로 요청한 개수만큼만 item이 전달된다.
+		 */
+		public void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	public static interface Subscriber<T> {
+		public void onSubscribe(Subscription subscription);
+		public void onNext(T item);
+		public void onError(Throwable cause);
+		public void onComplete();
+	}
+
+	public static interface Subscription {
+		public void request(long n);
+		public void cancel();
+	}
+}
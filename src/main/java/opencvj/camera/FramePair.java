@@ -0,0 +1,41 @@
+package opencvj.camera;
+
+
+/**
+ * <code>FramePair</code>는 동기화되어 capture된 칼라 frame과 깊이 frame의 쌍을 정의한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class FramePair implements AutoCloseable {
+	private final Frame m_colorFrame;
+	private final Frame m_depthFrame;
+
+	public FramePair() {
+		this(new Frame(), new Frame());
+	}
+
+	public FramePair(Frame colorFrame, Frame depthFrame) {
+		m_colorFrame = colorFrame;
+		m_depthFrame = depthFrame;
+	}
+
+	public Frame getColorFrame() {
+		return m_colorFrame;
+	}
+
+	public Frame getDepthFrame() {
+		return m_depthFrame;
+	}
+
+	@Override
+	public void close() {
+		m_colorFrame.close();
+		m_depthFrame.close();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[color=%s, depth=%s]", getClass().getSimpleName(),
+							m_colorFrame, m_depthFrame);
+	}
+}
@@ -0,0 +1,379 @@
+package opencvj.camera;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import utils.Utilities;
+import utils.io.IOUtils;
+
+
+/**
+ * 공유 카메라가 capture한 영상을 요청(demand)이 있는 subscriber들에게 전달하는
+ * {@link FrameFlow.Publisher}.
+ * <p>
+ * Subscriber가 하나 이상 등록되면 하나의 capture 쓰레드가 구동되어, 요청이 남아있는
+ * subscriber가 있는 동안에만 영상을 capture한다. Capture 쓰레드는 영상을 복사하지 않고 subscriber별로
+ * pin된 참조만 생성하며, subscriber가 아직 처리하지 못한 참조는 더 최근 영상의 참조로 대체된다.
+ * 즉, subscriber의 처리 속도가 느린 경우 영상은 capture 쓰레드를 막지 않고 버려진다.
+ * 참조는 subscriber에게 전달되는 시점에 영상 전달 쓰레드에서 item으로 변환되므로, 영상 복사가
+ * 필요한 경우에도 버려진 영상은 복사되지 않으며 복사는 subscriber별로 병렬로 수행된다.
+ * 전달된 item은 subscriber가 사용 후 close하여야 한다.
+ * <p>
+ * 영상 전달은 주어진 {@link Executor}를 통해 수행되므로, 적은 수의 쓰레드로 많은 수의
+ * subscriber를 처리할 수 있다. Capture 쓰레드도 동일 executor를 사용하므로 executor는
+ * 최소 2개 이상의 쓰레드를 사용하여야 한다.
+ *
+ * @param <R>	공유 카메라로부터 capture한 영상 참조 객체의 타입.
+ * @param <T>	subscriber에게 전달되는 item의 타입.
+ * @author Kang-Woo Lee (ETRI)
+ */
+class FramePublisher<R extends AutoCloseable, T extends AutoCloseable> implements FrameFlow.Publisher<T> {
+	private static final Logger s_logger = LoggerFactory.getLogger("OPENCV.FRAME_PUBLISHER");
+
+	/**
+	 * {@link FramePublisher}가 사용하는 공유 카메라를 정의한다.
+	 */
+	interface Source<R> extends AutoCloseable {
+		/**
+		 * 다음 공유 영상을 capture한다.
+		 */
+		public R capture();
+
+		/**
+		 * 공유 영상을 복사하지 않고 추가로 pin한 참조를 생성한다.
+		 * <p>
+		 * 생성된 참조는 인자 참조와 별도로 close되어야 한다.
+		 */
+		public R duplicate(R shared);
+	}
+
+	private final Supplier<Source<R>> m_sourceOpener;
+	private final Function<R,T> m_deliverer;
+	private final Executor m_executor;			// optional
+
+	private final ReentrantLock m_lock = new ReentrantLock();
+	private final Condition m_demandCond = m_lock.newCondition();
+	@GuardedBy("m_lock") private final List<FrameSubscription> m_subscriptions = new ArrayList<>();
+	@GuardedBy("m_lock") private Pump m_pump;
+
+	/**
+	 * Publisher 객체를 생성한다.
+	 *
+	 * @param sourceOpener	공유 카메라를 생성하고 open하는 함수. capture 쓰레드가 시작될 때마다 호출된다.
+	 * @param deliverer	subscriber에게 전달할 참조로부터 item을 생성하는 함수. 인자 참조의 close는
+	 * 					이 함수가 책임지며, 참조를 그대로 전달하는 경우는 {@link Function#identity()}를 사용한다.
+	 * @param executor	capture 쓰레드 및 영상 전달에 사용될 executor. <code>null</code>인 경우는
+	 * 					capture 쓰레드가 {@link java.util.concurrent.ForkJoinPool#commonPool()}을
+	 * 					점유하지 않도록 카메라 패키지 전용의 daemon 쓰레드들을 사용한다.
+	 */
+	FramePublisher(Supplier<Source<R>> sourceOpener, Function<R,T> deliverer, Executor executor) {
+		m_sourceOpener = sourceOpener;
+		m_deliverer = deliverer;
+		m_executor = (executor != null) ? executor : CameraThreads.getDefaultExecutor();
+	}
+
+	@Override
+	public void subscribe(FrameFlow.Subscriber<? super T> subscriber) {
+		FrameSubscription subscription = new FrameSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+
+		m_lock.lock();
+		try {
+			if ( subscription.m_cancelled.get() ) {
+				return;
+			}
+
+			m_subscriptions.add(subscription);
+			if ( m_pump == null ) {
+				m_pump = new Pump();
+				Utilities.runAsync(m_executor, m_pump);
+			}
+		}
+		finally {
+			m_lock.unlock();
+		}
+	}
+
+	/**
+	 * 등록된 모든 subscriber들에게 완료를 통보하고 capture 쓰레드를 종료시킨다.
+	 */
+	void shutdown() {
+		List<FrameSubscription> subscriptions;
+		m_lock.lock();
+		try {
+			subscriptions = new ArrayList<>(m_subscriptions);
+		}
+		finally {
+			m_lock.unlock();
+		}
+
+		for ( FrameSubscription subscription: subscriptions ) {
+			if ( subscription.cancelSilently() ) {
+				subscription.m_subscriber.onComplete();
+			}
+		}
+	}
+
+	private void remove(FrameSubscription subscription) {
+		m_lock.lock();
+		try {
+			m_subscriptions.remove(subscription);
+			if ( m_subscriptions.isEmpty() && m_pump != null ) {
+				// capture 쓰레드는 진행 중인 capture를 마친 후 공유 카메라를 close하고 종료된다.
+				m_pump.m_running = false;
+				m_pump = null;
+				m_demandCond.signalAll();
+			}
+		}
+		finally {
+			m_lock.unlock();
+		}
+	}
+
+	private void signalDemand() {
+		m_lock.lock();
+		try {
+			m_demandCond.signalAll();
+		}
+		finally {
+			m_lock.unlock();
+		}
+	}
+
+	@GuardedBy("m_lock")
+	private List<FrameSubscription> awaitDemandInGuard(Pump pump) throws InterruptedException {
+		while ( pump.m_running ) {
+			List<FrameSubscription> demandings = new ArrayList<>();
+			for ( FrameSubscription subscription: m_subscriptions ) {
+				if ( subscription.hasDemand() ) {
+					demandings.add(subscription);
+				}
+			}
+			if ( demandings.size() > 0 ) {
+				return demandings;
+			}
+
+			m_demandCond.await();
+		}
+
+		return null;
+	}
+
+	private class Pump implements Runnable {
+		private volatile boolean m_running = true;
+
+		@Override
+		public void run() {
+			Source<R> source;
+			try {
+				source = m_sourceOpener.get();
+			}
+			catch ( Throwable e ) {
+				s_logger.error("fails to open a shared camera: cause=" + e);
+				failAll(e);
+				return;
+			}
+
+			CaptureBackoff backoff = new CaptureBackoff(s_logger, source);
+			try {
+				while ( true ) {
+					List<FrameSubscription> demandings;
+					m_lock.lock();
+					try {
+						demandings = awaitDemandInGuard(this);
+					}
+					finally {
+						m_lock.unlock();
+					}
+					if ( demandings == null ) {
+						return;
+					}
+
+					R shared;
+					try {
+						shared = source.capture();
+						backoff.onSuccess();
+					}
+					catch ( RuntimeException e ) {
+						// 장치 오류가 지속되는 경우 쉬지 않고 재시도하지 않도록 대기한다.
+						if ( m_running ) {
+							backoff.onFailure(e);
+						}
+						continue;
+					}
+
+					try {
+						for ( FrameSubscription subscription: demandings ) {
+							subscription.offer(source.duplicate(shared));
+						}
+					}
+					finally {
+						IOUtils.closeQuietly(shared);
+					}
+				}
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				IOUtils.closeQuietly(source);
+			}
+		}
+
+		private void failAll(Throwable cause) {
+			List<FrameSubscription> subscriptions;
+			m_lock.lock();
+			try {
+				subscriptions = new ArrayList<>(m_subscriptions);
+			}
+			finally {
+				m_lock.unlock();
+			}
+
+			for ( FrameSubscription subscription: subscriptions ) {
+				if ( subscription.cancelSilently() ) {
+					subscription.m_subscriber.onError(cause);
+				}
+			}
+		}
+	}
+
+	private class FrameSubscription implements FrameFlow.Subscription {
+		private final FrameFlow.Subscriber<? super T> m_subscriber;
+		private final AtomicLong m_demand = new AtomicLong(0);
+		private final AtomicReference<R> m_pending = new AtomicReference<>();
+		private final AtomicBoolean m_draining = new AtomicBoolean(false);
+		private final AtomicBoolean m_cancelled = new AtomicBoolean(false);
+
+		FrameSubscription(FrameFlow.Subscriber<? super T> subscriber) {
+			m_subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if ( m_cancelled.get() ) {
+				return;
+			}
+			if ( n <= 0 ) {
+				if ( cancelSilently() ) {
+					m_subscriber.onError(new IllegalArgumentException("non-positive request: n=" + n));
+				}
+				return;
+			}
+
+			while ( true ) {
+				long demand = m_demand.get();
+				long updated = (demand + n < 0) ? Long.MAX_VALUE : demand + n;
+				if ( m_demand.compareAndSet(demand, updated) ) {
+					break;
+				}
+			}
+
+			signalDemand();
+			scheduleDrain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelSilently();
+		}
+
+		private boolean cancelSilently() {
+			if ( !m_cancelled.compareAndSet(false, true) ) {
+				return false;
+			}
+
+			remove(this);
+			discardPending();
+
+			return true;
+		}
+
+		boolean hasDemand() {
+			return !m_cancelled.get() && m_demand.get() > 0;
+		}
+
+		void offer(R ref) {
+			// 아직 전달되지 않은 영상은 새 영상으로 대체한다.
+			R replaced = m_pending.getAndSet(ref);
+			if ( replaced != null ) {
+				IOUtils.closeQuietly(replaced);
+			}
+			if ( m_cancelled.get() ) {
+				discardPending();
+				return;
+			}
+
+			scheduleDrain();
+		}
+
+		private void discardPending() {
+			R pending = m_pending.getAndSet(null);
+			if ( pending != null ) {
+				IOUtils.closeQuietly(pending);
+			}
+		}
+
+		private void scheduleDrain() {
+			if ( m_pending.get() != null && m_draining.compareAndSet(false, true) ) {
+				m_executor.execute(this::drain);
+			}
+		}
+
+		private void drain() {
+			try {
+				while ( !m_cancelled.get() && m_demand.get() > 0 ) {
+					R ref = m_pending.getAndSet(null);
+					if ( ref == null ) {
+						break;
+					}
+					if ( m_demand.get() != Long.MAX_VALUE ) {
+						m_demand.decrementAndGet();
+					}
+
+					T item;
+					try {
+						item = m_deliverer.apply(ref);
+					}
+					catch ( Throwable e ) {
+						IOUtils.closeQuietly(ref);
+						if ( cancelSilently() ) {
+							m_subscriber.onError(e);
+						}
+						return;
+					}
+
+					try {
+						m_subscriber.onNext(item);
+					}
+					catch ( Throwable e ) {
+						s_logger.warn("subscriber failed: subscriber=" + m_subscriber + ", cause=" + e);
+						cancelSilently();
+						return;
+					}
+				}
+			}
+			finally {
+				m_draining.set(false);
+			}
+
+			// drain을 마치는 사이에 도착한 영상을 처리한다.
+			if ( !m_cancelled.get() && m_demand.get() > 0 ) {
+				scheduleDrain();
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package opencvj.camera;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import opencvj.camera.OpenCvJCameraFactoryImpl.DropPolicy;
+
+
+/**
+ * 배경 capture 쓰레드가 생성한 영상들을 하나의 consumer에게 전달하기 위한 queue.
+ * <p>
+ * Queue가 가득 찬 경우의 동작은 {@link DropPolicy}에 따라 결정된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class FrameQueue implements AutoCloseable {
+	private final DropPolicy m_policy;
+	private final int m_capacity;
+	private final CameraSharingMetrics.ConsumerMetrics m_metrics;	// optional
+
+	private final ReentrantLock m_lock = new ReentrantLock();
+	private final Condition m_notEmptyCond = m_lock.newCondition();
+	private final Condition m_notFullCond = m_lock.newCondition();
+	@GuardedBy("m_lock") private final ArrayDeque<FrameRef> m_frames;
+	@GuardedBy("m_lock") private boolean m_closed = false;
+
+	FrameQueue(DropPolicy policy, int capacity) {
+		this(policy, capacity, null);
+	}
+
+	FrameQueue(DropPolicy policy, int capacity, CameraSharingMetrics.ConsumerMetrics metrics) {
+		m_policy = policy;
+		m_metrics = metrics;
+		m_capacity = (policy == DropPolicy.LATEST_ONLY) ? 1 : capacity;
+		if ( m_capacity < 1 ) {
+			throw new IllegalArgumentException("invalid queue capacity: " + capacity);
+		}
+
+		m_frames = new ArrayDeque<FrameRef>(m_capacity);
+	}
+
+	/**
+	 * 주어진 영상을 queue에 추가한다.
+	 * <p>
+	 * 추가된 영상의 소유권은 queue로 넘어간다. Queue가 가득 찬 경우
+	 * {@link DropPolicy#BLOCK_PRODUCER}이면 공간이 생길 때까지 대기하고,
+	 * 그렇지 않으면 가장 오래된 영상을 버린다.
+	 */
+	void offer(FrameRef frame) throws InterruptedException {
+		m_lock.lock();
+		try {
+			if ( m_frames.size() >= m_capacity ) {
+				if ( m_policy == DropPolicy.BLOCK_PRODUCER ) {
+					while ( m_frames.size() >= m_capacity && !m_closed ) {
+						m_notFullCond.await();
+					}
+				}
+				else {
+					m_frames.pollFirst().close();
+					if ( m_metrics != null ) {
+						m_metrics.onDropped();
+					}
+				}
+			}
+			if ( m_closed ) {
+				frame.close();
+				return;
+			}
+
+			m_frames.addLast(frame);
+			m_notEmptyCond.signal();
+		}
+		finally {
+			m_lock.unlock();
+		}
+	}
+
+	/**
+	 * Queue에서 가장 오래된 영상을 꺼낸다.
+	 *
+	 * @return	꺼낸 영상. 제한시간 내에 영상이 도착하지 않거나 queue가 close된 경우는 {@code null}.
+	 */
+	FrameRef poll(long timeoutMillis) throws InterruptedException {
+		long remains = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		m_lock.lock();
+		try {
+			while ( m_frames.isEmpty() ) {
+				if ( m_closed || remains <= 0 ) {
+					return null;
+				}
+				remains = m_notEmptyCond.awaitNanos(remains);
+			}
+
+			FrameRef frame = m_frames.pollFirst();
+			m_notFullCond.signal();
+
+			return frame;
+		}
+		finally {
+			m_lock.unlock();
+		}
+	}
+
+	/**
+	 * Queue에서 가장 최근 영상을 꺼내고, 그보다 오래된 영상들은 버린다.
+	 *
+	 * @return	꺼낸 영상. Queue가 비어있는 경우는 {@code null}.
+	 */
+	FrameRef pollLatest() {
+		m_lock.lock();
+		try {
+			FrameRef latest = m_frames.pollLast();
+			if ( latest != null ) {
+				for ( FrameRef frame: m_frames ) {
+					frame.close();
+				}
+				m_frames.clear();
+				m_notFullCond.signalAll();
+			}
+
+			return latest;
+		}
+		finally {
+			m_lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		m_lock.lock();
+		try {
+			m_closed = true;
+			for ( FrameRef frame: m_frames ) {
+				frame.close();
+			}
+			m_frames.clear();
+
+			m_notEmptyCond.signalAll();
+			m_notFullCond.signalAll();
+		}
+		finally {
+			m_lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package opencvj.camera;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import opencvj.OpenCvJException;
+
+
+/**
+ * <code>FrameRef</code>는 공유 카메라가 capture한 영상을 복사하지 않고 참조하는 객체를 정의한다.
+ * <p>
+ * 참조되는 영상은 모든 <code>FrameRef</code>가 {@link #close()}될 때까지 재사용되지 않는다.
+ * {@link #getMat()}가 반환하는 영상은 다른 consumer들과 공유되므로 읽기 전용으로만 사용하여야 한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class FrameRef implements AutoCloseable {
+	private final FrameRing.FrameSlot m_slot;
+	private final long m_seqNo;
+	private final long m_captureNanos;
+	private final Mat m_view;
+	@GuardedBy("this") private Map<Size,Mat> m_resizedViews;
+	private final AtomicBoolean m_closed = new AtomicBoolean(false);
+
+	/**
+	 * 주어진 slot에 대한 참조 객체를 생성한다.
+	 * <p>
+	 * 인자 slot은 이미 pin된 상태이어야 하며, 생성된 객체가 close될 때 unpin된다.
+	 */
+	FrameRef(FrameRing.FrameSlot slot) {
+		m_slot = slot;
+		m_seqNo = slot.getSequenceNo();
+		m_captureNanos = slot.getCaptureNanos();
+
+		// 사용자가 실수로 release하더라도 slot의 영상이 해제되지 않도록 별도의 header를 사용한다.
+		Mat image = slot.m_image;
+		m_view = image.submat(0, image.rows(), 0, image.cols());
+	}
+
+	/**
+	 * 참조하는 영상을 반환한다.
+	 * <p>
+	 * 반환된 영상은 읽기 전용으로 사용되어야 한다.
+	 */
+	public Mat getMat() {
+		if ( m_closed.get() ) {
+			throw new OpenCvJException("FrameRef has been closed already");
+		}
+
+		return m_view;
+	}
+
+	/**
+	 * 공유 카메라가 capture시 미리 계산해둔 주어진 크기의 영상을 반환한다.
+	 * <p>
+	 * 반환된 영상은 읽기 전용으로 사용되어야 한다.
+	 *
+	 * @param size	영상 크기.
+	 * @return	주어진 크기의 영상. 해당 크기가 공유 카메라에 설정되지 않은 경우는 {@code null}.
+	 */
+	public synchronized Mat getMat(Size size) {
+		if ( m_closed.get() ) {
+			throw new OpenCvJException("FrameRef has been closed already");
+		}
+
+		Mat resized = m_slot.m_resizeds.get(size);
+		if ( resized == null ) {
+			return null;
+		}
+
+		if ( m_resizedViews == null ) {
+			m_resizedViews = new HashMap<>();
+		}
+		Mat view = m_resizedViews.get(size);
+		if ( view == null ) {
+			view = resized.submat(0, resized.rows(), 0, resized.cols());
+			m_resizedViews.put(size, view);
+		}
+
+		return view;
+	}
+
+	public long getSequenceNo() {
+		return m_seqNo;
+	}
+
+	/**
+	 * 영상이 capture된 시각({@link System#nanoTime()} 기준)을 반환한다.
+	 */
+	public long getCaptureNanos() {
+		return m_captureNanos;
+	}
+
+	/**
+	 * 동일 영상을 참조하는 새 <code>FrameRef</code>를 생성한다.
+	 * <p>
+	 * 생성된 객체는 이 객체와 별도로 close되어야 한다.
+	 */
+	public FrameRef duplicate() {
+		if ( m_closed.get() || !m_slot.tryPin(m_seqNo) ) {
+			throw new OpenCvJException("FrameRef has been closed already");
+		}
+
+		return new FrameRef(m_slot);
+	}
+
+	@Override
+	public void close() {
+		if ( m_closed.compareAndSet(false, true) ) {
+			m_view.release();
+			synchronized ( this ) {
+				if ( m_resizedViews != null ) {
+					for ( Mat view: m_resizedViews.values() ) {
+						view.release();
+					}
+					m_resizedViews = null;
+				}
+			}
+			m_slot.unpin();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[seq=%d]", getClass().getSimpleName(), m_seqNo);
+	}
+}
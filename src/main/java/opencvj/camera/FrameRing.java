@@ -0,0 +1,203 @@
+package opencvj.camera;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+
+/**
+ * 미리 할당된 고정 개수의 frame slot으로 구성된 ring 버퍼.
+ * <p>
+ * Producer는 가장 최근에 발행된 slot과 reader가 사용 중인(pin된) slot을 제외한
+ * slot에 영상을 기록한 후 sequence 번호와 함께 발행한다.
+ * Reader는 가장 최근에 발행된 slot을 pin하여 읽으며, 이 과정에서 lock을 사용하지 않는다.
+ * 한 시점에 producer는 최대 하나만 존재한다고 가정한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class FrameRing implements AutoCloseable {
+	// slot이 추가되는 경우에만 교체되며, 기존 slot들은 같은 순서로 유지된다.
+	private volatile FrameSlot[] m_slots;
+	private final AtomicReference<FrameSlot> m_latest = new AtomicReference<>();
+	private final AtomicLong m_seqNoGen = new AtomicLong(0);
+	private int m_cursor = 0;		// producer만 접근함
+
+	static final class FrameSlot {
+		private static final int WRITING = -1;
+
+		final Mat m_image = new Mat();
+		// producer가 기록 중에 미리 계산해둔 크기별 영상들 (발행 이후에는 읽기만 한다)
+		final Map<Size,Mat> m_resizeds = new HashMap<>();
+		// 0 이상: 현재 slot을 pin한 reader의 수, WRITING: producer가 기록 중
+		private final AtomicInteger m_state = new AtomicInteger(0);
+		private volatile long m_seqNo = -1;
+		private volatile long m_captureNanos = 0;
+
+		long getSequenceNo() {
+			return m_seqNo;
+		}
+
+		long getCaptureNanos() {
+			return m_captureNanos;
+		}
+
+		private boolean tryAcquireForWrite() {
+			return m_state.compareAndSet(0, WRITING);
+		}
+
+		private void publish(long seqNo, long captureNanos) {
+			m_seqNo = seqNo;
+			m_captureNanos = captureNanos;
+			m_state.set(0);
+		}
+
+		private void abortWrite() {
+			m_seqNo = -1;
+			m_state.set(0);
+		}
+
+		boolean tryPin(long seqNo) {
+			while ( true ) {
+				int state = m_state.get();
+				if ( state == WRITING ) {
+					return false;
+				}
+				if ( m_state.compareAndSet(state, state+1) ) {
+					// pin된 이후에는 producer가 slot을 재사용할 수 없으므로 seqNo가 고정된다.
+					if ( m_seqNo == seqNo ) {
+						return true;
+					}
+
+					unpin();
+					return false;
+				}
+			}
+		}
+
+		void unpin() {
+			m_state.decrementAndGet();
+		}
+	}
+
+	FrameRing(int size) {
+		if ( size < 2 ) {
+			throw new IllegalArgumentException("ring size should be larger than 1: size=" + size);
+		}
+
+		m_slots = new FrameSlot[size];
+		for ( int i =0; i < size; ++i ) {
+			m_slots[i] = new FrameSlot();
+		}
+	}
+
+	int size() {
+		return m_slots.length;
+	}
+
+	/**
+	 * Ring의 slot 수가 주어진 수 이상이 되도록 slot들을 추가한다.
+	 * <p>
+	 * 기존 slot들은 그대로 유지되므로, 발행된 영상이나 pin된 slot에는 영향을 주지 않는다.
+	 * 동시에 여러 쓰레드에서 호출되어서는 안된다.
+	 *
+	 * @return	slot이 추가된 경우는 {@code true}.
+	 */
+	boolean ensureCapacity(int size) {
+		FrameSlot[] slots = m_slots;
+		if ( slots.length >= size ) {
+			return false;
+		}
+
+		FrameSlot[] extended = Arrays.copyOf(slots, size);
+		for ( int i = slots.length; i < size; ++i ) {
+			extended[i] = new FrameSlot();
+		}
+		m_slots = extended;
+
+		return true;
+	}
+
+	/**
+	 * 영상을 기록할 slot을 확보한다.
+	 * <p>
+	 * 가장 최근에 발행된 slot과 pin된 slot은 제외된다.
+	 *
+	 * @return	확보된 slot. 모든 slot이 사용 중인 경우는 {@code null}.
+	 */
+	FrameSlot acquireWritable() {
+		FrameSlot[] slots = m_slots;
+		FrameSlot latest = m_latest.get();
+		for ( int i =0; i < slots.length; ++i ) {
+			int idx = (m_cursor + i) % slots.length;
+			FrameSlot slot = slots[idx];
+			if ( slot != latest && slot.tryAcquireForWrite() ) {
+				m_cursor = (idx + 1) % slots.length;
+				return slot;
+			}
+		}
+
+		return null;
+	}
+
+	long publish(FrameSlot slot, long captureNanos) {
+		long seqNo = m_seqNoGen.incrementAndGet();
+		slot.publish(seqNo, captureNanos);
+		m_latest.set(slot);
+
+		return seqNo;
+	}
+
+	void abort(FrameSlot slot) {
+		slot.abortWrite();
+	}
+
+	/**
+	 * 가장 최근에 발행된 slot을 pin하여 반환한다.
+	 * <p>
+	 * 반환된 slot은 사용 후 반드시 {@link FrameSlot#unpin()}을 호출하여야 한다.
+	 *
+	 * @return	pin된 slot. 아직 발행된 영상이 없는 경우는 {@code null}.
+	 */
+	FrameSlot pinLatest() {
+		while ( true ) {
+			FrameSlot slot = m_latest.get();
+			if ( slot == null ) {
+				return null;
+			}
+			if ( slot.tryPin(slot.getSequenceNo()) ) {
+				return slot;
+			}
+		}
+	}
+
+	long getLatestSequenceNo() {
+		FrameSlot slot = m_latest.get();
+		return (slot != null) ? slot.getSequenceNo() : -1;
+	}
+
+	/**
+	 * 발행된 영상을 모두 무효화시킨다.
+	 * <p>
+	 * 카메라가 다시 open되는 경우 이전에 capture된 영상이 전달되지 않도록 하기 위해 사용된다.
+	 */
+	void reset() {
+		m_latest.set(null);
+	}
+
+	@Override
+	public void close() {
+		m_latest.set(null);
+		for ( FrameSlot slot: m_slots ) {
+			slot.m_image.release();
+			for ( Mat resized: slot.m_resizeds.values() ) {
+				resized.release();
+			}
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package opencvj.camera;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 import org.opencv.highgui.Highgui;
@@ -42,6 +44,7 @@ public class HighGuiCamera implements OpenCvJCamera, Initializable {
 	
 	private Params m_params;
 	private VideoCapture m_capture;	// 'null'이면 initialize되지 않은 것으로 간주
+	private final AtomicLong m_seqNoGen = new AtomicLong(0);
 	
 	public static HighGuiCamera create(OpenCvJLoader loader, ConfigNode config) throws Exception {
 		HighGuiCamera camera = new HighGuiCamera();
@@ -151,6 +154,42 @@ public class HighGuiCamera implements OpenCvJCamera, Initializable {
 			throw new OpenCvJException("fails to capture image");
 		}
 	}
+
+	@Override
+	public void capture(Frame frame) {
+		if ( !m_capture.isOpened() ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+		}
+		
+		// capture 시각은 영상을 decode하기 전인 grab 직후를 기준으로 한다.
+		if ( !m_capture.grab() ) {
+			throw new OpenCvJException("fails to capture image");
+		}
+		long captureNanos = System.nanoTime();
+		if ( !m_capture.retrieve(frame.getMat()) ) {
+			throw new OpenCvJException("fails to capture image");
+		}
+		frame.setMetadata(getSourceId(), m_seqNoGen.incrementAndGet(), captureNanos);
+	}
+	
+	/**
+	 * 다음 frame을 decode하지 않고 버린다.
+	 */
+	@Override
+	public void grab() {
+		if ( !m_capture.isOpened() ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+		}
+		if ( !m_capture.grab() ) {
+			throw new OpenCvJException("fails to grab image");
+		}
+		m_seqNoGen.incrementAndGet();
+	}
+	
+	@Override
+	public String getSourceId() {
+		return "highgui:" + m_params.deviceIndex;
+	}
 	
 	@Override
 	public String toString() {
@@ -0,0 +1,213 @@
+package opencvj.camera;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.highgui.Highgui;
+import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import opencvj.OpenCvJException;
+import opencvj.OpenCvJUtils;
+import utils.Initializable;
+import utils.UninitializedException;
+import utils.config.ConfigNode;
+
+
+/**
+ * 디렉토리에 저장된 영상 파일들을 파일 이름 순서대로 재생하는 카메라.
+ * <p>
+ * 카메라가 없는 환경에서 영상 처리 pipeline을 재현 가능하게 수행하거나,
+ * 장치의 frame rate 제한 없이 최대 처리량을 측정하기 위해 사용된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class ImageDirCamera implements OpenCvJCamera, Initializable {
+	private static final Logger s_logger = LoggerFactory.getLogger("OPENCV.IMAGE_DIR");
+	private static final String[] IMAGE_SUFFIXES = {".jpg", ".jpeg", ".png", ".bmp", ".tif", ".tiff", ".pgm", ".ppm"};
+
+	// properties (BEGIN)
+	private volatile ConfigNode m_config;
+	// properties (END)
+
+	private File m_dir;
+	private File[] m_files;
+	private boolean m_loop;
+	private ReplayPacer m_pacer;
+	private Size m_size;
+	private boolean m_opened = false;
+	private int m_cursor = 0;
+	private final AtomicLong m_seqNoGen = new AtomicLong(0);
+
+	public static ImageDirCamera create(ConfigNode config) throws Exception {
+		ImageDirCamera camera = new ImageDirCamera();
+		camera.setConfig(config);
+		camera.initialize();
+
+		return camera;
+	}
+
+	public ImageDirCamera() { }
+
+	public final void setConfig(ConfigNode config) {
+		m_config = config;
+	}
+
+	@Override
+	public synchronized void initialize() throws Exception {
+		if ( m_config == null ) {
+			throw new UninitializedException("Property 'config' was not specified: class="
+											+ getClass().getName());
+		}
+
+		m_dir = m_config.get("dir").asFile();
+		m_files = m_dir.listFiles(file -> file.isFile() && isImageFile(file.getName()));
+		if ( m_files == null || m_files.length == 0 ) {
+			throw new OpenCvJException("no image files in the directory: dir=" + m_dir);
+		}
+		Arrays.sort(m_files);
+
+		m_loop = m_config.get("loop").asBoolean(false);
+		m_pacer = ReplayPacer.from(m_config, -1);
+
+		Size size = OpenCvJUtils.asSize(m_config.get("image_size"), null);
+		if ( size == null ) {
+			Mat first = read(m_files[0]);
+			try {
+				size = first.size();
+			}
+			finally {
+				first.release();
+			}
+		}
+		m_size = size;
+
+		s_logger.info("initialized: {}", toString());
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		close();
+	}
+
+	@Override
+	public synchronized void open() {
+		Preconditions.checkState(m_files != null, "not initialized: " + getClass());
+
+		if ( m_opened ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " already opened");
+		}
+
+		m_cursor = 0;
+		m_pacer.reset();
+		m_opened = true;
+	}
+
+	@Override
+	public synchronized void close() {
+		m_opened = false;
+	}
+
+	@Override
+	public Size getSize() {
+		return m_size;
+	}
+
+	@Override
+	public synchronized void capture(Mat image) {
+		if ( !m_opened ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+		}
+
+		if ( m_cursor >= m_files.length ) {
+			if ( !m_loop ) {
+				throw new OpenCvJException("end of image sequence: dir=" + m_dir);
+			}
+			m_cursor = 0;
+		}
+
+		m_pacer.await();
+		Mat read = read(m_files[m_cursor++]);
+		try {
+			// 영상 파일들의 크기가 다르거나 'image_size'가 지정된 경우는 getSize()와 같은 크기로 변환한다.
+			if ( read.size().equals(m_size) ) {
+				read.copyTo(image);
+			}
+			else {
+				Imgproc.resize(read, image, m_size);
+			}
+		}
+		finally {
+			read.release();
+		}
+		m_seqNoGen.incrementAndGet();
+	}
+
+	/**
+	 * 다음 영상 파일을 읽지 않고 건너뛴다.
+	 */
+	@Override
+	public synchronized void grab() {
+		if ( !m_opened ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+		}
+
+		if ( m_cursor >= m_files.length ) {
+			if ( !m_loop ) {
+				throw new OpenCvJException("end of image sequence: dir=" + m_dir);
+			}
+			m_cursor = 0;
+		}
+
+		m_pacer.await();
+		++m_cursor;
+		m_seqNoGen.incrementAndGet();
+	}
+
+	@Override
+	public synchronized void capture(Frame frame) {
+		// capture(Mat)에서 증가된 sequence 번호를 사용한다.
+		capture(frame.getMat());
+		frame.setMetadata(getSourceId(), m_seqNoGen.get(), System.nanoTime());
+	}
+
+	@Override
+	public String getSourceId() {
+		return "image_dir:" + m_dir.getName();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[dir=%s, count=%d, size=%s, pacing=%s, loop=%s]",
+							getClass().getSimpleName(), m_dir, m_files.length,
+							OpenCvJUtils.toString(m_size), m_pacer.getPacing(), m_loop);
+	}
+
+	private static Mat read(File file) {
+		Mat image = Highgui.imread(file.getAbsolutePath(),
+								Highgui.CV_LOAD_IMAGE_ANYCOLOR + Highgui.CV_LOAD_IMAGE_ANYDEPTH);
+		if ( image.empty() ) {
+			image.release();
+			throw new OpenCvJException("fails to read image file: path=" + file);
+		}
+
+		return image;
+	}
+
+	private static boolean isImageFile(String name) {
+		String lower = name.toLowerCase();
+		for ( String suffix: IMAGE_SUFFIXES ) {
+			if ( lower.endsWith(suffix) ) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,113 @@
+package opencvj.camera;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * 소요 시간들의 분포를 lock 없이 누적하는 histogram.
+ * <p>
+ * Bucket <code>i</code>는 [2^(i-1), 2^i) microsecond 구간의 소요 시간 수를 기록하며,
+ * bucket 0은 1 microsecond 미만의 소요 시간을 기록한다. 따라서 백분위 값은 해당 bucket의
+ * 상한 값으로 근사된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class LatencyHistogram {
+	private static final int NBUCKETS = 32;		// 최대 약 35분
+
+	private final AtomicLongArray m_buckets = new AtomicLongArray(NBUCKETS);
+	private final LongAdder m_count = new LongAdder();
+	private final LongAdder m_totalNanos = new LongAdder();
+	private final AtomicLong m_maxNanos = new AtomicLong(0);
+
+	public void record(long nanos) {
+		if ( nanos < 0 ) {
+			nanos = 0;
+		}
+
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		int idx = Math.min(64 - Long.numberOfLeadingZeros(micros), NBUCKETS-1);
+		m_buckets.incrementAndGet(idx);
+		m_count.increment();
+		m_totalNanos.add(nanos);
+
+		long max;
+		while ( (max = m_maxNanos.get()) < nanos ) {
+			if ( m_maxNanos.compareAndSet(max, nanos) ) {
+				break;
+			}
+		}
+	}
+
+	public long getCount() {
+		return m_count.sum();
+	}
+
+	public double getMeanMillis() {
+		long count = m_count.sum();
+		return (count > 0) ? (m_totalNanos.sum() / (double)count) / 1_000_000 : 0;
+	}
+
+	public double getMaxMillis() {
+		return m_maxNanos.get() / 1_000_000.0;
+	}
+
+	/**
+	 * 주어진 백분위에 해당하는 소요 시간의 근사 값을 반환한다.
+	 *
+	 * @param percentile	백분위 (0 ~ 100).
+	 * @return	소요 시간 (millisecond). 기록된 값이 없는 경우는 0.
+	 */
+	public double getPercentileMillis(double percentile) {
+		long[] counts = getBucketCounts();
+		long total = 0;
+		for ( long count: counts ) {
+			total += count;
+		}
+		if ( total == 0 ) {
+			return 0;
+		}
+
+		long rank = (long)Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+		long accum = 0;
+		for ( int i =0; i < counts.length; ++i ) {
+			accum += counts[i];
+			if ( accum >= Math.max(rank, 1) ) {
+				return Math.min((1L << i) / 1000.0, getMaxMillis());
+			}
+		}
+
+		return getMaxMillis();
+	}
+
+	/**
+	 * 각 bucket에 기록된 소요 시간의 수를 반환한다.
+	 */
+	public long[] getBucketCounts() {
+		long[] counts = new long[NBUCKETS];
+		for ( int i =0; i < NBUCKETS; ++i ) {
+			counts[i] = m_buckets.get(i);
+		}
+
+		return counts;
+	}
+
+	public void reset() {
+		for ( int i =0; i < NBUCKETS; ++i ) {
+			m_buckets.set(i, 0);
+		}
+		m_count.reset();
+		m_totalNanos.reset();
+		m_maxNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d, mean=%.2fms, p50=%.2fms, p99=%.2fms, max=%.2fms",
+							getCount(), getMeanMillis(), getPercentileMillis(50),
+							getPercentileMillis(99), getMaxMillis());
+	}
+}
@@ -0,0 +1,430 @@
+package opencvj.camera;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import opencvj.OpenCvJException;
+import utils.Initializable;
+import utils.UninitializedException;
+import utils.Utilities;
+import utils.config.ConfigNode;
+import utils.io.IOUtils;
+import utils.thread.ExecutorAware;
+
+
+/**
+ * 여러 카메라로부터 영상을 병렬로 capture하여 capture 시각이 정렬된 frame 묶음을 제공하는 객체.
+ * <p>
+ * 각 카메라는 주어진 {@link OpenCvJCameraFactory}들로부터 생성된 공유 카메라이며,
+ * capture는 공유 executor를 통해 병렬로 수행된다. Capture된 frame들 중 가장 최근 frame보다
+ * 허용 오차 이상 오래된 frame은 다시 capture된다.
+ * {@link #start(Consumer)}를 통해 주기적으로 frame 묶음을 전달받을 수도 있다.
+ * <p>
+ * 설정 항목:
+ * <ul>
+ * 	<li> tolerance: frame들 사이의 capture 시각 차이의 최대 허용치 (기본: 0, 검사 안함).
+ * 	<li> max_resync: 정렬을 위해 frame을 다시 capture하는 최대 횟수 (기본: 2).
+ * 	<li> tick_interval: {@link #start(Consumer)}시 frame 묶음 전달 주기 (기본: 0, 최대 속도).
+ * </ul>
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class MultiCameraGroup implements Initializable, ExecutorAware, AutoCloseable {
+	private static final Logger s_logger = LoggerFactory.getLogger("OPENCV.MULTI_CAMERA");
+	private static final int DEF_MAX_RESYNC = 2;
+
+	// properties (BEGIN)
+	private volatile List<OpenCvJCameraFactory> m_factories;
+	private volatile boolean m_owner = true;
+	private volatile ConfigNode m_config;
+	private volatile Executor m_executor;			// optional
+	// properties (END)
+
+	private List<OpenCvJCamera> m_cameras;
+	private long m_toleranceNanos;
+	private int m_maxResync;
+	private long m_tickInterval;
+
+	@GuardedBy("this") private boolean m_opened = false;
+	private volatile boolean m_ticking = false;
+	@GuardedBy("this") private CountDownLatch m_tickerDone;
+
+	public static MultiCameraGroup create(List<? extends OpenCvJCameraFactory> factories,
+											ConfigNode config) throws Exception {
+		MultiCameraGroup group = new MultiCameraGroup();
+		group.setCameraFactories(factories);
+		group.setConfig(config);
+		group.initialize();
+
+		return group;
+	}
+
+	public MultiCameraGroup() { }
+
+	public void setCameraFactories(List<? extends OpenCvJCameraFactory> factories) {
+		m_factories = new ArrayList<>(factories);
+	}
+
+	/**
+	 * 그룹이 destroy될 때 카메라 factory들도 함께 destroy할지 여부를 설정한다.
+	 */
+	public void setCameraFactoryOwnership(boolean flag) {
+		m_owner = flag;
+	}
+
+	public final void setConfig(ConfigNode config) {
+		m_config = config;
+	}
+
+	@Override
+	public void setExecutor(Executor executor) {
+		m_executor = executor;
+	}
+
+	@Override
+	public Executor getExecutor() {
+		return m_executor;
+	}
+
+	@Override
+	public void initialize() throws Exception {
+		if ( m_factories == null || m_factories.isEmpty() ) {
+			throw new UninitializedException("Property 'cameraFactories' was not set, class="
+											+ getClass().getName());
+		}
+		if ( m_config == null ) {
+			throw new UninitializedException("Property 'config' was not set, class="
+											+ getClass().getName());
+		}
+
+		m_toleranceNanos = TimeUnit.MILLISECONDS.toNanos(m_config.get("tolerance").asDuration(0));
+		m_maxResync = m_config.get("max_resync").asInt(DEF_MAX_RESYNC);
+		m_tickInterval = m_config.get("tick_interval").asDuration(0);
+
+		List<OpenCvJCamera> cameras = new ArrayList<>();
+		for ( OpenCvJCameraFactory fact: m_factories ) {
+			cameras.add(fact.createCamera());
+		}
+		m_cameras = Collections.unmodifiableList(cameras);
+
+		s_logger.info("initialized: {}", this);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		close();
+
+		if ( m_owner ) {
+			for ( OpenCvJCameraFactory fact: m_factories ) {
+				if ( fact instanceof Initializable ) {
+					((Initializable)fact).destroyQuietly();
+				}
+			}
+		}
+	}
+
+	public int size() {
+		return m_cameras.size();
+	}
+
+	public OpenCvJCamera getCamera(int index) {
+		return m_cameras.get(index);
+	}
+
+	public synchronized void open() {
+		if ( m_opened ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " already opened");
+		}
+
+		List<OpenCvJCamera> openeds = new ArrayList<>();
+		try {
+			for ( OpenCvJCamera camera: m_cameras ) {
+				camera.open();
+				openeds.add(camera);
+			}
+		}
+		catch ( RuntimeException e ) {
+			for ( OpenCvJCamera camera: openeds ) {
+				IOUtils.closeQuietly(camera);
+			}
+			throw e;
+		}
+
+		m_opened = true;
+	}
+
+	@Override
+	public synchronized void close() {
+		if ( !m_opened ) {
+			return;
+		}
+
+		stopInGuard();
+		for ( OpenCvJCamera camera: m_cameras ) {
+			IOUtils.closeQuietly(camera);
+		}
+		m_opened = false;
+	}
+
+	/**
+	 * 모든 카메라로부터 영상을 병렬로 capture하여 새로 생성된 frame 배열로 반환한다.
+	 * <p>
+	 * 반환된 frame들은 사용 후 close하여야 한다.
+	 */
+	public Frame[] capture() {
+		Frame[] frames = new Frame[m_cameras.size()];
+		for ( int i =0; i < frames.length; ++i ) {
+			frames[i] = new Frame();
+		}
+
+		try {
+			capture(frames);
+			return frames;
+		}
+		catch ( RuntimeException e ) {
+			for ( Frame frame: frames ) {
+				frame.close();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * 모든 카메라로부터 영상을 병렬로 capture하여 주어진 frame들에 저장한다.
+	 * <p>
+	 * <code>frames[i]</code>에는 i번째 카메라의 영상이 저장된다.
+	 */
+	public void capture(Frame[] frames) {
+		if ( frames.length != m_cameras.size() ) {
+			throw new IllegalArgumentException("frame count mismatch: frames=" + frames.length
+												+ ", cameras=" + m_cameras.size());
+		}
+
+		boolean[] targets = new boolean[frames.length];
+		Arrays.fill(targets, true);
+		captureInParallel(frames, targets);
+
+		if ( m_toleranceNanos <= 0 ) {
+			return;
+		}
+
+		// 가장 최근 frame보다 허용 오차 이상 오래된 frame들은 다시 capture한다.
+		for ( int resync = 0; resync < m_maxResync; ++resync ) {
+			if ( !markStales(frames, targets) ) {
+				return;
+			}
+			captureInParallel(frames, targets);
+		}
+		if ( markStales(frames, targets) && s_logger.isDebugEnabled() ) {
+			s_logger.debug("frames not aligned within tolerance: skew={}ms",
+							TimeUnit.NANOSECONDS.toMillis(getSkewNanos(frames)));
+		}
+	}
+
+	/**
+	 * 주어진 frame 묶음에서 가장 최근 frame과 가장 오래된 frame의 capture 시각 차이를 반환한다.
+	 */
+	public static long getSkewNanos(Frame[] frames) {
+		long oldest = Long.MAX_VALUE;
+		long newest = Long.MIN_VALUE;
+		for ( Frame frame: frames ) {
+			oldest = Math.min(oldest, frame.getCaptureNanos());
+			newest = Math.max(newest, frame.getCaptureNanos());
+		}
+
+		return newest - oldest;
+	}
+
+	/**
+	 * 주기적으로 frame 묶음을 capture하여 주어진 consumer에게 전달하는 쓰레드를 시작시킨다.
+	 * <p>
+	 * 전달되는 frame들은 다음 주기에 재사용되므로 consumer는 호출 중에만 사용하여야 한다.
+	 */
+	public synchronized void start(final Consumer<Frame[]> consumer) {
+		if ( !m_opened ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+		}
+		if ( m_ticking ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " already started");
+		}
+
+		final CountDownLatch done = new CountDownLatch(1);
+		m_tickerDone = done;
+		m_ticking = true;
+
+		Utilities.runAsync(getTaskExecutor(), new Runnable() {
+			@Override
+			public void run() {
+				try {
+					runTicker(consumer);
+				}
+				finally {
+					done.countDown();
+				}
+			}
+		});
+	}
+
+	public synchronized void stop() {
+		stopInGuard();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[cameras=%d, tolerance=%dms, tick=%dms]", getClass().getSimpleName(),
+							m_factories.size(), TimeUnit.NANOSECONDS.toMillis(m_toleranceNanos),
+							m_tickInterval);
+	}
+
+	@GuardedBy("this")
+	private void stopInGuard() {
+		if ( !m_ticking ) {
+			return;
+		}
+
+		m_ticking = false;
+		try {
+			m_tickerDone.await();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void runTicker(Consumer<Frame[]> consumer) {
+		Frame[] frames = new Frame[m_cameras.size()];
+		for ( int i =0; i < frames.length; ++i ) {
+			frames[i] = new Frame();
+		}
+
+		CaptureBackoff backoff = new CaptureBackoff(s_logger, this);
+		try {
+			while ( m_ticking ) {
+				long started = System.currentTimeMillis();
+				try {
+					try {
+						capture(frames);
+						backoff.onSuccess();
+					}
+					catch ( RuntimeException e ) {
+						// capture가 연속으로 실패하는 경우는 점차 늘어나는 간격으로 재시도한다.
+						backoff.onFailure(e);
+						continue;
+					}
+					
+					try {
+						consumer.accept(frames);
+					}
+					catch ( RuntimeException e ) {
+						s_logger.warn("consumer failed: cause=" + e);
+					}
+
+					long remains = (started + m_tickInterval) - System.currentTimeMillis();
+					if ( remains > 0 ) {
+						Thread.sleep(remains);
+					}
+				}
+				catch ( InterruptedException e ) {
+					return;
+				}
+			}
+		}
+		finally {
+			for ( Frame frame: frames ) {
+				frame.close();
+			}
+		}
+	}
+
+	/**
+	 * Capture 작업에 사용할 executor를 반환한다.
+	 * <p>
+	 * Executor가 설정되지 않은 경우는 blocking capture가
+	 * {@link java.util.concurrent.ForkJoinPool#commonPool()}을 점유하지 않도록 카메라 패키지 전용의
+	 * daemon 쓰레드들을 사용한다.
+	 */
+	private Executor getTaskExecutor() {
+		Executor executor = m_executor;
+		return (executor != null) ? executor : CameraThreads.getDefaultExecutor();
+	}
+
+	private boolean markStales(Frame[] frames, boolean[] targets) {
+		long newest = Long.MIN_VALUE;
+		for ( Frame frame: frames ) {
+			newest = Math.max(newest, frame.getCaptureNanos());
+		}
+
+		boolean found = false;
+		for ( int i =0; i < frames.length; ++i ) {
+			targets[i] = (newest - frames[i].getCaptureNanos()) > m_toleranceNanos;
+			found |= targets[i];
+		}
+
+		return found;
+	}
+
+	/**
+	 * 대상 카메라들로부터 영상을 병렬로 capture한다.
+	 * <p>
+	 * 마지막 대상 카메라는 호출 쓰레드에서 직접 capture하여 사용되는 쓰레드 수를 줄인다.
+	 */
+	private void captureInParallel(Frame[] frames, boolean[] targets) {
+		int last = -1;
+		for ( int i = targets.length-1; i >= 0; --i ) {
+			if ( targets[i] ) {
+				last = i;
+				break;
+			}
+		}
+		if ( last < 0 ) {
+			return;
+		}
+
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for ( int i =0; i < last; ++i ) {
+			if ( targets[i] ) {
+				final OpenCvJCamera camera = m_cameras.get(i);
+				final Frame frame = frames[i];
+				Runnable task = () -> camera.capture(frame);
+				futures.add(CompletableFuture.runAsync(task, getTaskExecutor()));
+			}
+		}
+
+		RuntimeException failure = null;
+		try {
+			m_cameras.get(last).capture(frames[last]);
+		}
+		catch ( RuntimeException e ) {
+			failure = e;
+		}
+
+		for ( CompletableFuture<Void> future: futures ) {
+			try {
+				future.join();
+			}
+			catch ( CompletionException e ) {
+				if ( failure == null ) {
+					failure = (e.getCause() instanceof RuntimeException)
+							? (RuntimeException)e.getCause()
+							: new OpenCvJException("fails to capture: cause=" + e.getCause());
+				}
+			}
+		}
+		if ( failure != null ) {
+			throw failure;
+		}
+	}
+}
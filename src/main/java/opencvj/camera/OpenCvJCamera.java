@@ -17,33 +17,54 @@ public interface OpenCvJCamera extends AutoCloseable {
 	
 	public void capture(Mat image);
 	
-	public default void dropFrames(int count) {
+	/**
+	 * 영상을 capture하여 주어진 frame에 capture 시각과 순차 번호를 함께 기록한다.
+	 * <p>
+	 * 기본 구현은 {@link Frame#nextSequenceNo()}를 통해 순차 번호를 부여한다.
+	 */
+	public default void capture(Frame frame) {
+		capture(frame.getMat());
+		frame.setMetadata(getSourceId(), Frame.nextSequenceNo(), System.nanoTime());
+	}
+	
+	/**
+	 * Capture되는 frame들에 기록될 카메라 식별자를 반환한다.
+	 */
+	public default String getSourceId() {
+		return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this));
+	}
+	
+	/**
+	 * 다음 frame 하나를 영상으로 복원하지 않고 버린다.
+	 * <p>
+	 * 기본 구현은 임시 영상으로 capture한 후 버리므로, 영상 복원 없이 frame을 건너뛸 수
+	 * 있는 카메라는 이 메소드를 재정의하여야 한다.
+	 */
+	public default void grab() {
 		Mat image = new Mat();
 		try {
-			for ( int i =0; i < count; ++i ) {
-				capture(image);
-			}
+			capture(image);
 		}
 		finally {
 			image.release();
 		}
 	}
 	
+	public default void dropFrames(int count) {
+		for ( int i =0; i < count; ++i ) {
+			grab();
+		}
+	}
+	
 	public default void dropFrames(long period, TimeUnit tu) {
-		Mat image = new Mat();
-		try {
-			long periodMillis = tu.toMillis(period);
-			long started = System.currentTimeMillis();
-			while ( true ) {
-				capture(image);
-				
-				if ( (System.currentTimeMillis()-started) > periodMillis ) {
-					break;
-				}
+		long periodMillis = tu.toMillis(period);
+		long started = System.currentTimeMillis();
+		while ( true ) {
+			grab();
+			
+			if ( (System.currentTimeMillis()-started) > periodMillis ) {
+				break;
 			}
 		}
-		finally {
-			image.release();
-		}
 	}
 }
@@ -1,18 +1,27 @@
 package opencvj.camera;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 import javax.annotation.concurrent.GuardedBy;
 
 import org.apache.log4j.Logger;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
 
+import opencvj.OpenCvJException;
+import opencvj.OpenCvJUtils;
 import utils.Initializable;
 import utils.UninitializedException;
 import utils.UnitUtils;
@@ -28,7 +37,40 @@ import utils.thread.ExecutorAware;
  */
 public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializable, ExecutorAware {
 	private static final Logger s_logger = Logger.getLogger("RESULT_SHARING");
+	// CaptureBackoff는 slf4j logger를 사용하므로 같은 이름의 slf4j logger를 사용한다.
+	private static final org.slf4j.Logger s_backoffLogger
+											= org.slf4j.LoggerFactory.getLogger("RESULT_SHARING");
 	private static final long MAX_CAPTURE_WAIT = UnitUtils.parseDuration("3s");
+	private static final int DEF_RING_SIZE = 4;
+	private static final int DEF_QUEUE_SIZE = 2;
+	
+	public static enum ShareMode {
+		/** 하나의 lock을 통해 consumer들이 동일 영상을 공유하는 방식 */
+		LOCK,
+		/** 고정 크기의 frame ring을 통해 lock 없이 최근 영상을 공유하는 방식 */
+		RING;
+		
+		public static ShareMode from(String str) {
+			return valueOf(str.toUpperCase());
+		}
+	}
+	
+	/**
+	 * 배경 capture 쓰레드 사용시 consumer가 영상을 가져가는 속도보다
+	 * 영상이 빨리 생성되는 경우의 처리 방식.
+	 */
+	public static enum DropPolicy {
+		/** 가장 최근 영상 하나만 유지한다. */
+		LATEST_ONLY,
+		/** 최대 'queue_size'개의 영상을 유지하고, 넘치는 경우 가장 오래된 영상을 버린다. */
+		BOUNDED_QUEUE,
+		/** 최대 'queue_size'개의 영상을 유지하고, 넘치는 경우 capture 쓰레드를 대기시킨다. */
+		BLOCK_PRODUCER;
+		
+		public static DropPolicy from(String str) {
+			return valueOf(str.toUpperCase());
+		}
+	}
 
 	// properties (BEGIN)
 	private volatile OpenCvJCamera m_source;
@@ -37,6 +79,12 @@ public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializ
 	private volatile boolean m_isOwner = true;
 	private volatile ConfigNode m_config;
 	private volatile Executor m_executor;			// optional
+	private volatile ShareMode m_shareMode = ShareMode.LOCK;
+	private volatile boolean m_captureThread = false;
+	private volatile DropPolicy m_dropPolicy = DropPolicy.LATEST_ONLY;
+	private volatile int m_queueSize = DEF_QUEUE_SIZE;
+	private volatile FlipCode m_flipCode = FlipCode.NONE;
+	private volatile List<Size> m_outputSizes = new ArrayList<Size>();
 	// properties (END)
 	
 	private final ReentrantLock m_factLock = new ReentrantLock();
@@ -44,11 +92,33 @@ public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializ
 	private final Condition m_cameraOpenCond = m_factLock.newCondition();
 	private final Condition m_producerCond = m_factLock.newCondition();
 	@GuardedBy("m_factLock") private boolean m_isProducing;
-	@GuardedBy("m_factLock") private final Mat m_sharedImage = new Mat();
 	@GuardedBy("m_factLock") private RuntimeException m_cause;
+	// 'adaptive_interval'이 설정된 경우에만 사용됨
+	@GuardedBy("m_factLock") private AdaptiveCaptureInterval m_adaptive;
+	@GuardedBy("m_factLock") private long m_cycleNo = 0;
 	@GuardedBy("m_factLock") private final List<SharedOpenCvJCamera> m_shareds
 														= new ArrayList<SharedOpenCvJCamera>();
 	
+	// capture된 영상들이 발행되는 ring
+	private volatile FrameRing m_ring;
+	// ShareMode.RING인 경우에만 사용됨
+	private final AtomicBoolean m_ringProducing = new AtomicBoolean(false);
+	// capture가 끝날 때마다 영상을 기다리는 consumer들을 깨우기 위해 사용됨
+	private final ReentrantLock m_ringLock = new ReentrantLock();
+	private final Condition m_ringDoneCond = m_ringLock.newCondition();
+	// ShareMode.RING에서 마지막으로 끝난 capture의 실패 원인 (성공한 경우는 null)
+	@GuardedBy("m_ringLock") private RuntimeException m_ringCause;
+	
+	// 배경 capture 쓰레드를 사용하는 경우에만 사용됨
+	private final List<FrameQueue> m_queues = new CopyOnWriteArrayList<FrameQueue>();
+	private volatile boolean m_producerRunning = false;
+	@GuardedBy("m_factLock") private CountDownLatch m_producerDone;
+	
+	@GuardedBy("this") private FramePublisher<FrameRef,Frame> m_publisher;
+	@GuardedBy("this") private FramePublisher<FrameRef,FrameRef> m_refPublisher;
+	
+	private volatile CameraSharingMetrics m_metrics;
+	
 	public static final OpenCvJCameraFactoryImpl create(OpenCvJCamera source, ConfigNode config)
 		throws Exception {
 		OpenCvJCameraFactoryImpl fact = new OpenCvJCameraFactoryImpl();
@@ -96,9 +166,57 @@ public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializ
 		
 		m_maxWaitMillis = m_config.get("max_capture_wait").asDuration(MAX_CAPTURE_WAIT);
 		m_interval = m_config.get("capture_interval").asDuration();
+		
+		// 'adaptive_interval'이 설정된 경우는 'capture_interval'을 최대 지연 한도로 하여
+		// consumer들의 도착 양상에 따라 대기 시간을 조절한다.
+		if ( m_config.get("adaptive_interval").asBoolean(false) ) {
+			m_adaptive = new AdaptiveCaptureInterval(TimeUnit.MILLISECONDS.toNanos(m_interval));
+		}
+		
+		ConfigNode modeConfig = m_config.get("share_mode");
+		if ( !modeConfig.isMissing() ) {
+			m_shareMode = ShareMode.from(modeConfig.asString());
+		}
+		m_ring = new FrameRing(m_config.get("ring_size").asInt(DEF_RING_SIZE));
+		
+		// 배경 capture 쓰레드 사용시 각 consumer는 최대 'queue_size'개의 영상을 보유할 수 있으므로
+		// ring은 consumer가 open될 때마다 필요한 slot 수에 맞추어 확장된다. (ensureRingCapacityInGuard 참조)
+		m_captureThread = m_config.get("capture_thread").asBoolean(false);
+		ConfigNode policyConfig = m_config.get("drop_policy");
+		if ( !policyConfig.isMissing() ) {
+			m_dropPolicy = DropPolicy.from(policyConfig.asString());
+		}
+		m_queueSize = m_config.get("queue_size").asInt(DEF_QUEUE_SIZE);
+		
+		// capture된 영상은 ring에 발행되기 전에 한번만 flip되고 'output_sizes'의 크기들로 변환된다.
+		m_flipCode = OpenCvJUtils.asFlipCode(m_config.get("flip_code"), FlipCode.NONE);
+		ConfigNode sizesConfig = m_config.get("output_sizes");
+		if ( !sizesConfig.isMissing() ) {
+			List<Size> sizes = new ArrayList<Size>();
+			for ( int i =0; i < sizesConfig.size(); ++i ) {
+				sizes.add(OpenCvJUtils.asSize(sizesConfig.get(i)));
+			}
+			m_outputSizes = sizes;
+		}
+		
+		m_metrics = new CameraSharingMetrics(m_source.getSourceId());
+		if ( m_config.get("jmx_metrics").asBoolean(true) ) {
+			m_metrics.registerMBean();
+		}
 	}
 	
 	public void destroy() {
+		m_metrics.unregisterMBean();
+		
+		synchronized ( this ) {
+			if ( m_publisher != null ) {
+				m_publisher.shutdown();
+			}
+			if ( m_refPublisher != null ) {
+				m_refPublisher.shutdown();
+			}
+		}
+		
 		// close all the spawned camera and wait until they are closed
 		//
 		Utilities.runAsync(m_executor, new Runnable() {
@@ -131,7 +249,7 @@ public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializ
 			}
 			catch ( InterruptedException e ) { }
 
-			m_sharedImage.release();
+			m_ring.close();
 			if ( m_isOwner ) {
 				IOUtils.closeQuietly(m_source);
 				
@@ -158,12 +276,335 @@ public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializ
 		return m_source.getSize();
 	}
 
+	public ShareMode getShareMode() {
+		return m_shareMode;
+	}
+	
+	/**
+	 * 카메라 공유 상태에 대한 통계를 반환한다.
+	 */
+	public CameraSharingMetrics getMetrics() {
+		return m_metrics;
+	}
+	
+	/**
+	 * Capture된 영상에 적용되는 flip 방식을 반환한다.
+	 */
+	public FlipCode getFlipCode() {
+		return m_flipCode;
+	}
+	
+	/**
+	 * Capture시 미리 계산되어 공유되는 영상 크기들을 반환한다.
+	 */
+	public List<Size> getOutputSizes() {
+		return Collections.unmodifiableList(m_outputSizes);
+	}
+
 	public void capture(Mat image) throws InterruptedException {
+		FrameRing.FrameSlot slot = captureSlot(null);
+		try {
+			slot.m_image.copyTo(image);
+		}
+		finally {
+			slot.unpin();
+		}
+	}
+	
+	/**
+	 * 영상을 capture하여 주어진 크기로 변환된 영상을 반환한다.
+	 * <p>
+	 * 주어진 크기가 'output_sizes'에 설정된 경우는 capture시 한번 변환된 영상을 복사하고,
+	 * 그렇지 않은 경우는 호출시마다 변환한다.
+	 * 
+	 * @param image	capture된 영상이 저장될 객체.
+	 * @param size	반환될 영상의 크기.
+	 */
+	public void capture(Mat image, Size size) throws InterruptedException {
+		try ( FrameRef ref = captureRef() ) {
+			copyResized(ref, image, size);
+		}
+	}
+	
+	void capture(SharedOpenCvJCamera shared, Mat image, Size size) throws InterruptedException {
+		try ( FrameRef ref = captureRef(shared) ) {
+			copyResized(ref, image, size);
+		}
+	}
+	
+	private void copyResized(FrameRef ref, Mat image, Size size) {
+		Mat src = ref.getMat();
+		if ( src.size().equals(size) ) {
+			src.copyTo(image);
+			return;
+		}
+		
+		Mat resized = ref.getMat(size);
+		if ( resized != null ) {
+			resized.copyTo(image);
+		}
+		else {
+			Imgproc.resize(src, image, size);
+		}
+	}
+	
+	/**
+	 * 가장 최근에 capture된 영상이 주어진 시간보다 최근의 것이면 capture 없이 바로 반환하고,
+	 * 그렇지 않으면 새로 capture한 영상을 반환한다.
+	 * 
+	 * @param image	capture된 영상이 저장될 객체.
+	 * @param maxAgeMillis	허용되는 영상의 최대 경과 시간 (millisecond).
+	 */
+	public void capture(Mat image, long maxAgeMillis) throws InterruptedException {
+		if ( !copyIfFresh(image, maxAgeMillis) ) {
+			capture(image);
+		}
+	}
+	
+	void capture(SharedOpenCvJCamera shared, Mat image, long maxAgeMillis)
+		throws InterruptedException {
+		FrameQueue queue = shared.getFrameQueue();
+		boolean fresh = (queue != null) ? copyIfFresh(queue, image, maxAgeMillis)
+										: copyIfFresh(image, maxAgeMillis);
+		if ( !fresh ) {
+			capture(shared, image);
+		}
+	}
+
+	/**
+	 * 배경 capture 쓰레드가 consumer의 queue에 넣어둔 영상 중 가장 최근 영상이 주어진 시간보다
+	 * 최근의 것이면 복사한다.
+	 * <p>
+	 * Queue에 남아있던 더 오래된 영상들은 버려지므로, 이후 capture시 이미 전달된 것보다
+	 * 오래된 영상이 전달되지 않는다.
+	 */
+	private boolean copyIfFresh(FrameQueue queue, Mat image, long maxAgeMillis) {
+		try ( FrameRef frame = queue.pollLatest() ) {
+			if ( frame == null ) {
+				return false;
+			}
+
+			long ageNanos = System.nanoTime() - frame.getCaptureNanos();
+			if ( ageNanos > TimeUnit.MILLISECONDS.toNanos(maxAgeMillis) ) {
+				return false;
+			}
+
+			frame.getMat().copyTo(image);
+			return true;
+		}
+	}
+	
+	private boolean copyIfFresh(Mat image, long maxAgeMillis) {
+		FrameRing.FrameSlot slot = m_ring.pinLatest();
+		if ( slot == null ) {
+			return false;
+		}
+		
+		try {
+			long ageNanos = System.nanoTime() - slot.getCaptureNanos();
+			if ( ageNanos > TimeUnit.MILLISECONDS.toNanos(maxAgeMillis) ) {
+				return false;
+			}
+			
+			slot.m_image.copyTo(image);
+			return true;
+		}
+		finally {
+			slot.unpin();
+		}
+	}
+	
+	/**
+	 * 영상을 capture하여 복사하지 않고 참조하는 {@link FrameRef}를 반환한다.
+	 * <p>
+	 * 반환된 객체는 사용 후 반드시 close되어야 한다.
+	 */
+	public FrameRef captureRef() throws InterruptedException {
+		return new FrameRef(captureSlot(null));
+	}
+	
+	void capture(SharedOpenCvJCamera shared, Mat image) throws InterruptedException {
+		if ( m_captureThread ) {
+			try ( FrameRef frame = captureRef(shared) ) {
+				frame.getMat().copyTo(image);
+			}
+		}
+		else {
+			FrameRing.FrameSlot slot = captureSlot(shared);
+			try {
+				slot.m_image.copyTo(image);
+			}
+			finally {
+				slot.unpin();
+			}
+		}
+	}
+	
+	/**
+	 * 공유 영상 하나를 복사하지 않고 버린다.
+	 * <p>
+	 * 배경 capture 쓰레드를 사용하는 경우는 consumer의 queue에 전달된 frame 하나를 소비한다.
+	 * {@link ShareMode#RING}인 경우는 'capture_interval' 이내에 발행된 영상이 있더라도
+	 * 원시 카메라에서 새 영상을 capture하거나, 다른 consumer가 capture 중인 영상이 발행될 때까지
+	 * 대기한다. {@link ShareMode#LOCK}인 경우는 항상 호출 이후에 시작된 capture를 기다린다.
+	 */
+	void grab(SharedOpenCvJCamera shared) throws InterruptedException {
+		if ( shared.getFrameQueue() != null ) {
+			captureRef(shared).close();
+		}
+		else if ( m_shareMode == ShareMode.RING && !m_captureThread ) {
+			long seqNo = m_ring.getLatestSequenceNo();
+			if ( m_ringProducing.compareAndSet(false, true) ) {
+				produceAsRingOwner();
+			}
+			else {
+				waitForNewerFrame(seqNo);
+			}
+		}
+		else {
+			captureSlot(shared).unpin();
+		}
+	}
+
+	void capture(SharedOpenCvJCamera shared, Frame frame) throws InterruptedException {
+		try ( FrameRef ref = captureRef(shared) ) {
+			ref.getMat().copyTo(frame.getMat());
+			frame.setMetadata(getSourceId(), ref.getSequenceNo(), ref.getCaptureNanos());
+		}
+	}
+	
+	/**
+	 * 공유 영상을 요청한 subscriber들에게 전달하는 {@link FrameFlow.Publisher}를 반환한다.
+	 * <p>
+	 * 전달되는 {@link Frame}은 subscriber별로 복사된 영상이며, 사용 후 close하여야 한다.
+	 * 영상을 복사할 필요가 없는 경우는 {@link #getFrameRefPublisher()}를 사용한다.
+	 * Subscriber가 요청하지 않은 동안 capture된 영상은 해당 subscriber에게 전달되지 않는다.
+	 */
+	public synchronized FrameFlow.Publisher<Frame> getFramePublisher() {
+		if ( m_publisher == null ) {
+			m_publisher = new FramePublisher<>(this::openPublisherSource, ref -> {
+				try {
+					Frame frame = new Frame();
+					ref.getMat().copyTo(frame.getMat());
+					frame.setMetadata(getSourceId(), ref.getSequenceNo(), ref.getCaptureNanos());
+					
+					return frame;
+				}
+				finally {
+					ref.close();
+				}
+			}, m_executor);
+		}
+		
+		return m_publisher;
+	}
+	
+	/**
+	 * 공유 영상을 복사하지 않고 참조하는 {@link FrameRef}를 요청한 subscriber들에게 전달하는
+	 * {@link FrameFlow.Publisher}를 반환한다.
+	 * <p>
+	 * 전달된 {@link FrameRef}는 사용 후 바로 close하여야 한다. close되지 않은 참조들이 frame ring의
+	 * slot들을 점유하면 새 영상이 발행되지 못한다.
+	 */
+	public synchronized FrameFlow.Publisher<FrameRef> getFrameRefPublisher() {
+		if ( m_refPublisher == null ) {
+			m_refPublisher = new FramePublisher<>(this::openPublisherSource, Function.identity(),
+												m_executor);
+		}
+		
+		return m_refPublisher;
+	}
+	
+	private FramePublisher.Source<FrameRef> openPublisherSource() {
+		final SharedOpenCvJCamera camera = new SharedOpenCvJCamera(this);
+		camera.open();
+		
+		return new FramePublisher.Source<FrameRef>() {
+			@Override
+			public FrameRef capture() {
+				return camera.captureRef();
+			}
+
+			@Override
+			public FrameRef duplicate(FrameRef shared) {
+				return shared.duplicate();
+			}
+
+			@Override
+			public void close() {
+				camera.close();
+			}
+		};
+	}
+	
+	/**
+	 * 공유되는 원시 카메라의 식별자를 반환한다.
+	 */
+	public String getSourceId() {
+		return m_source.getSourceId();
+	}
+	
+	FrameRef captureRef(SharedOpenCvJCamera shared) throws InterruptedException {
+		FrameQueue queue = shared.getFrameQueue();
+		if ( queue == null ) {
+			return new FrameRef(captureSlot(shared));
+		}
+		
+		// 배경 capture 쓰레드가 consumer별 queue에 넣어둔 영상을 사용한다.
+		long started = System.nanoTime();
+		FrameRef frame = queue.poll(Math.max(m_interval, m_maxWaitMillis));
+		m_metrics.onWaited(System.nanoTime() - started);
+		if ( frame == null ) {
+			m_metrics.onTimeout();
+			s_logger.fatal("FAILS TO GET AN IMAGE FROM CAMERA_PROVIDER");
+			throw new RuntimeException("fails to get an image from " + getClass().getName());
+		}
+		
+		return frame;
+	}
+	
+	/**
+	 * 현재 적용 중인 capture 대기 시간(coalescing window)을 반환한다.
+	 * <p>
+	 * 'adaptive_interval'이 설정되지 않은 경우는 'capture_interval' 값을 반환한다.
+	 */
+	public long getCoalescingWindowMillis() {
+		m_factLock.lock();
+		try {
+			return (m_adaptive != null)
+					? TimeUnit.NANOSECONDS.toMillis(m_adaptive.getWindowNanos()) : m_interval;
+		}
+		finally {
+			m_factLock.unlock();
+		}
+	}
+	
+	/**
+	 * @param shared	영상을 요청한 공유 카메라. 알 수 없는 경우는 {@code null}.
+	 */
+	private FrameRing.FrameSlot captureSlot(SharedOpenCvJCamera shared) throws InterruptedException {
+		if ( m_captureThread ) {
+			// 배경 capture 쓰레드가 발행한 가장 최근 영상을 사용한다.
+			FrameRing.FrameSlot slot = m_ring.pinLatest();
+			return (slot != null) ? slot : waitForFirstFrame();
+		}
+		
+		return (m_shareMode == ShareMode.RING) ? captureFromRing() : captureInLock(shared);
+	}
+	
+	private FrameRing.FrameSlot captureInLock(SharedOpenCvJCamera shared) throws InterruptedException {
 		m_factLock.lock();
 		try {
 			// 이미 다른 카메라에 의해 이미지 capturing 중이면
 			// 해당 영상이 capture될 때까지 대기 capture가 끝나면 그 영상을 반환한다.
 			if ( m_isProducing ) {
+				if ( m_adaptive != null ) {
+					m_adaptive.onJoined(System.nanoTime());
+					if ( shared != null ) {
+						shared.setLastCycleNo(m_cycleNo);
+					}
+				}
+				
 				try {
 					waitUntilProducedInGuard();
 				}
@@ -179,13 +620,20 @@ public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializ
 					s_logger.debug("use pre-produced result");
 				}
 				
-				m_sharedImage.copyTo(image);
-				
-				return;
+				return pinProduced();
 			}
 			else {
 				// 영상이 capturing 중임을 알려 다른 쓰레드가 추가로 capture하지 못하도록 한다.
 				m_isProducing = true;
+				
+				if ( m_adaptive != null ) {
+					boolean missedLast = shared != null && shared.getLastCycleNo() != m_cycleNo;
+					m_adaptive.onCycleStarted(System.nanoTime(), missedLast, m_shareds.size());
+					++m_cycleNo;
+					if ( shared != null ) {
+						shared.setLastCycleNo(m_cycleNo);
+					}
+				}
 			}
 		}
 		finally {
@@ -195,8 +643,9 @@ public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializ
 		RuntimeException cause = null;
 		
 		long started = System.currentTimeMillis();
+		long startedNanos = System.nanoTime();
 		try {
-			m_source.capture(m_sharedImage);
+			produceIntoRing();
 		}
 		catch ( RuntimeException e ) {
 			cause = e;
@@ -205,14 +654,26 @@ public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializ
 		m_factLock.lock();
 		try {
 			if ( cause == null ) {
-				// 실제 capture 소요시간이 지정된 interval 보다 짧은 경우는 남은 시간 동안
-				// 대기하여 보다 많은 쓰레드가 영상을 공유할 수 있도록 한다.
-				//
-				m_producerCond.awaitUntil(new Date(started + m_interval));
+				if ( m_adaptive != null ) {
+					// 관측된 consumer 도착 양상에 따라 조절된 시간 동안 다른 쓰레드들의 합류를 기다린다.
+					long now = System.nanoTime();
+					long remains = m_adaptive.onCaptured(now - startedNanos, now, m_shareds.size());
+					while ( remains > 0 ) {
+						remains = m_producerCond.awaitNanos(remains);
+					}
+				}
+				else {
+					// 실제 capture 소요시간이 지정된 interval 보다 짧은 경우는 남은 시간 동안
+					// 대기하여 보다 많은 쓰레드가 영상을 공유할 수 있도록 한다.
+					//
+					m_producerCond.awaitUntil(new Date(started + m_interval));
+				}
 				
+				m_cause = null;
 				m_isProducing = false;
 				m_imageReadyCond.signalAll();
-				m_sharedImage.copyTo(image);
+				
+				return pinProduced();
 			}
 			else {
 				m_isProducing = false;
@@ -227,13 +688,36 @@ public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializ
 		}
 	}
 	
+	private FrameRing.FrameSlot pinProduced() {
+		FrameRing.FrameSlot slot = m_ring.pinLatest();
+		if ( slot == null ) {
+			throw new OpenCvJException("no captured image: " + getClass().getName());
+		}
+		
+		return slot;
+	}
+	
 	void onSharedCameraOpened(SharedOpenCvJCamera shared) {
 		m_factLock.lock();
 		try {
 			m_shareds.add(shared);
+			CameraSharingMetrics.ConsumerMetrics consumer = m_metrics.addConsumer();
+			shared.setMetrics(consumer);
+			if ( m_captureThread ) {
+				FrameQueue queue = new FrameQueue(m_dropPolicy, m_queueSize, consumer);
+				shared.setFrameQueue(queue);
+				m_queues.add(queue);
+			}
+			ensureRingCapacityInGuard();
 			if ( m_shareds.size() == 1 ) {
+				// 이전에 open되었을 때 capture된 영상이 전달되지 않도록 한다.
+				m_ring.reset();
 				m_source.open();
 				
+				if ( m_captureThread ) {
+					startProducerInGuard();
+				}
+				
 				m_cameraOpenCond.signalAll();
 			}
 		}
@@ -242,11 +726,41 @@ public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializ
 		}
 	}
 	
+	/**
+	 * 현재 open된 consumer들이 영상을 보유하더라도 capture할 slot이 남도록 ring을 확장한다.
+	 * <p>
+	 * 배경 capture 쓰레드 사용시 consumer는 자신의 queue에 최대 'queue_size'개의 영상을,
+	 * 그렇지 않은 경우는 사용 중인 영상 하나를 보유할 수 있다. 이 외에 가장 최근에 발행된 slot과
+	 * 기록 중인 slot이 추가로 필요하다.
+	 */
+	@GuardedBy("m_factLock")
+	private void ensureRingCapacityInGuard() {
+		int perConsumer = m_captureThread ? m_queueSize : 1;
+		int required = m_shareds.size() * perConsumer + 2;
+		if ( m_ring.ensureCapacity(required) && s_logger.isInfoEnabled() ) {
+			s_logger.info("extend frame ring: ring_size=" + required + ", consumers=" + m_shareds.size());
+		}
+	}
+
 	void onSharedCameraClosed(SharedOpenCvJCamera shared) {
 		m_factLock.lock();
 		try {
 			m_shareds.remove(shared);
+			CameraSharingMetrics.ConsumerMetrics consumer = shared.getMetrics();
+			if ( consumer != null ) {
+				m_metrics.removeConsumer(consumer);
+				shared.setMetrics(null);
+			}
+			FrameQueue queue = shared.getFrameQueue();
+			if ( queue != null ) {
+				m_queues.remove(queue);
+				shared.setFrameQueue(null);
+				queue.close();
+			}
 			if ( m_shareds.size() == 0 ) {
+				if ( m_captureThread ) {
+					stopProducerInGuard();
+				}
 				IOUtils.closeQuietly(m_source);
 				
 				m_cameraOpenCond.signalAll();
@@ -257,12 +771,305 @@ public class OpenCvJCameraFactoryImpl implements OpenCvJCameraFactory, Initializ
 		}
 	}
 
+	private FrameRing.FrameSlot captureFromRing() throws InterruptedException {
+		// 'capture_interval' 이내에 발행된 영상이 있으면 새로 capture하지 않고 그 영상을 공유한다.
+		FrameRing.FrameSlot slot = pinIfYounger(m_interval);
+		if ( slot != null ) {
+			return slot;
+		}
+
+		// 다른 consumer가 capture 중이 아니면 직접 영상을 capture하여 ring에 발행하고,
+		// capture 중이면 그 capture가 끝날 때까지 대기한다.
+		long seqNo = m_ring.getLatestSequenceNo();
+		if ( m_ringProducing.compareAndSet(false, true) ) {
+			produceAsRingOwner();
+		}
+		else {
+			waitForNewerFrame(seqNo);
+		}
+
+		slot = m_ring.pinLatest();
+		if ( slot == null ) {
+			slot = waitForFirstFrame();
+		}
+
+		return slot;
+	}
+
+	/**
+	 * 가장 최근에 발행된 영상이 주어진 시간 이내에 capture된 것이면 pin하여 반환한다.
+	 *
+	 * @return	pin된 slot. 해당 영상이 없는 경우는 {@code null}.
+	 */
+	private FrameRing.FrameSlot pinIfYounger(long maxAgeMillis) {
+		if ( maxAgeMillis <= 0 ) {
+			return null;
+		}
+
+		FrameRing.FrameSlot slot = m_ring.pinLatest();
+		if ( slot != null
+			&& System.nanoTime() - slot.getCaptureNanos() > TimeUnit.MILLISECONDS.toNanos(maxAgeMillis) ) {
+			slot.unpin();
+			slot = null;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * {@link #m_ringProducing}을 획득한 쓰레드가 영상을 capture하여 ring에 발행한다.
+	 * <p>
+	 * Capture가 끝나면 성공 여부와 무관하게 {@link #m_ringProducing}을 반납하고, 대기 중인
+	 * consumer들을 깨운다. Capture가 실패한 경우 그 원인은 대기 중인 consumer들에게도 전달된다.
+	 */
+	private boolean produceAsRingOwner() {
+		RuntimeException cause = null;
+		try {
+			return produceIntoRing();
+		}
+		catch ( RuntimeException e ) {
+			cause = e;
+			throw e;
+		}
+		finally {
+			m_ringLock.lock();
+			try {
+				m_ringCause = cause;
+				m_ringProducing.set(false);
+				m_ringDoneCond.signalAll();
+			}
+			finally {
+				m_ringLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * 다른 consumer가 capture 중인 영상이 발행될 때까지 대기한다.
+	 * <p>
+	 * 대기 중인 쓰레드는 capture가 끝나는 즉시 깨어난다. 해당 consumer가 capture에 실패한 경우는
+	 * 그 원인을 다시 던지고, slot이 없어 영상을 발행하지 못한 경우는 바로 반환된다.
+	 *
+	 * @param seqNo	호출자가 마지막으로 관측한 영상의 sequence 번호.
+	 */
+	private void waitForNewerFrame(long seqNo) throws InterruptedException {
+		long remains = TimeUnit.MILLISECONDS.toNanos(Math.max(m_interval, m_maxWaitMillis));
+		m_ringLock.lock();
+		try {
+			while ( m_ring.getLatestSequenceNo() <= seqNo ) {
+				if ( !m_ringProducing.get() ) {
+					if ( m_ringCause != null ) {
+						throw m_ringCause;
+					}
+					return;
+				}
+				if ( remains <= 0 ) {
+					m_metrics.onTimeout();
+					s_logger.fatal("FAILS TO GET AN IMAGE FROM CAMERA_PROVIDER");
+					throw new RuntimeException("fails to get an image from " + getClass().getName());
+				}
+				remains = m_ringDoneCond.awaitNanos(remains);
+			}
+		}
+		finally {
+			m_ringLock.unlock();
+		}
+	}
+
+	/**
+	 * 배경 capture 쓰레드가 capture를 마쳤음을 첫 영상을 기다리는 consumer들에게 알린다.
+	 */
+	private void signalRingWaiters() {
+		m_ringLock.lock();
+		try {
+			m_ringDoneCond.signalAll();
+		}
+		finally {
+			m_ringLock.unlock();
+		}
+	}
+	
+	/**
+	 * 영상을 capture하여 ring에 발행한다.
+	 *
+	 * @return	영상이 발행된 경우는 {@code true}. 기록할 slot이 없어 capture를 생략한 경우는
+	 * 			{@code false}.
+	 */
+	private boolean produceIntoRing() {
+		FrameRing.FrameSlot slot = m_ring.acquireWritable();
+		if ( slot == null ) {
+			// 모든 slot이 사용 중인 경우(FrameRef들이 close되지 않은 경우 등)는
+			// capture를 생략하고 가장 최근 영상을 사용하게 한다.
+			s_logger.warn("no writable frame slot: ring_size=" + m_ring.size());
+			m_metrics.onRingOverflow();
+			return false;
+		}
+		
+		long started = System.nanoTime();
+		try {
+			m_source.capture(slot.m_image);
+			transformInSlot(slot);
+		}
+		catch ( RuntimeException e ) {
+			m_ring.abort(slot);
+			m_metrics.onCaptureFailed();
+			throw e;
+		}
+		long captured = System.nanoTime();
+		m_ring.publish(slot, captured);
+		m_metrics.onProduced(started, captured);
+
+		return true;
+	}
+	
+	/**
+	 * Capture된 영상을 설정에 따라 flip하고, 'output_sizes'의 크기별 영상을 미리 계산한다.
+	 * <p>
+	 * 발행 이후에는 consumer들이 변환된 영상을 공유하므로 consumer별로 flip 및 resize하지 않아도 된다.
+	 */
+	private void transformInSlot(FrameRing.FrameSlot slot) {
+		if ( m_flipCode != FlipCode.NONE ) {
+			m_flipCode.flip(slot.m_image, slot.m_image);
+		}
+		
+		for ( Size size: m_outputSizes ) {
+			Mat resized = slot.m_resizeds.get(size);
+			if ( resized == null ) {
+				resized = new Mat();
+				slot.m_resizeds.put(size, resized);
+			}
+			Imgproc.resize(slot.m_image, resized, size, 0, 0, Imgproc.INTER_AREA);
+		}
+	}
+	
+	private FrameRing.FrameSlot waitForFirstFrame() throws InterruptedException {
+		long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(m_interval, m_maxWaitMillis));
+		while ( true ) {
+			FrameRing.FrameSlot slot = m_ring.pinLatest();
+			if ( slot != null ) {
+				return slot;
+			}
+			
+			// 배경 capture 쓰레드를 사용하는 경우는 직접 capture하지 않는다.
+			if ( !m_captureThread && m_ringProducing.compareAndSet(false, true) ) {
+				produceAsRingOwner();
+				continue;
+			}
+			
+			// 진행 중인 capture가 끝날 때까지 대기한다.
+			m_ringLock.lock();
+			try {
+				if ( m_ring.getLatestSequenceNo() < 0 && (m_captureThread || m_ringProducing.get()) ) {
+					long remains = due - System.nanoTime();
+					if ( remains <= 0 ) {
+						m_metrics.onTimeout();
+						s_logger.fatal("FAILS TO GET AN IMAGE FROM CAMERA_PROVIDER");
+						throw new RuntimeException("fails to get an image from " + getClass().getName());
+					}
+					m_ringDoneCond.awaitNanos(remains);
+				}
+			}
+			finally {
+				m_ringLock.unlock();
+			}
+		}
+	}
+
+	@GuardedBy("m_factLock")
+	private void startProducerInGuard() {
+		final CountDownLatch done = new CountDownLatch(1);
+		m_producerDone = done;
+		m_producerRunning = true;
+		
+		Utilities.runAsync(m_executor, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					runProducer();
+				}
+				finally {
+					done.countDown();
+				}
+			}
+		});
+	}
+	
+	@GuardedBy("m_factLock")
+	private void stopProducerInGuard() {
+		m_producerRunning = false;
+		
+		// 카메라가 close되기 전에 capture 쓰레드가 종료되도록 한다.
+		try {
+			m_producerDone.await();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void runProducer() {
+		CaptureBackoff backoff = new CaptureBackoff(s_backoffLogger, m_source);
+		while ( m_producerRunning ) {
+			long started = System.currentTimeMillis();
+			RuntimeException failure = null;
+			try {
+				// 새 영상을 발행하지 못한 경우는 이미 전달된 영상이 다시 전달되지 않도록 한다.
+				if ( produceIntoRing() ) {
+					distributeLatest();
+				}
+				backoff.onSuccess();
+			}
+			catch ( InterruptedException e ) {
+				return;
+			}
+			catch ( RuntimeException e ) {
+				failure = e;
+			}
+			finally {
+				signalRingWaiters();
+			}
+			
+			try {
+				if ( failure != null ) {
+					// capture가 연속으로 실패하는 경우는 점차 늘어나는 간격으로 재시도한다.
+					backoff.onFailure(failure);
+					continue;
+				}
+				
+				long remains = (started + m_interval) - System.currentTimeMillis();
+				if ( remains > 0 ) {
+					Thread.sleep(remains);
+				}
+			}
+			catch ( InterruptedException e ) {
+				return;
+			}
+		}
+	}
+	
+	private void distributeLatest() throws InterruptedException {
+		FrameRing.FrameSlot slot = m_ring.pinLatest();
+		if ( slot == null ) {
+			return;
+		}
+		
+		try ( FrameRef frame = new FrameRef(slot) ) {
+			for ( FrameQueue queue: m_queues ) {
+				queue.offer(frame.duplicate());
+			}
+		}
+	}
+
 	@GuardedBy("m_factLock")
 	private void waitUntilProducedInGuard() throws InterruptedException {
 		long started = System.currentTimeMillis();
 		
 		Date due = new Date(started + Math.max(m_interval, m_maxWaitMillis));
-		if ( !m_imageReadyCond.awaitUntil(due) ) {
+		long waitStarted = System.nanoTime();
+		boolean produced = m_imageReadyCond.awaitUntil(due);
+		m_metrics.onWaited(System.nanoTime() - waitStarted);
+		if ( !produced ) {
+			m_metrics.onTimeout();
 			s_logger.fatal("FAILS TO GET AN IMAGE FROM CAMERA_PROVIDER");
 			System.err.println("FAILS TO GET AN IMAGE FROM CAMERA_PROVIDER");
 			throw new RuntimeException("fails to get an image from " + getClass().getName());
@@ -30,6 +30,22 @@ public class OpenCvJCameras {
 				camera.capture(image);
 				flipCode.flip(image, image);
 			}
+	
+			@Override
+			public void capture(Frame frame) {
+				camera.capture(frame);
+				flipCode.flip(frame.getMat(), frame.getMat());
+			}
+	
+			@Override
+			public void grab() {
+				camera.grab();
+			}
+	
+			@Override
+			public String getSourceId() {
+				return camera.getSourceId();
+			}
 		};
 	}
 	
@@ -56,6 +72,22 @@ public class OpenCvJCameras {
 				camera.capture(image);
 				flipCode.flip(image, image);
 			}
+
+			@Override
+			public void capture(Frame frame) {
+				camera.capture(frame);
+				flipCode.flip(frame.getMat(), frame.getMat());
+			}
+
+			@Override
+			public void grab() {
+				camera.grab();
+			}
+
+			@Override
+			public String getSourceId() {
+				return camera.getSourceId();
+			}
 		};
 	}
 }
@@ -0,0 +1,487 @@
+package opencvj.camera;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import opencvj.Mats;
+import opencvj.OpenCvJException;
+import utils.Initializable;
+import utils.UninitializedException;
+import utils.config.ConfigNode;
+import utils.io.IOUtils;
+
+
+/**
+ * {@link CDCRecorder}를 통해 기록된 파일을 재생하는 {@link ColorDepthComposite}.
+ * <p>
+ * 파일은 memory-mapped 방식으로 접근되며, 각 frame은 재사용되는 pixel 배열을 거쳐
+ * 바로 <code>Mat</code>으로 적재되므로 frame마다 새로운 heap 객체가 할당되지 않는다.
+ * 칼라 영상과 깊이 영상 사이의 좌표 변환은 두 영상의 크기 비율만을 고려하므로,
+ * image registration이 적용된 상태에서 녹화된 파일을 가정한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class RecordedCDC implements ColorDepthComposite, Initializable {
+	private static final Logger s_logger = LoggerFactory.getLogger("OPENCV.RECORDED_CDC");
+	private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+	// properties (BEGIN)
+	private volatile ConfigNode m_config;
+	// properties (END)
+
+	private File m_file;
+	private boolean m_loop;
+	private double m_fps;
+	private FileChannel m_channel;
+	private CDCRecordFormat m_format;
+	private long[] m_offsets;
+	private int[] m_frameSegments;
+	private final List<MappedByteBuffer> m_segments = new ArrayList<MappedByteBuffer>();
+	private final List<Long> m_segmentBases = new ArrayList<Long>();
+	private ScalingMapper m_depthToColor;
+	private ScalingMapper m_colorToDepth;
+
+	private volatile boolean m_opened = false;
+	private FrameReader m_reader;	// synchronized(this)로 보호됨
+
+	public static RecordedCDC create(ConfigNode config) throws Exception {
+		RecordedCDC cdc = new RecordedCDC();
+		cdc.setConfig(config);
+		cdc.initialize();
+
+		return cdc;
+	}
+
+	public RecordedCDC() { }
+
+	public final void setConfig(ConfigNode config) {
+		m_config = config;
+	}
+
+	@Override
+	public synchronized void initialize() throws Exception {
+		if ( m_config == null ) {
+			throw new UninitializedException("Property 'config' was not specified: class="
+											+ getClass().getName());
+		}
+
+		m_file = m_config.get("filepath").asFile();
+		m_loop = m_config.get("loop").asBoolean(false);
+
+		m_channel = FileChannel.open(m_file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = m_channel.map(MapMode.READ_ONLY, 0, CDCRecordFormat.HEADER_SIZE);
+			m_format = CDCRecordFormat.read(header);
+			if ( m_format.m_frameCount > 0 ) {
+				ByteBuffer index = m_channel.map(MapMode.READ_ONLY, m_format.m_indexOffset,
+												m_format.m_frameCount * 8L);
+				index.order(CDCRecordFormat.BYTE_ORDER);
+				m_offsets = new long[m_format.m_frameCount];
+				index.asLongBuffer().get(m_offsets);
+			}
+			else {
+				// 녹화가 정상적으로 종료되지 않아 index가 기록되지 않은 경우는
+				// frame record들을 처음부터 읽어 index를 다시 구성한다.
+				rebuildIndex();
+			}
+			if ( m_format.m_frameCount == 0 ) {
+				throw new OpenCvJException("empty CDC record file: path=" + m_file);
+			}
+
+			mapSegments();
+		}
+		catch ( Exception e ) {
+			IOUtils.closeQuietly(m_channel);
+			throw e;
+		}
+
+		m_fps = estimateFps();
+		m_depthToColor = new ScalingMapper(m_format.m_depthSize, m_format.m_colorSize);
+		m_colorToDepth = new ScalingMapper(m_format.m_colorSize, m_format.m_depthSize);
+		m_reader = new FrameReader(ReplayPacer.from(m_config, m_fps));
+
+		s_logger.info("initialized: {}", toString());
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		close();
+
+		m_segments.clear();
+		IOUtils.closeQuietly(m_channel);
+	}
+
+	@Override
+	public synchronized void open() {
+		Preconditions.checkState(m_format != null, "not initialized: " + getClass());
+
+		m_reader.reset();
+		m_opened = true;
+	}
+
+	@Override
+	public synchronized void close() {
+		m_opened = false;
+	}
+
+	public int getFrameCount() {
+		return m_format.m_frameCount;
+	}
+
+	@Override
+	public Size getColorImageSize() {
+		return m_format.m_colorSize;
+	}
+
+	@Override
+	public Size getDepthImageSize() {
+		return m_format.m_depthSize;
+	}
+
+	@Override
+	public OpenCvJCamera getColorCamera() {
+		return new StreamCamera(true);
+	}
+
+	@Override
+	public OpenCvJCamera getDepthCamera() {
+		return new StreamCamera(false);
+	}
+
+	@Override
+	public synchronized void captureSynched(Mat colorImage, Mat depthImage) {
+		if ( !m_opened ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+		}
+
+		m_reader.readNext(colorImage, depthImage);
+	}
+
+	@Override
+	public synchronized void captureSynched(Frame colorFrame, Frame depthFrame) {
+		captureSynched(colorFrame.getMat(), depthFrame.getMat());
+
+		long seqNo = m_reader.getSequenceNo();
+		long captureNanos = System.nanoTime();
+		colorFrame.setMetadata(getSourceId() + "/color", seqNo, captureNanos);
+		depthFrame.setMetadata(getSourceId() + "/depth", seqNo, captureNanos);
+	}
+
+	@Override
+	public String getSourceId() {
+		return "recorded:" + m_file.getName();
+	}
+
+	@Override
+	public DepthToColorMapper getDepthToColorMapper() {
+		return m_depthToColor;
+	}
+
+	@Override
+	public ColorToDepthMapper getColorToDepthMapper() {
+		return m_colorToDepth;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[path=%s, frames=%d, fps=%.1f, loop=%s]", getClass().getSimpleName(),
+							m_file, m_format.m_frameCount, m_fps, m_loop);
+	}
+
+	/**
+	 * Header 다음부터 frame record들을 순서대로 읽어 frame index를 구성한다.
+	 * <p>
+	 * 마지막 record가 완전히 기록되지 않은 경우는 그 이전 record까지만 사용한다.
+	 * 구성된 frame 개수와 마지막 record의 끝 위치는 각각 header의 frame 개수와 index 위치에 설정된다.
+	 */
+	private void rebuildIndex() throws IOException {
+		Size colorSize = m_format.m_colorSize;
+		Size depthSize = m_format.m_depthSize;
+		int colorLength = (int)(colorSize.area() * 3);
+		int depthPixels = (int)depthSize.area();
+		int maxDepthLength = m_format.isDepthCompressed() ? DepthCodec.maxEncodedLength(depthPixels)
+														: depthPixels * 2;
+
+		long fileSize = m_channel.size();
+		ByteBuffer frameHeader = ByteBuffer.allocate(CDCRecordFormat.FRAME_HEADER_SIZE);
+		frameHeader.order(CDCRecordFormat.BYTE_ORDER);
+
+		long[] offsets = new long[1024];
+		int nframes = 0;
+		long pos = CDCRecordFormat.HEADER_SIZE;
+		while ( pos + CDCRecordFormat.FRAME_HEADER_SIZE <= fileSize ) {
+			frameHeader.clear();
+			while ( frameHeader.hasRemaining() ) {
+				if ( m_channel.read(frameHeader, pos + frameHeader.position()) < 0 ) {
+					break;
+				}
+			}
+			if ( frameHeader.hasRemaining() ) {
+				break;
+			}
+			frameHeader.flip();
+			frameHeader.getLong();		// captureNanos
+			int clen = frameHeader.getInt();
+			int dlen = frameHeader.getInt();
+			if ( clen != colorLength || dlen <= 0 || dlen > maxDepthLength ) {
+				break;
+			}
+
+			long end = pos + CDCRecordFormat.FRAME_HEADER_SIZE + clen + dlen;
+			if ( end > fileSize ) {
+				break;
+			}
+
+			if ( nframes == offsets.length ) {
+				offsets = Arrays.copyOf(offsets, nframes * 2);
+			}
+			offsets[nframes++] = pos;
+			pos = end;
+		}
+
+		m_offsets = Arrays.copyOf(offsets, nframes);
+		m_format.m_frameCount = nframes;
+		m_format.m_indexOffset = pos;
+		s_logger.warn("frame index was not recorded, rebuilt by scanning: path={}, frames={}",
+						m_file, nframes);
+	}
+
+	private void mapSegments() throws IOException {
+		int nframes = m_format.m_frameCount;
+		m_frameSegments = new int[nframes];
+
+		// 2GB를 넘지 않도록 frame 경계를 기준으로 파일을 여러 segment로 나누어 mapping한다.
+		long segStart = m_offsets[0];
+		for ( int i =0; i < nframes; ++i ) {
+			long frameEnd = (i+1 < nframes) ? m_offsets[i+1] : m_format.m_indexOffset;
+			if ( frameEnd - segStart > MAX_SEGMENT_SIZE ) {
+				long segEnd = m_offsets[i];
+				m_segments.add(m_channel.map(MapMode.READ_ONLY, segStart, segEnd - segStart));
+				m_segmentBases.add(segStart);
+				segStart = segEnd;
+			}
+			m_frameSegments[i] = m_segments.size();
+		}
+		m_segments.add(m_channel.map(MapMode.READ_ONLY, segStart, m_format.m_indexOffset - segStart));
+		m_segmentBases.add(segStart);
+	}
+
+	private double estimateFps() {
+		int nframes = m_format.m_frameCount;
+		if ( nframes < 2 ) {
+			return -1;
+		}
+
+		ByteBuffer buf = frameBuffer(nframes-1);
+		long durationNanos = buf.getLong();
+		if ( durationNanos <= 0 ) {
+			return -1;
+		}
+
+		return (nframes-1) / (durationNanos / (double)TimeUnit.SECONDS.toNanos(1));
+	}
+
+	private ByteBuffer frameBuffer(int frameIdx) {
+		int segIdx = m_frameSegments[frameIdx];
+		ByteBuffer buf = m_segments.get(segIdx).duplicate();
+		buf.order(CDCRecordFormat.BYTE_ORDER);
+		buf.position((int)(m_offsets[frameIdx] - m_segmentBases.get(segIdx)));
+
+		return buf;
+	}
+
+	/**
+	 * 녹화 파일의 frame들을 순서대로 읽는 reader.
+	 * 각 reader는 자신만의 pixel 배열과 재생 위치를 갖는다.
+	 */
+	private class FrameReader {
+		private final ReplayPacer m_pacer;
+		private final byte[] m_colorPixels;
+		private final short[] m_depthPixels;
+		private byte[] m_depthEncoded = new byte[0];
+		private int m_cursor = 0;
+		private final AtomicLong m_seqNo = new AtomicLong(0);
+
+		FrameReader(ReplayPacer pacer) {
+			m_pacer = pacer;
+
+			Size colorSize = m_format.m_colorSize;
+			Size depthSize = m_format.m_depthSize;
+			m_colorPixels = new byte[(int)(colorSize.area() * 3)];
+			m_depthPixels = new short[(int)depthSize.area()];
+		}
+
+		void reset() {
+			m_cursor = 0;
+			m_pacer.reset();
+		}
+
+		long getSequenceNo() {
+			return m_seqNo.get();
+		}
+
+		void readNext(Mat colorImage, Mat depthImage) {
+			if ( m_cursor >= m_format.m_frameCount ) {
+				if ( !m_loop ) {
+					throw new OpenCvJException("end of recording: path=" + m_file);
+				}
+				m_cursor = 0;
+			}
+
+			m_pacer.await();
+			read(m_cursor++, colorImage, depthImage);
+			m_seqNo.incrementAndGet();
+		}
+
+		private void read(int frameIdx, Mat colorImage, Mat depthImage) {
+			ByteBuffer buf = frameBuffer(frameIdx);
+			buf.getLong();		// captureNanos
+			int colorLength = buf.getInt();
+			int depthLength = buf.getInt();
+
+			if ( colorImage != null ) {
+				buf.get(m_colorPixels, 0, colorLength);
+				Mats.createIfNotValid(colorImage, m_format.m_colorSize, m_format.m_colorType);
+				colorImage.put(0, 0, m_colorPixels);
+			}
+			else {
+				buf.position(buf.position() + colorLength);
+			}
+
+			if ( depthImage != null ) {
+				if ( m_format.isDepthCompressed() ) {
+					if ( m_depthEncoded.length < depthLength ) {
+						m_depthEncoded = new byte[depthLength];
+					}
+					buf.get(m_depthEncoded, 0, depthLength);
+					Size size = m_format.m_depthSize;
+					DepthCodec.decode(m_depthEncoded, 0, depthLength, m_depthPixels,
+										(int)size.width, (int)size.height);
+				}
+				else {
+					buf.asShortBuffer().get(m_depthPixels, 0, depthLength/2);
+				}
+				Mats.createIfNotValid(depthImage, m_format.m_depthSize, m_format.m_depthType);
+				depthImage.put(0, 0, m_depthPixels);
+			}
+		}
+	}
+
+	/**
+	 * 녹화 파일의 칼라 또는 깊이 영상만을 재생하는 카메라.
+	 */
+	private class StreamCamera implements OpenCvJDepthCamera {
+		private final boolean m_color;
+		private final FrameReader m_streamReader;
+		private boolean m_streamOpened = false;
+
+		StreamCamera(boolean color) {
+			m_color = color;
+			m_streamReader = new FrameReader(ReplayPacer.from(m_config, m_fps));
+		}
+
+		@Override
+		public synchronized void open() {
+			m_streamReader.reset();
+			m_streamOpened = true;
+		}
+
+		@Override
+		public synchronized void close() {
+			m_streamOpened = false;
+		}
+
+		@Override
+		public Size getSize() {
+			return m_color ? m_format.m_colorSize : m_format.m_depthSize;
+		}
+
+		@Override
+		public synchronized void capture(Mat image) {
+			if ( !m_streamOpened ) {
+				throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+			}
+
+			if ( m_color ) {
+				m_streamReader.readNext(image, null);
+			}
+			else {
+				m_streamReader.readNext(null, image);
+			}
+		}
+
+		@Override
+		public void capture(Frame frame) {
+			capture(frame.getMat());
+			frame.setMetadata(getSourceId(), m_streamReader.getSequenceNo(), System.nanoTime());
+		}
+
+		@Override
+		public synchronized void grab() {
+			if ( !m_streamOpened ) {
+				throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+			}
+
+			m_streamReader.readNext(null, null);
+		}
+
+		@Override
+		public String getSourceId() {
+			return RecordedCDC.this.getSourceId() + (m_color ? "/color" : "/depth");
+		}
+	}
+
+	/**
+	 * 두 영상의 크기 비율만으로 좌표를 변환하는 mapper.
+	 */
+	private static class ScalingMapper implements DepthToColorMapper, ColorToDepthMapper {
+		private final Size m_targetSize;
+		private final double m_xratio;
+		private final double m_yratio;
+
+		ScalingMapper(Size srcSize, Size targetSize) {
+			m_targetSize = targetSize;
+			m_xratio = targetSize.width / srcSize.width;
+			m_yratio = targetSize.height / srcSize.height;
+		}
+
+		@Override
+		public Point map(Point coord, Mat depthImage) {
+			return new Point(coord.x * m_xratio, coord.y * m_yratio);
+		}
+
+		@Override
+		public Point[] map(Point[] coords, Mat depthImage) {
+			Point[] mappeds = new Point[coords.length];
+			for ( int i =0; i < coords.length; ++i ) {
+				mappeds[i] = map(coords[i], depthImage);
+			}
+
+			return mappeds;
+		}
+
+		@Override
+		public void mapMask(Mat srcMask, Mat targetMask, Mat depthImage) {
+			Imgproc.resize(srcMask, targetMask, m_targetSize, 0, 0, Imgproc.INTER_NEAREST);
+		}
+	}
+}
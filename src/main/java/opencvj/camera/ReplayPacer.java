@@ -0,0 +1,90 @@
+package opencvj.camera;
+
+import java.util.concurrent.TimeUnit;
+
+import utils.config.ConfigNode;
+
+
+/**
+ * 녹화된 영상을 재생하는 카메라가 frame을 반환하는 속도를 조절한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class ReplayPacer {
+	private static final double DEF_FPS = 30;
+
+	public static enum Pacing {
+		/** 원래 frame rate에 맞추어 frame을 반환한다. */
+		REALTIME,
+		/** 대기 없이 가능한 빠르게 frame을 반환한다. */
+		FASTEST;
+
+		public static Pacing from(String str) {
+			return valueOf(str.toUpperCase());
+		}
+	}
+
+	private final Pacing m_pacing;
+	private volatile long m_frameNanos;
+	private long m_dueNanos = -1;
+
+	ReplayPacer(Pacing pacing, double fps) {
+		m_pacing = pacing;
+		setFps(fps);
+	}
+
+	static ReplayPacer from(ConfigNode config, double defFps) {
+		ConfigNode pacingConfig = config.get("pacing");
+		Pacing pacing = pacingConfig.isMissing() ? Pacing.REALTIME : Pacing.from(pacingConfig.asString());
+		double fps = config.get("fps").asDouble((defFps > 0) ? defFps : DEF_FPS);
+
+		return new ReplayPacer(pacing, fps);
+	}
+
+	Pacing getPacing() {
+		return m_pacing;
+	}
+
+	void setFps(double fps) {
+		if ( fps <= 0 ) {
+			fps = DEF_FPS;
+		}
+		m_frameNanos = (long)(TimeUnit.SECONDS.toNanos(1) / fps);
+	}
+
+	/**
+	 * 재생을 처음부터 다시 시작하도록 한다.
+	 */
+	void reset() {
+		m_dueNanos = -1;
+	}
+
+	/**
+	 * 다음 frame을 반환할 시각까지 대기한다.
+	 */
+	void await() {
+		if ( m_pacing == Pacing.FASTEST ) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		if ( m_dueNanos < 0 ) {
+			m_dueNanos = now;
+		}
+
+		long remains = m_dueNanos - now;
+		if ( remains > 0 ) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(remains);
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+			m_dueNanos += m_frameNanos;
+		}
+		else {
+			// 이미 늦어진 경우는 누적된 지연을 따라잡으려 하지 않는다.
+			m_dueNanos = now + m_frameNanos;
+		}
+	}
+}
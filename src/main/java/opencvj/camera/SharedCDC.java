@@ -1,6 +1,8 @@
 package opencvj.camera;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeoutException;
 
 import org.opencv.core.Mat;
@@ -14,7 +16,7 @@ import utils.Throwables;
  * 
  * @author Kang-Woo Lee (ETRI)
  */
-class SharedCDC implements ColorDepthComposite {
+public class SharedCDC implements ColorDepthComposite {
 	private final CDCFactory m_cdcFactory;
 	
 	SharedCDC(CDCFactory cdcFactory) {
@@ -53,10 +55,81 @@ class SharedCDC implements ColorDepthComposite {
 
 	@Override
 	public void captureSynched(Mat colorImage, Mat depthImage) {
+		CDCFactory.ImageComposite comp = captureComposite();
 		try {
-			CDCFactory.ImageComposite comp = m_cdcFactory.capture();
-			comp.m_colorImage.copyTo(colorImage);
-			comp.m_depthImage.copyTo(depthImage);
+			comp.m_colorSlot.m_image.copyTo(colorImage);
+			comp.m_depthSlot.m_image.copyTo(depthImage);
+		}
+		finally {
+			comp.unpin();
+		}
+	}
+	
+	@Override
+	public void captureSynched(Frame colorFrame, Frame depthFrame) {
+		CDCFactory.ImageComposite comp = captureComposite();
+		try {
+			comp.m_colorSlot.m_image.copyTo(colorFrame.getMat());
+			comp.m_depthSlot.m_image.copyTo(depthFrame.getMat());
+			
+			String srcId = getSourceId();
+			long captureNanos = comp.m_colorSlot.getCaptureNanos();
+			colorFrame.setMetadata(srcId + "/color", comp.m_colorSeqNo, captureNanos);
+			depthFrame.setMetadata(srcId + "/depth", comp.m_depthSeqNo, captureNanos);
+		}
+		finally {
+			comp.unpin();
+		}
+	}
+	
+	@Override
+	public String getSourceId() {
+		return m_cdcFactory.getSourceId();
+	}
+	
+	/**
+	 * 동기화된 칼라/깊이 영상을 capture하여 복사하지 않고 참조하는 {@link CDCFrameRef}를 반환한다.
+	 * <p>
+	 * 반환된 객체는 사용 후 반드시 close되어야 한다.
+	 */
+	public CDCFrameRef captureSynchedRef() {
+		CDCFactory.ImageComposite comp = captureComposite();
+		return new CDCFrameRef(new FrameRef(comp.m_colorSlot), new FrameRef(comp.m_depthSlot));
+	}
+	
+	/**
+	 * 동기화된 칼라/깊이 영상을 비동기적으로 capture한다.
+	 * <p>
+	 * Capture는 {@link CDCFactory}에 설정된 executor를 통해 수행되며, 설정되지 않은 경우는
+	 * 카메라 패키지 전용의 daemon 쓰레드에서 수행된다. 각 호출은 영상이 capture될 때까지 쓰레드
+	 * 하나를 점유하므로, 많은 수의 consumer가 반복적으로 호출하는 경우는
+	 * {@link CDCFactory#getFramePublisher()}를 사용한다. 반환된 {@link FramePair}는 사용 후
+	 * close하여야 한다.
+	 */
+	public CompletableFuture<FramePair> captureSynchedAsync() {
+		Executor executor = m_cdcFactory.getExecutor();
+		if ( executor == null ) {
+			executor = CameraThreads.getDefaultExecutor();
+		}
+
+		return CompletableFuture.supplyAsync(this::captureFramePair, executor);
+	}
+	
+	private FramePair captureFramePair() {
+		FramePair pair = new FramePair();
+		try {
+			captureSynched(pair.getColorFrame(), pair.getDepthFrame());
+			return pair;
+		}
+		catch ( RuntimeException e ) {
+			pair.close();
+			throw e;
+		}
+	}
+	
+	private CDCFactory.ImageComposite captureComposite() {
+		try {
+			return m_cdcFactory.capture();
 		}
 		catch ( ExecutionException e ) {
 			Throwable cause = Throwables.unwrapThrowable(e);
@@ -1,5 +1,8 @@
 package opencvj.camera;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 
@@ -12,6 +15,10 @@ import opencvj.OpenCvJException;
  */
 public class SharedOpenCvJCamera implements OpenCvJCamera {
 	private final OpenCvJCameraFactoryImpl m_cameraFact;
+	private volatile FrameQueue m_queue;	// 배경 capture 쓰레드를 사용하는 경우에만 사용됨
+	private volatile CameraSharingMetrics.ConsumerMetrics m_metrics;	// open된 동안에만 설정됨
+	// 마지막으로 영상을 받은 capture cycle 번호 (카메라 factory의 lock 하에서만 접근됨)
+	private long m_lastCycleNo = -1;
 	
 	SharedOpenCvJCamera(OpenCvJCameraFactoryImpl cameraFact) {
 		m_cameraFact = cameraFact;
@@ -34,12 +41,212 @@ public class SharedOpenCvJCamera implements OpenCvJCamera {
 
 	@Override
 	public void capture(Mat image) {
+		long started = System.nanoTime();
+		try {
+			m_cameraFact.capture(this, image);
+			onConsumed(started);
+		}
+		catch ( InterruptedException e ) {
+			onFailed();
+			throw new OpenCvJException("image capturing interrupted");
+		}
+		catch ( RuntimeException e ) {
+			onFailed();
+			throw e;
+		}
+	}
+	
+	/**
+	 * 가장 최근에 공유된 영상이 주어진 시간보다 최근의 것이면 대기 없이 바로 반환하고,
+	 * 그렇지 않으면 새로 capture한 영상을 반환한다.
+	 * <p>
+	 * 최신 영상이 반드시 필요하지 않은 consumer가 다른 consumer들과 capture 경쟁을 하지 않도록
+	 * 하기 위해 사용된다.
+	 * 
+	 * @param image	capture된 영상이 저장될 객체.
+	 * @param maxAgeMillis	허용되는 영상의 최대 경과 시간 (millisecond).
+	 */
+	public void capture(Mat image, long maxAgeMillis) {
+		long started = System.nanoTime();
 		try {
-			m_cameraFact.capture(image);
+			m_cameraFact.capture(this, image, maxAgeMillis);
+			onConsumed(started);
 		}
 		catch ( InterruptedException e ) {
+			onFailed();
 			throw new OpenCvJException("image capturing interrupted");
 		}
+		catch ( RuntimeException e ) {
+			onFailed();
+			throw e;
+		}
 	}
+	
+	/**
+	 * 영상을 capture하여 주어진 크기로 변환된 영상을 반환한다.
+	 * <p>
+	 * 주어진 크기가 카메라 factory의 'output_sizes'에 설정된 경우는 capture된 영상마다
+	 * 한번만 변환되어 다른 consumer들과 공유된다.
+	 * 
+	 * @param image	capture된 영상이 저장될 객체.
+	 * @param size	반환될 영상의 크기.
+	 */
+	public void capture(Mat image, Size size) {
+		long started = System.nanoTime();
+		try {
+			m_cameraFact.capture(this, image, size);
+			onConsumed(started);
+		}
+		catch ( InterruptedException e ) {
+			onFailed();
+			throw new OpenCvJException("image capturing interrupted");
+		}
+		catch ( RuntimeException e ) {
+			onFailed();
+			throw e;
+		}
+	}
+	
+	@Override
+	public void capture(Frame frame) {
+		long started = System.nanoTime();
+		try {
+			m_cameraFact.capture(this, frame);
+			onConsumed(started);
+		}
+		catch ( InterruptedException e ) {
+			onFailed();
+			throw new OpenCvJException("image capturing interrupted");
+		}
+		catch ( RuntimeException e ) {
+			onFailed();
+			throw e;
+		}
+	}
+	
+	/**
+	 * 영상을 비동기적으로 capture한다.
+	 * <p>
+	 * Capture는 카메라 factory에 설정된 executor를 통해 수행되며, 설정되지 않은 경우는
+	 * capture 대기가 {@link java.util.concurrent.ForkJoinPool#commonPool()}을 점유하지 않도록
+	 * 카메라 패키지 전용의 daemon 쓰레드에서 수행된다. 이 쓰레드 pool은 크기 제한이 없고 각 호출은
+	 * 영상이 capture될 때까지 쓰레드 하나를 점유하므로, 수십 개의 consumer가 동시에 호출하면 그 수만큼의
+	 * 쓰레드가 대기하게 된다. 이 경우는 {@link OpenCvJCameraFactoryImpl#getFramePublisher()}를
+	 * 사용한다. 반환된 {@link Frame}은 사용 후 close하여야 한다.
+	 */
+	public CompletableFuture<Frame> captureAsync() {
+		Executor executor = m_cameraFact.getExecutor();
+		if ( executor == null ) {
+			executor = CameraThreads.getDefaultExecutor();
+		}
 
+		return CompletableFuture.supplyAsync(this::captureFrame, executor);
+	}
+	
+	/**
+	 * 공유 영상 하나를 복사하지 않고 버린다.
+	 * <p>
+	 * 배경 capture 쓰레드를 사용하는 경우는 이 카메라에 전달된 frame 하나를 소비하고,
+	 * 그렇지 않은 경우는 호출 이후에 capture된 영상이 발행될 때까지 대기한다.
+	 * 즉, 이미 발행된 영상을 다시 pin하는 것만으로는 반환되지 않는다.
+	 */
+	@Override
+	public void grab() {
+		long started = System.nanoTime();
+		try {
+			m_cameraFact.grab(this);
+			onConsumed(started);
+		}
+		catch ( InterruptedException e ) {
+			onFailed();
+			throw new OpenCvJException("image capturing interrupted");
+		}
+		catch ( RuntimeException e ) {
+			onFailed();
+			throw e;
+		}
+	}
+	
+	@Override
+	public String getSourceId() {
+		return m_cameraFact.getSourceId();
+	}
+	
+	/**
+	 * 영상을 capture하여 복사하지 않고 참조하는 {@link FrameRef}를 반환한다.
+	 * <p>
+	 * 반환된 객체는 사용 후 반드시 close되어야 한다.
+	 */
+	public FrameRef captureRef() {
+		long started = System.nanoTime();
+		try {
+			FrameRef ref = m_cameraFact.captureRef(this);
+			onConsumed(started);
+			
+			return ref;
+		}
+		catch ( InterruptedException e ) {
+			onFailed();
+			throw new OpenCvJException("image capturing interrupted");
+		}
+		catch ( RuntimeException e ) {
+			onFailed();
+			throw e;
+		}
+	}
+	
+	/**
+	 * 본 consumer에 대한 통계를 반환한다.
+	 * 
+	 * @return	consumer 통계. 카메라가 open되지 않은 경우는 {@code null}.
+	 */
+	public CameraSharingMetrics.ConsumerMetrics getMetrics() {
+		return m_metrics;
+	}
+	
+	private Frame captureFrame() {
+		Frame frame = new Frame();
+		try {
+			capture(frame);
+			return frame;
+		}
+		catch ( RuntimeException e ) {
+			frame.close();
+			throw e;
+		}
+	}
+	
+	private void onConsumed(long startedNanos) {
+		CameraSharingMetrics.ConsumerMetrics metrics = m_metrics;
+		if ( metrics != null ) {
+			metrics.onConsumed(System.nanoTime() - startedNanos);
+		}
+	}
+	
+	private void onFailed() {
+		CameraSharingMetrics.ConsumerMetrics metrics = m_metrics;
+		if ( metrics != null ) {
+			metrics.onFailed();
+		}
+	}
+	
+	void setMetrics(CameraSharingMetrics.ConsumerMetrics metrics) {
+		m_metrics = metrics;
+	}
+	
+	long getLastCycleNo() {
+		return m_lastCycleNo;
+	}
+	
+	void setLastCycleNo(long cycleNo) {
+		m_lastCycleNo = cycleNo;
+	}
+	
+	FrameQueue getFrameQueue() {
+		return m_queue;
+	}
+	
+	void setFrameQueue(FrameQueue queue) {
+		m_queue = queue;
+	}
 }
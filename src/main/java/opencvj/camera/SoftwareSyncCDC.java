@@ -0,0 +1,420 @@
+package opencvj.camera;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import opencvj.OpenCvJException;
+import utils.Utilities;
+import utils.config.ConfigNode;
+import utils.io.IOUtils;
+import utils.thread.ExecutorAware;
+
+
+/**
+ * 원시 {@link ColorDepthComposite}의 칼라 카메라와 깊이 카메라를 각각 별도의 쓰레드에서
+ * capture하고, capture 시각이 가장 가까운 두 영상을 짝지어 동기화된 영상으로 제공하는
+ * {@link ColorDepthComposite}.
+ * <p>
+ * 각 카메라별로 최근 capture된 frame들을 일정 개수만큼 유지하며, 두 영상의 capture 시각
+ * 차이가 허용 오차 이내인 짝들 중에서 가장 최근 칼라 영상을 포함한 짝을 반환한다.
+ * 원시 {@link ColorDepthComposite}가 {@link #captureSynched(Mat, Mat)}를 지원하지 않거나
+ * 두 카메라의 frame rate가 서로 다른 경우에 사용된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class SoftwareSyncCDC implements ColorDepthComposite, ExecutorAware {
+	private static final Logger s_logger = LoggerFactory.getLogger("OPENCV.SOFTWARE_SYNC_CDC");
+	private static final long DEF_TOLERANCE_MILLIS = 20;
+	private static final int DEF_BUFFER_SIZE = 3;
+	private static final long MAX_CAPTURE_WAIT_MILLIS = 3*1000;
+
+	// properties (BEGIN)
+	private final ColorDepthComposite m_source;
+	private volatile long m_toleranceNanos = TimeUnit.MILLISECONDS.toNanos(DEF_TOLERANCE_MILLIS);
+	private volatile int m_bufferSize = DEF_BUFFER_SIZE;
+	private volatile long m_maxWaitMillis = MAX_CAPTURE_WAIT_MILLIS;
+	private volatile Executor m_executor;			// optional
+	// properties (END)
+
+	private final ReentrantLock m_lock = new ReentrantLock();
+	private final Condition m_arrivedCond = m_lock.newCondition();
+	@GuardedBy("m_lock") private StreamBuffer m_colorBuffer;
+	@GuardedBy("m_lock") private StreamBuffer m_depthBuffer;
+	@GuardedBy("m_lock") private long m_lastColorSeqNo;
+	@GuardedBy("m_lock") private long m_lastDepthSeqNo;
+
+	private OpenCvJCamera m_colorCamera;
+	private OpenCvJCamera m_depthCamera;
+	private volatile boolean m_running = false;
+	private CountDownLatch m_capturersDone;
+
+	public static SoftwareSyncCDC create(ColorDepthComposite source, ConfigNode config) {
+		SoftwareSyncCDC cdc = new SoftwareSyncCDC(source);
+		cdc.setToleranceMillis(config.get("tolerance").asDuration(DEF_TOLERANCE_MILLIS));
+		cdc.setBufferSize(config.get("buffer_size").asInt(DEF_BUFFER_SIZE));
+
+		ConfigNode maxWaitConfig = config.get("max_capture_wait");
+		if ( !maxWaitConfig.isMissing() ) {
+			cdc.setMaxWaitMillis(maxWaitConfig.asDuration());
+		}
+
+		return cdc;
+	}
+
+	public SoftwareSyncCDC(ColorDepthComposite source) {
+		m_source = source;
+	}
+
+	/**
+	 * 짝지어질 두 영상의 capture 시각 차이의 최대 허용치를 설정한다.
+	 */
+	public void setToleranceMillis(long millis) {
+		m_toleranceNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * 카메라별로 유지할 최근 frame의 수를 설정한다.
+	 * <p>
+	 * 설정 값은 다음 번 {@link #open()}부터 적용된다.
+	 */
+	public void setBufferSize(int size) {
+		if ( size < 1 ) {
+			throw new IllegalArgumentException("invalid buffer size: " + size);
+		}
+		m_bufferSize = size;
+	}
+
+	public void setMaxWaitMillis(long millis) {
+		m_maxWaitMillis = millis;
+	}
+
+	@Override
+	public void setExecutor(Executor executor) {
+		m_executor = executor;
+	}
+
+	@Override
+	public Executor getExecutor() {
+		return m_executor;
+	}
+
+	@Override
+	public synchronized void open() {
+		if ( m_running ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " already opened");
+		}
+
+		m_lock.lock();
+		try {
+			m_colorBuffer = new StreamBuffer(m_bufferSize);
+			m_depthBuffer = new StreamBuffer(m_bufferSize);
+			m_lastColorSeqNo = Frame.UNKNOWN_SEQUENCE_NO;
+			m_lastDepthSeqNo = Frame.UNKNOWN_SEQUENCE_NO;
+		}
+		finally {
+			m_lock.unlock();
+		}
+
+		m_source.open();
+		m_colorCamera = m_source.getColorCamera();
+		m_depthCamera = m_source.getDepthCamera();
+		m_colorCamera.open();
+		m_depthCamera.open();
+
+		m_running = true;
+		m_capturersDone = new CountDownLatch(2);
+		startCapturer(m_colorCamera, true);
+		startCapturer(m_depthCamera, false);
+	}
+
+	@Override
+	public synchronized void close() throws Exception {
+		if ( !m_running ) {
+			return;
+		}
+
+		// 카메라들이 close되기 전에 capture 쓰레드들이 종료되도록 한다.
+		m_running = false;
+		try {
+			m_capturersDone.await();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+
+		IOUtils.closeQuietly(m_colorCamera);
+		IOUtils.closeQuietly(m_depthCamera);
+		IOUtils.closeQuietly(m_source);
+
+		m_lock.lock();
+		try {
+			m_colorBuffer.close();
+			m_depthBuffer.close();
+			m_arrivedCond.signalAll();
+		}
+		finally {
+			m_lock.unlock();
+		}
+	}
+
+	@Override
+	public Size getColorImageSize() {
+		return m_source.getColorImageSize();
+	}
+
+	@Override
+	public Size getDepthImageSize() {
+		return m_source.getDepthImageSize();
+	}
+
+	@Override
+	public OpenCvJCamera getColorCamera() {
+		return m_source.getColorCamera();
+	}
+
+	@Override
+	public OpenCvJCamera getDepthCamera() {
+		return m_source.getDepthCamera();
+	}
+
+	@Override
+	public void captureSynched(Mat colorImage, Mat depthImage) {
+		m_lock.lock();
+		try {
+			Frame[] pair = awaitPairInGuard();
+			pair[0].getMat().copyTo(colorImage);
+			pair[1].getMat().copyTo(depthImage);
+		}
+		finally {
+			m_lock.unlock();
+		}
+	}
+
+	/**
+	 * 동기화된 칼라/깊이 영상을 capture한다.
+	 * <p>
+	 * 두 frame에는 각 영상이 실제로 capture된 시각과 카메라별 순차 번호가 기록된다.
+	 */
+	@Override
+	public void captureSynched(Frame colorFrame, Frame depthFrame) {
+		m_lock.lock();
+		try {
+			Frame[] pair = awaitPairInGuard();
+			pair[0].getMat().copyTo(colorFrame.getMat());
+			pair[1].getMat().copyTo(depthFrame.getMat());
+
+			String srcId = getSourceId();
+			colorFrame.setMetadata(srcId + "/color", pair[0].getSequenceNo(), pair[0].getCaptureNanos());
+			depthFrame.setMetadata(srcId + "/depth", pair[1].getSequenceNo(), pair[1].getCaptureNanos());
+		}
+		finally {
+			m_lock.unlock();
+		}
+	}
+
+	@Override
+	public String getSourceId() {
+		return m_source.getSourceId();
+	}
+
+	@Override
+	public DepthToColorMapper getDepthToColorMapper() {
+		return m_source.getDepthToColorMapper();
+	}
+
+	@Override
+	public ColorToDepthMapper getColorToDepthMapper() {
+		return m_source.getColorToDepthMapper();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[source=%s, tolerance=%dms, buffer=%d]", getClass().getSimpleName(),
+							m_source, TimeUnit.NANOSECONDS.toMillis(m_toleranceNanos), m_bufferSize);
+	}
+
+	@GuardedBy("m_lock")
+	private Frame[] awaitPairInGuard() {
+		if ( !m_running ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+		}
+
+		long remains = TimeUnit.MILLISECONDS.toNanos(m_maxWaitMillis);
+		try {
+			while ( true ) {
+				Frame[] pair = findPairInGuard();
+				if ( pair != null ) {
+					m_lastColorSeqNo = pair[0].getSequenceNo();
+					m_lastDepthSeqNo = pair[1].getSequenceNo();
+
+					return pair;
+				}
+
+				if ( remains <= 0 ) {
+					throw new OpenCvJException("fails to get synchronized images within "
+												+ m_maxWaitMillis + "ms: " + this);
+				}
+				remains = m_arrivedCond.awaitNanos(remains);
+				if ( !m_running ) {
+					throw new OpenCvJException(getClass().getSimpleName() + " is closed");
+				}
+			}
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new OpenCvJException("image capturing interrupted");
+		}
+	}
+
+	/**
+	 * 아직 반환되지 않은 칼라 영상들 중 가장 최근 영상부터 시작하여, capture 시각 차이가
+	 * 허용 오차 이내인 깊이 영상이 존재하는 첫번째 짝을 찾는다.
+	 */
+	@GuardedBy("m_lock")
+	private Frame[] findPairInGuard() {
+		for ( int i = m_colorBuffer.size() - 1; i >= 0; --i ) {
+			Frame color = m_colorBuffer.get(i);
+			if ( color.getSequenceNo() <= m_lastColorSeqNo ) {
+				break;
+			}
+
+			Frame nearest = null;
+			long minDiff = Long.MAX_VALUE;
+			for ( int j = 0; j < m_depthBuffer.size(); ++j ) {
+				Frame depth = m_depthBuffer.get(j);
+				if ( depth.getSequenceNo() < m_lastDepthSeqNo ) {
+					continue;
+				}
+
+				long diff = Math.abs(color.getCaptureNanos() - depth.getCaptureNanos());
+				if ( diff < minDiff ) {
+					minDiff = diff;
+					nearest = depth;
+				}
+			}
+			if ( nearest != null && minDiff <= m_toleranceNanos ) {
+				return new Frame[]{color, nearest};
+			}
+		}
+
+		return null;
+	}
+
+	private void startCapturer(final OpenCvJCamera camera, final boolean color) {
+		final CountDownLatch done = m_capturersDone;
+		Utilities.runAsync(m_executor, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					runCapturer(camera, color);
+				}
+				finally {
+					done.countDown();
+				}
+			}
+		});
+	}
+
+	private void runCapturer(OpenCvJCamera camera, boolean color) {
+		Frame scratch = new Frame();
+		CaptureBackoff backoff = new CaptureBackoff(s_logger, camera);
+		try {
+			while ( m_running ) {
+				try {
+					camera.capture(scratch);
+					backoff.onSuccess();
+				}
+				catch ( RuntimeException e ) {
+					if ( !m_running ) {
+						break;
+					}
+
+					// 장치 오류가 지속되는 경우 쓰레드가 쉬지 않고 재시도하지 않도록 대기한다.
+					try {
+						backoff.onFailure(e);
+					}
+					catch ( InterruptedException ignored ) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+					continue;
+				}
+
+				m_lock.lock();
+				try {
+					StreamBuffer buffer = color ? m_colorBuffer : m_depthBuffer;
+					scratch = buffer.add(scratch);
+					m_arrivedCond.signalAll();
+				}
+				finally {
+					m_lock.unlock();
+				}
+			}
+		}
+		finally {
+			scratch.close();
+		}
+	}
+
+	/**
+	 * 한 카메라에서 capture된 최근 frame들을 capture 순서대로 유지한다.
+	 * <p>
+	 * 새 frame이 추가되면 가장 오래된 frame 객체가 반환되어 다음 capture에 재사용되므로
+	 * 영상 복사가 발생하지 않는다.
+	 */
+	private static class StreamBuffer {
+		private final Frame[] m_frames;
+		private int m_start = 0;
+		private int m_count = 0;
+
+		StreamBuffer(int capacity) {
+			m_frames = new Frame[capacity];
+			for ( int i =0; i < capacity; ++i ) {
+				m_frames[i] = new Frame();
+			}
+		}
+
+		int size() {
+			return m_count;
+		}
+
+		/**
+		 * 버퍼에 유지된 frame 중 <code>index</code>번째로 오래된 frame을 반환한다.
+		 */
+		Frame get(int index) {
+			return m_frames[(m_start + index) % m_frames.length];
+		}
+
+		Frame add(Frame frame) {
+			int idx = (m_start + m_count) % m_frames.length;
+			Frame evicted = m_frames[idx];
+			m_frames[idx] = frame;
+
+			if ( m_count < m_frames.length ) {
+				++m_count;
+			}
+			else {
+				m_start = (m_start + 1) % m_frames.length;
+			}
+
+			return evicted;
+		}
+
+		void close() {
+			for ( Frame frame: m_frames ) {
+				frame.close();
+			}
+			m_count = 0;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package opencvj.camera;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.highgui.Highgui;
+import org.opencv.highgui.VideoCapture;
+import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import opencvj.OpenCvJException;
+import opencvj.OpenCvJUtils;
+import utils.Initializable;
+import utils.UninitializedException;
+import utils.config.ConfigNode;
+
+
+/**
+ * 녹화된 동영상 파일을 재생하는 카메라.
+ * <p>
+ * 카메라가 없는 환경에서 영상 처리 pipeline을 재현 가능하게 수행하거나,
+ * 장치의 frame rate 제한 없이 최대 처리량을 측정하기 위해 사용된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class VideoFileCamera implements OpenCvJCamera, Initializable {
+	private static final Logger s_logger = LoggerFactory.getLogger("OPENCV.VIDEO_FILE");
+
+	// OpenCV 2.4의 Java binding(Highgui)에는 정의되지 않은 native property 식별자들
+	private static final int CV_CAP_PROP_POS_FRAMES = 1;
+	private static final int CV_CAP_PROP_FPS = 5;
+
+	// properties (BEGIN)
+	private volatile ConfigNode m_config;
+	// properties (END)
+
+	private File m_file;
+	private boolean m_loop;
+	private ReplayPacer m_pacer;
+	private Size m_size;
+	private VideoCapture m_capture;	// 'null'이면 open되지 않은 것으로 간주
+	private final AtomicLong m_seqNoGen = new AtomicLong(0);
+
+	public static VideoFileCamera create(ConfigNode config) throws Exception {
+		VideoFileCamera camera = new VideoFileCamera();
+		camera.setConfig(config);
+		camera.initialize();
+
+		return camera;
+	}
+
+	public VideoFileCamera() { }
+
+	public final void setConfig(ConfigNode config) {
+		m_config = config;
+	}
+
+	@Override
+	public synchronized void initialize() throws Exception {
+		if ( m_config == null ) {
+			throw new UninitializedException("Property 'config' was not specified: class="
+											+ getClass().getName());
+		}
+
+		m_file = m_config.get("filepath").asFile();
+		if ( !m_file.isFile() ) {
+			throw new OpenCvJException("video file not found: path=" + m_file);
+		}
+		m_loop = m_config.get("loop").asBoolean(false);
+
+		// 영상 크기와 frame rate를 얻기 위해 파일을 잠시 열어본다.
+		VideoCapture capture = new VideoCapture();
+		try {
+			if ( !capture.open(m_file.getAbsolutePath()) ) {
+				throw new OpenCvJException("fails to open video file: path=" + m_file);
+			}
+
+			m_size = OpenCvJUtils.asSize(m_config.get("image_size"),
+									new Size(capture.get(Highgui.CV_CAP_PROP_FRAME_WIDTH),
+											capture.get(Highgui.CV_CAP_PROP_FRAME_HEIGHT)));
+			m_pacer = ReplayPacer.from(m_config, capture.get(CV_CAP_PROP_FPS));
+		}
+		finally {
+			capture.release();
+		}
+
+		s_logger.info("initialized: {}", toString());
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		close();
+	}
+
+	@Override
+	public synchronized void open() {
+		Preconditions.checkState(m_file != null, "not initialized: " + getClass());
+
+		if ( m_capture != null ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " already opened");
+		}
+
+		m_capture = new VideoCapture();
+		if ( !m_capture.open(m_file.getAbsolutePath()) ) {
+			m_capture = null;
+			throw new OpenCvJException("fails to open video file: path=" + m_file);
+		}
+		m_pacer.reset();
+	}
+
+	@Override
+	public synchronized void close() {
+		if ( m_capture != null ) {
+			m_capture.release();
+			m_capture = null;
+		}
+	}
+
+	@Override
+	public Size getSize() {
+		return m_size;
+	}
+
+	@Override
+	public synchronized void capture(Mat image) {
+		if ( m_capture == null ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+		}
+
+		m_pacer.await();
+		if ( !m_capture.read(image) ) {
+			if ( !m_loop ) {
+				throw new OpenCvJException("end of video: path=" + m_file);
+			}
+
+			// 파일의 처음으로 되돌아가 재생을 계속한다.
+			m_capture.set(CV_CAP_PROP_POS_FRAMES, 0);
+			if ( !m_capture.read(image) ) {
+				throw new OpenCvJException("fails to read video frame: path=" + m_file);
+			}
+		}
+		
+		// 'image_size'가 지정된 경우는 getSize()와 같은 크기의 영상이 반환되도록 한다.
+		if ( !image.size().equals(m_size) ) {
+			Imgproc.resize(image, image, m_size);
+		}
+		m_seqNoGen.incrementAndGet();
+	}
+
+	/**
+	 * 다음 frame을 decode하지 않고 건너뛴다.
+	 */
+	@Override
+	public synchronized void grab() {
+		if ( m_capture == null ) {
+			throw new OpenCvJException(getClass().getSimpleName() + " is not open");
+		}
+
+		m_pacer.await();
+		if ( !m_capture.grab() ) {
+			if ( !m_loop ) {
+				throw new OpenCvJException("end of video: path=" + m_file);
+			}
+
+			m_capture.set(CV_CAP_PROP_POS_FRAMES, 0);
+			if ( !m_capture.grab() ) {
+				throw new OpenCvJException("fails to read video frame: path=" + m_file);
+			}
+		}
+		m_seqNoGen.incrementAndGet();
+	}
+
+	@Override
+	public synchronized void capture(Frame frame) {
+		// capture(Mat)에서 증가된 sequence 번호를 사용한다.
+		capture(frame.getMat());
+		frame.setMetadata(getSourceId(), m_seqNoGen.get(), System.nanoTime());
+	}
+
+	@Override
+	public String getSourceId() {
+		return "video_file:" + m_file.getName();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[path=%s, size=%s, pacing=%s, loop=%s]", getClass().getSimpleName(),
+							m_file, OpenCvJUtils.toString(m_size), m_pacer.getPacing(), m_loop);
+	}
+}
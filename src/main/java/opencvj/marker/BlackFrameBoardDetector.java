@@ -21,6 +21,7 @@ import opencvj.blob.Blob;
 import opencvj.blob.BlobForest;
 import opencvj.blob.BlobForest.Node;
 import opencvj.blob.ImageThreshold;
+import opencvj.camera.FrameContext;
 import utils.Initializable;
 import utils.UninitializedException;
 import utils.config.ConfigNode;
@@ -99,9 +100,16 @@ public class BlackFrameBoardDetector implements BoardDetector, Initializable {
 
 	@Override
 	public Point[] detect(Mat image) {
+		try ( FrameContext ctx = new FrameContext(image) ) {
+			return detect(ctx);
+		}
+	}
+	
+	@Override
+	public Point[] detect(FrameContext ctx) {
 		Mat mask = new Mat();
 		try {
-			Point[] corners = findLargest(detect(image, mask));
+			Point[] corners = findLargest(detect(ctx, mask));
 			if ( corners != null ) {
 				corners = OpenCvJUtils.orderCorners(corners);
 			}
@@ -113,6 +121,13 @@ public class BlackFrameBoardDetector implements BoardDetector, Initializable {
 	}
 	
 	public List<Point[]> detect(Mat image, Mat mask) {
+		try ( FrameContext ctx = new FrameContext(image) ) {
+			return detect(ctx, mask);
+		}
+	}
+	
+	public List<Point[]> detect(FrameContext ctx, Mat mask) {
+		Mat image = ctx.getImage();
 		if ( image.empty() ) {
 			throw new OpenCvJException("image is empty");
 		}
@@ -135,7 +150,7 @@ public class BlackFrameBoardDetector implements BoardDetector, Initializable {
 
 //		Mat gray;
 //		Imgproc.GaussianBlur(gray, gray, new Size(3,3), 0, 0);
-		m_threshold.detect(image, mask);
+		m_threshold.detect(ctx, mask);
 
 //		MatConvas convas = new MatConvas(mask.clone());
 //		Imgproc.cvtColor(convas.getMat(), convas.getMat(), Imgproc.COLOR_GRAY2BGR);
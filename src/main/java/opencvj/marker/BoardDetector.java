@@ -3,6 +3,8 @@ package opencvj.marker;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
 
+import opencvj.camera.FrameContext;
+
 
 /**
  * 
@@ -10,4 +12,8 @@ import org.opencv.core.Point;
  */
 public interface BoardDetector {
 	public Point[] detect(Mat image);
+	
+	public default Point[] detect(FrameContext ctx) {
+		return detect(ctx.getImage());
+	}
 }
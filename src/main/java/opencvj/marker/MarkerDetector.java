@@ -25,6 +25,7 @@ import opencvj.blob.Blob;
 import opencvj.blob.BlobForest;
 import opencvj.blob.BlobForest.Node;
 import opencvj.camera.FlipCode;
+import opencvj.camera.FrameContext;
 import utils.Initializable;
 import utils.UninitializedException;
 import utils.config.ConfigNode;
@@ -117,18 +118,31 @@ public class MarkerDetector implements Initializable {
 	}
 	
 	public List<Info> detect(Mat image) {
-		if ( image.empty() ) {
+		try ( FrameContext ctx = new FrameContext(image) ) {
+			return detect(ctx);
+		}
+	}
+	
+	/**
+	 * 주어진 context의 영상에서 마커들을 검출한다.
+	 * <p>
+	 * Context가 관리하는 blur된 회색조 영상을 사용하므로, 동일 영상에 대해 다른 검출기와
+	 * 함께 수행되는 경우 색상 변환이 반복되지 않는다.
+	 */
+	public List<Info> detect(FrameContext ctx) {
+		if ( ctx.getImage().empty() ) {
 			throw new OpenCvJException("gray_image is empty");
 		}
 		
-		Mat gray = new Mat();
+		Mat gray = ctx.getBlurredGray(KERNEL_SIZE);
+		Mat inverted = new Mat();
 		Mat bwImage = new Mat();
 		
 		try {
-			Mats.toGrayImage(image, gray);
-			Imgproc.GaussianBlur(gray, gray, KERNEL_SIZE, 0);
+			// context의 영상은 공유되므로 반전된 영상은 별도로 생성한다.
 			if ( m_params.invert ) {
-				Core.absdiff(gray, new Scalar(255), gray);
+				Core.absdiff(gray, new Scalar(255), inverted);
+				gray = inverted;
 			}
 			
 			m_threshold.detect(gray, bwImage);
@@ -149,7 +163,7 @@ public class MarkerDetector implements Initializable {
 			return infos;
 		}
 		finally {
-			Mats.releaseAll(bwImage, gray);
+			Mats.releaseAll(bwImage, inverted);
 		}
 	}
 	
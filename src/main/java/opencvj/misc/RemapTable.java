@@ -0,0 +1,106 @@
+package opencvj.misc;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+
+/**
+ * <code>RemapTable</code>은 perspective transform을 결과 영상의 각 픽셀에 대한
+ * 원시 영상 좌표 table로 미리 계산하여 {@link Imgproc#remap}으로 적용하는 객체이다.
+ * <p>
+ * {@link PerspectiveTransform#perform(Mat, Mat, Size)}는 매 호출마다 모든 픽셀에 대한
+ * 좌표 변환을 다시 계산하지만, 본 객체는 생성시 한번만 계산한 fixed-point table을 재사용한다.
+ * 따라서 변환 행렬이 자주 변경되지 않는 경우에 사용한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class RemapTable implements AutoCloseable {
+	private final Mat m_transMatrix;
+	private final Size m_dstSize;
+	private Mat m_map1;		// CV_16SC2: 정수 좌표
+	private Mat m_map2;		// CV_16UC1: 보간용 소수 좌표 index
+
+	/**
+	 * 주어진 perspective transform에 대한 remap table을 생성한다.
+	 *
+	 * @param trans	원시 영상 좌표를 결과 영상 좌표로 변환하는 transform.
+	 * @param dstSize	결과 영상의 크기.
+	 */
+	public static RemapTable create(PerspectiveTransform trans, Size dstSize) {
+		return new RemapTable(trans.getTransformMatrix(), dstSize);
+	}
+
+	private RemapTable(Mat transMatrix, Size dstSize) {
+		m_transMatrix = transMatrix;
+		m_dstSize = dstSize.clone();
+
+		int width = (int)dstSize.width;
+		int height = (int)dstSize.height;
+
+		// 결과 영상의 각 픽셀 좌표를 역변환하여 원시 영상에서의 좌표를 구한다.
+		float[] coords = new float[width * height * 2];
+		for ( int y =0, idx =0; y < height; ++y ) {
+			for ( int x =0; x < width; ++x ) {
+				coords[idx++] = x;
+				coords[idx++] = y;
+			}
+		}
+
+		Mat grid = new Mat(height, width, CvType.CV_32FC2);
+		Mat inv = transMatrix.inv();
+		Mat map = new Mat();
+		Mat empty = new Mat();
+		try {
+			grid.put(0, 0, coords);
+			Core.perspectiveTransform(grid, map, inv);
+
+			m_map1 = new Mat();
+			m_map2 = new Mat();
+			Imgproc.convertMaps(map, empty, m_map1, m_map2, CvType.CV_16SC2, false);
+		}
+		finally {
+			grid.release();
+			inv.release();
+			map.release();
+			empty.release();
+		}
+	}
+
+	/**
+	 * 본 table이 주어진 transform과 결과 영상 크기로 생성되었는지 여부를 반환한다.
+	 * <p>
+	 * Transform의 변환 행렬이 새로 설정된 경우는 <code>false</code>를 반환한다.
+	 */
+	public boolean isBuiltFor(PerspectiveTransform trans, Size dstSize) {
+		return m_map1 != null && trans.getTransformMatrix() == m_transMatrix
+			&& m_dstSize.equals(dstSize);
+	}
+
+	public Size getDestinationSize() {
+		return m_dstSize;
+	}
+
+	/**
+	 * 원시 영상에 remap table을 적용하여 결과 영상을 생성한다.
+	 * <p>
+	 * 결과는 {@link Imgproc#warpPerspective}의 기본 설정(선형 보간, 영역 밖은 0)과 동일하다.
+	 */
+	public void perform(Mat srcImage, Mat dstImage) {
+		Imgproc.remap(srcImage, dstImage, m_map1, m_map2, Imgproc.INTER_LINEAR,
+						Imgproc.BORDER_CONSTANT, new Scalar(0));
+	}
+
+	@Override
+	public void close() {
+		if ( m_map1 != null ) {
+			m_map1.release();
+			m_map2.release();
+			m_map1 = null;
+			m_map2 = null;
+		}
+	}
+}
@@ -12,11 +12,14 @@ import org.opencv.core.MatOfFloat;
 import org.opencv.core.Point;
 import org.opencv.core.Size;
 
+import javax.annotation.concurrent.GuardedBy;
+
 import com.google.gson.Gson;
 
 import opencvj.Mats;
 import opencvj.OpenCvJUtils;
 import opencvj.misc.PerspectiveTransform;
+import opencvj.misc.RemapTable;
 import utils.config.ConfigNode;
 
 
@@ -33,6 +36,25 @@ public final class CameraProjectorBinding implements AutoCloseable {
 	public PerspectiveTransform m_transScreenToCamera;
 	public PerspectiveTransform m_transCameraToScreen;
 	
+	// 'm_transCameraToScreen'으로부터 미리 계산된 remap table (필요시 생성됨)
+	@GuardedBy("this") private TableRef m_extractTable;
+	@GuardedBy("this") private boolean m_closed = false;
+	
+	/**
+	 * 추출 중인 쓰레드들이 공유하는 remap table의 참조 횟수를 관리한다.
+	 * <p>
+	 * Binding이 갖는 참조와 추출 중인 쓰레드별 참조로 구성되며, 모든 참조가 반납되면
+	 * table의 map들이 release된다. 참조 횟수는 binding의 lock 하에서만 변경된다.
+	 */
+	private static final class TableRef {
+		private final RemapTable m_table;
+		private int m_refCount = 1;
+		
+		TableRef(RemapTable table) {
+			m_table = table;
+		}
+	}
+	
 	public static CameraProjectorBinding create(ConfigNode config) {
 		CameraProjectorBinding param = new CameraProjectorBinding();
 		
@@ -53,6 +75,10 @@ public final class CameraProjectorBinding implements AutoCloseable {
 
 	@Override
 	public void close() {
+		synchronized ( this ) {
+			m_closed = true;
+			retireExtractTable();
+		}
 		m_transScreenToCamera.close();
 		m_transCameraToScreen.close();
 	}
@@ -73,9 +99,60 @@ public final class CameraProjectorBinding implements AutoCloseable {
 		return m_transCameraToScreen.perform(cameraCoords);
 	}
 	
+	/**
+	 * 카메라 영상에서 프로젝터 투사 영역을 추출하여 프로젝터 해상도의 영상으로 변환한다.
+	 * <p>
+	 * 변환은 처음 호출시 계산된 remap table을 재사용하며, 'm_transCameraToScreen' 또는
+	 * 'm_projectorSize'가 변경된 경우는 table이 자동으로 다시 계산된다.
+	 */
 	public void extractProjectionImage(Mat cameraImage, Mat extracted) {
 		Mats.createIfNotValid(extracted, m_projectorSize, cameraImage.type());
-		m_transCameraToScreen.perform(cameraImage, extracted, m_projectorSize);
+		
+		TableRef ref = acquireExtractTable();
+		try {
+			ref.m_table.perform(cameraImage, extracted);
+		}
+		finally {
+			release(ref);
+		}
+	}
+	
+	/**
+	 * 미리 계산된 remap table을 폐기한다.
+	 * <p>
+	 * 변환 행렬의 내용을 직접 수정한 경우 호출되어야 하며, table은 다음 추출시 다시 계산된다.
+	 * 기존 table로 추출 중인 쓰레드가 있는 경우 table은 해당 추출이 끝난 후 release된다.
+	 */
+	public synchronized void invalidateRemapTable() {
+		retireExtractTable();
+	}
+	
+	private synchronized TableRef acquireExtractTable() {
+		if ( m_closed ) {
+			throw new IllegalStateException("CameraProjectorBinding has been closed");
+		}
+		if ( m_extractTable == null
+			|| !m_extractTable.m_table.isBuiltFor(m_transCameraToScreen, m_projectorSize) ) {
+			retireExtractTable();
+			m_extractTable = new TableRef(RemapTable.create(m_transCameraToScreen, m_projectorSize));
+		}
+		
+		++m_extractTable.m_refCount;
+		return m_extractTable;
+	}
+	
+	private synchronized void release(TableRef ref) {
+		if ( --ref.m_refCount == 0 ) {
+			ref.m_table.close();
+		}
+	}
+	
+	@GuardedBy("this")
+	private void retireExtractTable() {
+		if ( m_extractTable != null ) {
+			release(m_extractTable);
+			m_extractTable = null;
+		}
 	}
 	
 	public void write(File file) throws IOException {
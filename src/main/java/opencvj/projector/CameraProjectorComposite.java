@@ -86,7 +86,7 @@ public class CameraProjectorComposite implements Initializable {
 	// properties (END)
 	
 	private Params m_params;
-	private CameraProjectorBinding m_cpParam;
+	private volatile CameraProjectorBinding m_cpParam;
 	
 	public static CameraProjectorComposite create(OpenCvJCameraFactory cameraFact, OpenCvBeamProjector projector,
 													ConfigNode config) throws Exception {
@@ -203,8 +203,7 @@ public class CameraProjectorComposite implements Initializable {
 	public void extractProjectionImage(Mat cameraImage, Mat extracted) {
 		assertValidMapping();
 		
-		Mats.createIfNotValid(extracted, m_cpParam.m_projectorSize, cameraImage.type());
-		m_cpParam.m_transCameraToScreen.perform(cameraImage, extracted, m_cpParam.m_projectorSize);
+		m_cpParam.extractProjectionImage(cameraImage, extracted);
 	}
 	
 	public PerspectiveTransform getProjectorToCameraTransform() {
@@ -286,14 +285,25 @@ public class CameraProjectorComposite implements Initializable {
 					throw new OpenCvJException("bad flipCode: " + m_params.flipCode);
 			}
 
-			m_cpParam = new CameraProjectorBinding();
-			m_cpParam.m_cameraSize = m_cameraFact.getSize();
-			m_cpParam.m_projectorSize = m_projector.getSize();
-			m_cpParam.m_transScreenToCamera.setRansacHomography(checkerCorners, projCorners);
-			m_cpParam.m_transCameraToScreen = m_cpParam.m_transScreenToCamera.inv();
+			// 새 binding은 완성된 후에 설정하여, 기존 binding의 remap table을 사용하던
+			// consumer들이 다음 추출부터 새 binding을 사용하도록 한다.
+			CameraProjectorBinding binding = new CameraProjectorBinding();
+			binding.m_cameraSize = m_cameraFact.getSize();
+			binding.m_projectorSize = m_projector.getSize();
+			binding.m_transScreenToCamera.setRansacHomography(checkerCorners, projCorners);
+			binding.m_transCameraToScreen.close();
+			binding.m_transCameraToScreen = binding.m_transScreenToCamera.inv();
 			
-			Point[] screenCorners = OpenCvJUtils.getCorners(m_cpParam.m_projectorSize);
-			m_cpParam.m_projectionCorners = m_cpParam.m_transScreenToCamera.perform(screenCorners);
+			Point[] screenCorners = OpenCvJUtils.getCorners(binding.m_projectorSize);
+			binding.m_projectionCorners = binding.m_transScreenToCamera.perform(screenCorners);
+			
+			// 기존 binding은 진행 중인 추출이나 호출자가 보유한 transform에서 계속 사용될 수 있으므로
+			// close하지 않고, remap table만 진행 중인 추출이 끝난 후 release되도록 한다.
+			CameraProjectorBinding old = m_cpParam;
+			m_cpParam = binding;
+			if ( old != null ) {
+				old.invalidateRemapTable();
+			}
 		}
 		finally {
 			Mats.releaseAll(checkerImage);
@@ -13,13 +13,14 @@ import opencvj.camera.OpenCvJCamera;
 public class ProjectionCamera implements OpenCvJCamera {
 	// properties (BEGIN)
 	private final Size m_imageSize;
-	private final CameraProjectorBinding m_binding;
+	private final CameraProjectorComposite m_cpc;
 	private final OpenCvJCamera m_srcCamera;
 	
 	public ProjectionCamera(CameraProjectorComposite cpc) {
 		m_imageSize = cpc.getCameraFactory().getSize();
 		
-		m_binding = cpc.getCameraProjectorBinding();
+		// 재calibration된 binding이 사용되도록 binding은 capture시마다 얻는다.
+		m_cpc = cpc;
 		m_srcCamera = cpc.getCameraFactory().createCamera();
 	}
 
@@ -43,10 +44,15 @@ public class ProjectionCamera implements OpenCvJCamera {
 		Mat srcImage = new Mat();
 		try {
 			m_srcCamera.capture(srcImage);
-			m_binding.extractProjectionImage(srcImage, image);
+			m_cpc.getCameraProjectorBinding().extractProjectionImage(srcImage, image);
 		}
 		finally {
 			srcImage.release();
 		}
 	}
+	
+	@Override
+	public void grab() {
+		m_srcCamera.grab();
+	}
 }
@@ -3,6 +3,8 @@ package opencvj.track;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 
+import opencvj.camera.FrameContext;
+
 
 /**
  * 
@@ -14,4 +16,8 @@ public interface Backprojector extends AutoCloseable {
 	
 	public void backproject(Mat image, Mat proj);
 	public void backproject(Mat image, Rect roi, Mat proj);
+	
+	public default void backproject(FrameContext ctx, Mat proj) {
+		backproject(ctx.getImage(), proj);
+	}
 }
\ No newline at end of file
@@ -13,9 +13,11 @@ import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
+import opencvj.MatArena;
 import opencvj.Mats;
 import opencvj.OpenCvJ;
 import opencvj.OpenCvJUtils;
+import opencvj.camera.FrameContext;
 import opencvj.misc.Histogram1D;
 import utils.config.ConfigNode;
 
@@ -86,16 +88,28 @@ public class HueBackprojector implements Backprojector {
 
 	@Override
 	public void backproject(Mat image, Mat proj) {
-		Mat hue = new Mat();
-		Mat validMask = new Mat();
-		try {
-			calcValidHueMask(image, hue, validMask);
+		try ( MatArena arena = MatArena.open() ) {
+			Mat hsv = arena.get(image.size(), CvType.CV_8UC3);
+			Mat hue = arena.get(image.size(), CvType.CV_8UC1);
+			Mat validMask = arena.get(image.size(), CvType.CV_8UC1);
+			calcValidHueMask(image, hsv, hue, validMask);
 			
 			m_hist.backproject(hue, proj);
 			Core.bitwise_and(proj, validMask, proj);
 		}
-		finally {
-			Mats.releaseAll(hue, validMask);
+	}
+
+	/**
+	 * Context가 관리하는 HSV 영상과 hue 채널을 사용하여 역투영한다.
+	 */
+	@Override
+	public void backproject(FrameContext ctx, Mat proj) {
+		try ( MatArena arena = MatArena.open() ) {
+			Mat validMask = arena.get(ctx.size(), CvType.CV_8UC1);
+			Core.inRange(ctx.getHsv(), m_lowerHSV, m_upperHSV, validMask);
+			
+			m_hist.backproject(ctx.getHue(), proj);
+			Core.bitwise_and(proj, validMask, proj);
 		}
 	}
 
@@ -119,14 +133,18 @@ public class HueBackprojector implements Backprojector {
 	private void calcValidHueMask(Mat bgr, Mat hue, Mat mask) {
 		Mat hsv = new Mat();
 		try {
-			Imgproc.cvtColor(bgr, hsv, Imgproc.COLOR_BGR2HSV);
-			Core.inRange(hsv, m_lowerHSV, m_upperHSV, mask);
-			
-			Mats.createIfNotValid(hue, hsv.size(), hsv.depth());
-			Core.mixChannels(Arrays.asList(hsv), Arrays.asList(hue), FROM_TO);
+			calcValidHueMask(bgr, hsv, hue, mask);
 		}
 		finally {
 			hsv.release();
 		}
 	}
+	
+	private void calcValidHueMask(Mat bgr, Mat hsv, Mat hue, Mat mask) {
+		Imgproc.cvtColor(bgr, hsv, Imgproc.COLOR_BGR2HSV);
+		Core.inRange(hsv, m_lowerHSV, m_upperHSV, mask);
+		
+		Mats.createIfNotValid(hue, hsv.size(), hsv.depth());
+		Core.mixChannels(Arrays.asList(hsv), Arrays.asList(hue), FROM_TO);
+	}
 }